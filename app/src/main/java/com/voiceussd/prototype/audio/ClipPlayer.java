@@ -0,0 +1,104 @@
+package com.voiceussd.prototype.audio;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+// Plays already-rendered PCM through a static AudioTrack, skipping the TTS engine entirely
+class ClipPlayer {
+    private static final String TAG = "ClipPlayer";
+    // Backstop in case the end-of-clip marker never fires
+    private static final long COMPLETION_SLACK_MS = 250;
+
+    private final Handler handler;
+    private AudioTrack track;
+    private Runnable completion;
+
+    // Play and stop on the thread that owns looper; completions are delivered there too
+    ClipPlayer(Looper looper) {
+        handler = new Handler(looper);
+    }
+
+    // onDone runs on the player's looper, unless playback is stopped first
+    public boolean play(PcmAudio audio, Runnable onDone) {
+        stop();
+
+        try {
+            int channelMask = audio.getChannels() == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+            AudioTrack newTrack = new AudioTrack.Builder()
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_ASSISTANCE_ACCESSIBILITY)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                            .build())
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(audio.getSampleRate())
+                            .setChannelMask(channelMask)
+                            .build())
+                    .setBufferSizeInBytes(Math.max(audio.getData().length, 2 * audio.getChannels()))
+                    .setTransferMode(AudioTrack.MODE_STATIC)
+                    .build();
+
+            newTrack.write(audio.getData(), 0, audio.getData().length);
+
+            final Runnable finish = new Runnable() {
+                @Override
+                public void run() {
+                    if (completion != this) return; // Already finished or stopped
+                    completion = null;
+                    releaseTrack();
+                    onDone.run();
+                }
+            };
+            completion = finish;
+
+            newTrack.setNotificationMarkerPosition(Math.max(1, audio.getFrameCount()));
+            newTrack.setPlaybackPositionUpdateListener(new AudioTrack.OnPlaybackPositionUpdateListener() {
+                @Override
+                public void onMarkerReached(AudioTrack t) {
+                    finish.run();
+                }
+
+                @Override
+                public void onPeriodicNotification(AudioTrack t) {
+                }
+            }, handler);
+            handler.postDelayed(finish, audio.getDurationMs() + COMPLETION_SLACK_MS);
+
+            track = newTrack;
+            newTrack.play();
+            return true;
+        } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException e) {
+            Log.e(TAG, "Clip playback failed: " + e.getMessage());
+            stop();
+            return false;
+        }
+    }
+
+    public boolean isPlaying() {
+        return completion != null;
+    }
+
+    public void stop() {
+        if (completion != null) {
+            handler.removeCallbacks(completion);
+            completion = null;
+        }
+        releaseTrack();
+    }
+
+    private void releaseTrack() {
+        if (track != null) {
+            try {
+                track.stop();
+            } catch (IllegalStateException e) {
+                // Never started
+            }
+            track.release();
+            track = null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.voiceussd.prototype.audio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Assembles digit confirmations from pre-rendered word clips instead of synthesizing a new
+// sentence per digit. Clips arrive from the TTS binder thread as they finish rendering.
+final class ClipSplicer {
+    // Amplitude below which rendered audio counts as the engine's lead-in/tail silence
+    private static final int SILENCE_THRESHOLD = 400;
+    private static final int TRIM_MARGIN_MS = 15;
+    private static final int WORD_GAP_MS = 60;
+    private static final int SENTENCE_GAP_MS = 220;
+
+    private final Map<String, PcmAudio> clips = new LinkedHashMap<>();
+    private int sampleRate = 0;
+    private int channels = 0;
+
+    // Clip id -> text to render, in the order they should be prepared
+    static Map<String, String> phrases() {
+        Map<String, String> phrases = new LinkedHashMap<>();
+        for (int digit = 0; digit <= 9; digit++) {
+            phrases.put(String.valueOf(digit), String.valueOf(digit));
+        }
+        phrases.put(SpeechText.GOT, SpeechText.GOT);
+        phrases.put(SpeechText.CURRENT_INPUT, SpeechText.CURRENT_INPUT);
+        phrases.put(SpeechText.NEXT_DIGIT_PROMPT, SpeechText.NEXT_DIGIT_PROMPT);
+        phrases.put(SpeechText.EMPTY_INPUT, SpeechText.EMPTY_INPUT);
+        return phrases;
+    }
+
+    // Returns false when the clip does not match the format of the clips already held,
+    // which means the voice changed and the set has to be rebuilt
+    synchronized boolean put(String id, PcmAudio clip) {
+        if (clips.isEmpty()) {
+            sampleRate = clip.getSampleRate();
+            channels = clip.getChannels();
+        } else if (clip.getSampleRate() != sampleRate || clip.getChannels() != channels) {
+            return false;
+        }
+        clips.put(id, clip.trimSilence(SILENCE_THRESHOLD, TRIM_MARGIN_MS));
+        return true;
+    }
+
+    synchronized boolean has(String id) {
+        return clips.containsKey(id);
+    }
+
+    synchronized void clear() {
+        clips.clear();
+    }
+
+    // Same words as SpeechText.digitConfirmation; null while any needed clip is missing
+    synchronized PcmAudio digitConfirmation(int digit, CharSequence currentInput) {
+        if (digit < 0 || digit > 9) return null;
+
+        int count = currentInput.length() == 0 ? 5 : 4 + currentInput.length();
+        PcmAudio[] parts = new PcmAudio[count];
+        int[] gapsMs = new int[count];
+        int n = 0;
+
+        parts[n] = clips.get(SpeechText.GOT);
+        gapsMs[n++] = WORD_GAP_MS;
+        parts[n] = clips.get(String.valueOf(digit));
+        gapsMs[n++] = SENTENCE_GAP_MS;
+        parts[n] = clips.get(SpeechText.CURRENT_INPUT);
+        gapsMs[n++] = WORD_GAP_MS;
+        if (currentInput.length() == 0) {
+            parts[n] = clips.get(SpeechText.EMPTY_INPUT);
+            gapsMs[n++] = SENTENCE_GAP_MS;
+        } else {
+            for (int i = 0; i < currentInput.length(); i++) {
+                parts[n] = clips.get(String.valueOf(currentInput.charAt(i)));
+                gapsMs[n++] = i == currentInput.length() - 1 ? SENTENCE_GAP_MS : WORD_GAP_MS;
+            }
+        }
+        parts[n] = clips.get(SpeechText.NEXT_DIGIT_PROMPT);
+        gapsMs[n++] = 0;
+
+        return join(parts, gapsMs);
+    }
+
+    private PcmAudio join(PcmAudio[] parts, int[] gapsMs) {
+        int frameBytes = 2 * channels;
+        int total = 0;
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] == null) return null;
+            total += parts[i].getData().length + gapFrames(gapsMs[i]) * frameBytes;
+        }
+
+        // Gaps are left as the zeroes the array starts with
+        byte[] data = new byte[total];
+        int offset = 0;
+        for (int i = 0; i < parts.length; i++) {
+            byte[] part = parts[i].getData();
+            System.arraycopy(part, 0, data, offset, part.length);
+            offset += part.length + gapFrames(gapsMs[i]) * frameBytes;
+        }
+        return new PcmAudio(sampleRate, channels, data);
+    }
+
+    private int gapFrames(int ms) {
+        return ms * sampleRate / 1000;
+    }
+}
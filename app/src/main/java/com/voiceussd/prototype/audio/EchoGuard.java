@@ -0,0 +1,158 @@
+package com.voiceussd.prototype.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Remembers which words the device itself said and when, so the recognizer listening during
+// a prompt (barge-in) can tell the user's answer from our own speech picked up by the mic.
+// Word times are estimated from the utterance length and re-anchored by onRangeStart where
+// the engine reports it. Fed from the TTS binder thread, queried from the main thread.
+public final class EchoGuard {
+    // How long after we say a word the recognizer may still hand it back to us
+    static final long ECHO_WINDOW_MS = 2500;
+    // Speaking rate 1.0 is roughly 14 characters a second
+    static final long ESTIMATED_MS_PER_CHAR = 70;
+    // Fewest consecutive words of ours a phrase must repeat to be taken for echo
+    static final int MIN_ECHO_RUN = 2;
+    // A lone word is echo only if we said it this close to when the heard speech began
+    static final long LONE_WORD_ECHO_MS = 600;
+
+    private static final String[] NUMBER_WORDS = {
+            "zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine"
+    };
+
+    private final List<String> words = new ArrayList<>();
+    private final List<Integer> offsets = new ArrayList<>();
+    private long[] spokenAt = new long[32];
+    private int utteranceStart = 0;
+
+    // durationMs <= 0 when unknown (engine speech); it is then estimated from the text length
+    public synchronized void speaking(CharSequence text, long startMs, long durationMs) {
+        forgetBefore(startMs);
+
+        long duration = durationMs > 0 ? durationMs : text.length() * ESTIMATED_MS_PER_CHAR;
+        utteranceStart = words.size();
+        int length = Math.max(1, text.length());
+        int i = 0;
+        while (i < text.length()) {
+            if (!Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) i++;
+            add(normalize(text.subSequence(start, i)), start, startMs + duration * start / length);
+        }
+    }
+
+    // Engine reports it is about to say text[start, end) of the current utterance
+    public synchronized void onRange(int start, long nowMs) {
+        for (int i = utteranceStart; i < words.size(); i++) {
+            if (offsets.get(i) >= start) {
+                long shift = nowMs - spokenAt[i];
+                for (int j = i; j < words.size(); j++) {
+                    spokenAt[j] += shift;
+                }
+                return;
+            }
+        }
+    }
+
+    // Speech was cut short: words not yet reached were never said
+    public synchronized void stopped(long nowMs) {
+        int keep = words.size();
+        while (keep > utteranceStart && spokenAt[keep - 1] > nowMs) keep--;
+        truncate(keep);
+    }
+
+    // True when most of what was heard is one run of words we said within the echo window, e.g.
+    // an option's label.
+    public synchronized boolean isEcho(CharSequence heard, long nowMs) {
+        return isEcho(heard, -1, nowMs);
+    }
+
+    // As above, and a lone word also counts when we said it right as the heard speech began
+    // (speechBeganMs, -1 if unknown): the "two" of "2: Buy Airtime" picked up by a barge-in
+    // session. The same word said after our own has moved on is an answer, not an echo.
+    public synchronized boolean isEcho(CharSequence heard, long speechBeganMs, long nowMs) {
+        List<String> heardWords = new ArrayList<>();
+        int i = 0;
+        while (i < heard.length()) {
+            if (!Character.isLetterOrDigit(heard.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < heard.length() && Character.isLetterOrDigit(heard.charAt(i))) i++;
+            heardWords.add(normalize(heard.subSequence(start, i)));
+        }
+        if (heardWords.size() == 1 && speechBeganMs >= 0) {
+            for (int s = 0; s < words.size(); s++) {
+                if (Math.abs(spokenAt[s] - speechBeganMs) <= LONE_WORD_ECHO_MS && words.get(s).equals(heardWords.get(0))) {
+                    return true;
+                }
+            }
+        }
+        int run = longestSpokenRun(heardWords, nowMs);
+        return run >= MIN_ECHO_RUN && run * 2 > heardWords.size();
+    }
+
+    // Longest stretch of consecutive heard words matching consecutive words we said in the window
+    private int longestSpokenRun(List<String> heardWords, long nowMs) {
+        int longest = 0;
+        int[] previous = new int[heardWords.size() + 1];
+        int[] current = new int[heardWords.size() + 1];
+        for (int s = 0; s < words.size(); s++) {
+            boolean inWindow = spokenAt[s] <= nowMs && spokenAt[s] >= nowMs - ECHO_WINDOW_MS;
+            for (int h = 0; h < heardWords.size(); h++) {
+                current[h + 1] = inWindow && words.get(s).equals(heardWords.get(h)) ? previous[h] + 1 : 0;
+                if (current[h + 1] > longest) longest = current[h + 1];
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return longest;
+    }
+
+    // Lowercase, with number words and digits treated as the same token
+    static String normalize(CharSequence word) {
+        String lower = word.toString().toLowerCase();
+        for (int d = 0; d < NUMBER_WORDS.length; d++) {
+            if (NUMBER_WORDS[d].equals(lower)) return String.valueOf(d);
+        }
+        return lower;
+    }
+
+    private void add(String word, int offset, long at) {
+        if (words.size() == spokenAt.length) {
+            long[] grown = new long[spokenAt.length * 2];
+            System.arraycopy(spokenAt, 0, grown, 0, spokenAt.length);
+            spokenAt = grown;
+        }
+        spokenAt[words.size()] = at;
+        words.add(word);
+        offsets.add(offset);
+    }
+
+    // Drops words that left the window and the unspoken tail of an interrupted utterance
+    private void forgetBefore(long nowMs) {
+        stopped(nowMs);
+        int drop = 0;
+        while (drop < words.size() && spokenAt[drop] < nowMs - ECHO_WINDOW_MS) drop++;
+        if (drop == 0) return;
+        System.arraycopy(spokenAt, drop, spokenAt, 0, words.size() - drop);
+        words.subList(0, drop).clear();
+        offsets.subList(0, drop).clear();
+        utteranceStart = words.size();
+    }
+
+    private void truncate(int size) {
+        words.subList(size, words.size()).clear();
+        offsets.subList(size, offsets.size()).clear();
+    }
+
+    synchronized int size() {
+        return words.size();
+    }
+}
@@ -0,0 +1,9 @@
+package com.voiceussd.prototype.audio;
+
+// What STTManager listens for. Its own file so the session engine, which picks the mode per
+// screen, doesn't pull the recognizer (and the framework) into replays and benchmarks.
+public enum InputMode {
+    MENU,           // Single digit for menu selection (existing working functionality)
+    DIGIT_BY_DIGIT, // NEW: Single digit sessions with confirmation loop
+    CONTINUOUS_DIGITS // Whole digit strings per utterance (phone numbers, amounts)
+}
@@ -0,0 +1,153 @@
+package com.voiceussd.prototype.audio;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.BufferedInputStream;
+
+// 16-bit little-endian PCM, as written by TextToSpeech.synthesizeToFile
+public final class PcmAudio {
+    private final int sampleRate;
+    private final int channels;
+    private final byte[] data;
+
+    public PcmAudio(int sampleRate, int channels, byte[] data) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.data = data;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getFrameCount() {
+        return data.length / (2 * channels);
+    }
+
+    public long getDurationMs() {
+        return getFrameCount() * 1000L / sampleRate;
+    }
+
+    // Drops leading and trailing frames quieter than threshold (absolute 16-bit sample value),
+    // keeping a few milliseconds either side so word onsets are not clipped
+    public PcmAudio trimSilence(int threshold, int marginMs) {
+        int frameBytes = 2 * channels;
+        int frames = getFrameCount();
+        int first = 0;
+        while (first < frames && isQuiet(first, threshold)) first++;
+        if (first == frames) return new PcmAudio(sampleRate, channels, new byte[0]);
+        int last = frames - 1;
+        while (last > first && isQuiet(last, threshold)) last--;
+
+        int margin = marginMs * sampleRate / 1000;
+        int start = Math.max(0, first - margin);
+        int end = Math.min(frames, last + 1 + margin);
+        if (start == 0 && end == frames) return this;
+
+        byte[] trimmed = new byte[(end - start) * frameBytes];
+        System.arraycopy(data, start * frameBytes, trimmed, 0, trimmed.length);
+        return new PcmAudio(sampleRate, channels, trimmed);
+    }
+
+    private boolean isQuiet(int frame, int threshold) {
+        int offset = frame * 2 * channels;
+        for (int c = 0; c < channels; c++, offset += 2) {
+            int sample = (short) ((data[offset] & 0xff) | (data[offset + 1] << 8));
+            if (Math.abs(sample) > threshold) return false;
+        }
+        return true;
+    }
+
+    public static PcmAudio readWav(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return readWav(in, file.length());
+        }
+    }
+
+    // Walks the RIFF chunks for "fmt " and "data". Engines that stream the file may leave the
+    // data size at 0 or -1, in which case the rest of the file is taken as audio.
+    public static PcmAudio readWav(InputStream source, long totalLength) throws IOException {
+        DataInputStream in = new DataInputStream(source);
+        if (readTag(in) != RIFF || skipFully(in, 4) < 0 || readTag(in) != WAVE) {
+            throw new IOException("Not a WAV file");
+        }
+        long position = 12;
+
+        int channels = 0;
+        int sampleRate = 0;
+        while (true) {
+            int tag = readTag(in);
+            long size = readIntLE(in) & 0xffffffffL;
+            position += 8;
+
+            if (tag == FMT) {
+                int format = readShortLE(in);
+                channels = readShortLE(in);
+                sampleRate = readIntLE(in);
+                skipFully(in, 6); // byte rate, block align
+                int bits = readShortLE(in);
+                if (format != 1 || bits != 16 || channels < 1 || channels > 2) {
+                    throw new IOException("Unsupported WAV format " + format + "/" + bits + " bit/" + channels + " ch");
+                }
+                skipFully(in, size - 16 + (size & 1));
+                position += size + (size & 1);
+            } else if (tag == DATA) {
+                if (sampleRate == 0) {
+                    throw new IOException("WAV data before fmt chunk");
+                }
+                long available = totalLength - position;
+                if (size == 0 || size == 0xffffffffL || size > available) {
+                    size = available;
+                }
+                byte[] data = new byte[(int) (size - size % (2 * channels))];
+                in.readFully(data);
+                return new PcmAudio(sampleRate, channels, data);
+            } else {
+                skipFully(in, size + (size & 1));
+                position += size + (size & 1);
+            }
+        }
+    }
+
+    private static final int RIFF = 0x52494646;
+    private static final int WAVE = 0x57415645;
+    private static final int FMT = 0x666d7420;
+    private static final int DATA = 0x64617461;
+
+    private static int readTag(DataInputStream in) throws IOException {
+        return in.readInt(); // Big-endian, so tags compare as written
+    }
+
+    private static int readIntLE(DataInputStream in) throws IOException {
+        return Integer.reverseBytes(in.readInt());
+    }
+
+    private static int readShortLE(DataInputStream in) throws IOException {
+        return Short.reverseBytes(in.readShort()) & 0xffff;
+    }
+
+    private static long skipFully(DataInputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return count;
+    }
+}
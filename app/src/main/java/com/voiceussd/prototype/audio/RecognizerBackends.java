@@ -0,0 +1,142 @@
+package com.voiceussd.prototype.audio;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Keeps per-backend recognition latency and failure rates and picks the backend to use on
+// this device. New backends get a few sessions each (on-device first) before the numbers
+// decide. Serialized to a string so the choice survives restarts.
+final class RecognizerBackends {
+    enum Backend {
+        ON_DEVICE,          // createOnDeviceSpeechRecognizer, API 31+
+        OFFLINE_PREFERRED,  // Default service with EXTRA_PREFER_OFFLINE
+        NETWORK             // Default service, default settings
+    }
+
+    static final int MIN_SAMPLES = 5;
+    // A failed session costs the user a retry; price it like this much extra latency
+    static final long FAILURE_PENALTY_MS = 3000;
+    private static final float LATENCY_WEIGHT = 0.2f; // Exponential moving average
+
+    private final Map<Backend, Stats> stats = new EnumMap<>(Backend.class);
+
+    private static final class Stats {
+        boolean available = true;
+        int sessions;
+        int failures;
+        float latencyMs;
+        final Set<String> unsupportedLanguages = new HashSet<>();
+
+        float failureRate() {
+            return sessions == 0 ? 0f : failures / (float) sessions;
+        }
+
+        float cost() {
+            return latencyMs + failureRate() * FAILURE_PENALTY_MS;
+        }
+    }
+
+    RecognizerBackends(boolean onDeviceAvailable) {
+        for (Backend backend : Backend.values()) {
+            stats.put(backend, new Stats());
+        }
+        stats.get(Backend.ON_DEVICE).available = onDeviceAvailable;
+    }
+
+    Backend choose(String language) {
+        Backend best = null;
+        for (Backend backend : Backend.values()) {
+            Stats s = stats.get(backend);
+            if (!s.available || s.unsupportedLanguages.contains(language)) continue;
+
+            // Still learning about this one
+            if (s.sessions < MIN_SAMPLES) return backend;
+
+            if (best == null || s.cost() < stats.get(best).cost()) best = backend;
+        }
+        return best != null ? best : Backend.NETWORK;
+    }
+
+    void recordSuccess(Backend backend, long latencyMs) {
+        Stats s = stats.get(backend);
+        s.latencyMs = s.sessions - s.failures == 0 ? latencyMs : s.latencyMs + LATENCY_WEIGHT * (latencyMs - s.latencyMs);
+        s.sessions++;
+    }
+
+    void recordFailure(Backend backend) {
+        Stats s = stats.get(backend);
+        s.sessions++;
+        s.failures++;
+    }
+
+    // The device could not create this backend at all
+    void markUnavailable(Backend backend) {
+        stats.get(backend).available = false;
+    }
+
+    void markUnsupported(Backend backend, String language) {
+        stats.get(backend).unsupportedLanguages.add(language);
+    }
+
+    int getSessions(Backend backend) {
+        return stats.get(backend).sessions;
+    }
+
+    // backend:sessions,failures,latency,lang|lang;...
+    String encode() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<Backend, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            if (out.length() > 0) out.append(';');
+            out.append(entry.getKey().name()).append(':')
+                    .append(s.sessions).append(',')
+                    .append(s.failures).append(',')
+                    .append(Math.round(s.latencyMs)).append(',')
+                    .append(String.join("|", s.unsupportedLanguages));
+        }
+        return out.toString();
+    }
+
+    // Unknown or malformed parts are skipped; availability always comes from the device
+    void decode(String encoded) {
+        if (encoded == null) return;
+
+        for (String part : encoded.split(";")) {
+            int colon = part.indexOf(':');
+            if (colon < 0) continue;
+            String[] fields = part.substring(colon + 1).split(",", -1);
+            if (fields.length != 4) continue;
+            try {
+                Stats s = stats.get(Backend.valueOf(part.substring(0, colon)));
+                s.sessions = Integer.parseInt(fields[0]);
+                s.failures = Integer.parseInt(fields[1]);
+                s.latencyMs = Float.parseFloat(fields[2]);
+                s.unsupportedLanguages.clear();
+                for (String language : fields[3].split("\\|")) {
+                    if (!language.isEmpty()) s.unsupportedLanguages.add(language);
+                }
+            } catch (IllegalArgumentException e) {
+                // Written by another version; drop this backend's numbers
+            }
+        }
+    }
+
+    String summary() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<Backend, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            out.append(entry.getKey().name().toLowerCase())
+                    .append(s.available ? "" : " (unavailable)")
+                    .append(": sessions=").append(s.sessions)
+                    .append(", failures=").append(s.failures)
+                    .append(", latency=").append(Math.round(s.latencyMs)).append("ms");
+            if (!s.unsupportedLanguages.isEmpty()) {
+                out.append(", unsupported=").append(s.unsupportedLanguages);
+            }
+            out.append('\n');
+        }
+        return out.toString().trim();
+    }
+}
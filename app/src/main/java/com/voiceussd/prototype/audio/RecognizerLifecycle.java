@@ -0,0 +1,102 @@
+package com.voiceussd.prototype.audio;
+
+// Tracks where the SpeechRecognizer is in its session so a new turn can start the moment the
+// previous one is over, instead of after a fixed back-off. Main thread only.
+final class RecognizerLifecycle {
+    enum State {
+        IDLE,       // No session; startListening() can be called
+        STARTING,   // startListening() called, waiting for onReadyForSpeech
+        READY,      // Microphone open, nothing heard yet
+        LISTENING,  // Speech detected
+        FINISHING   // Stopped or end of speech; waiting for onResults/onError
+    }
+
+    // What the caller has to do with the recognizer after a transition
+    static final int NOTHING = 0;
+    static final int START = 1;
+    static final int CANCEL_AND_START = 2;
+
+    private State state = State.IDLE;
+    private boolean startPending = false;
+    private boolean resultClaimed = false;
+
+    State getState() {
+        return state;
+    }
+
+    boolean isIdle() {
+        return state == State.IDLE;
+    }
+
+    boolean isStartPending() {
+        return startPending;
+    }
+
+    int requestStart() {
+        switch (state) {
+            case IDLE:
+                beginSession();
+                return START;
+            case FINISHING:
+                // Results are on their way; start as soon as they land
+                startPending = true;
+                return NOTHING;
+            default:
+                // Abandon the open session. cancel() delivers no callbacks, so the new
+                // session can be started straight away.
+                beginSession();
+                return CANCEL_AND_START;
+        }
+    }
+
+    // Returns true when the caller should call stopListening()
+    boolean requestStop() {
+        startPending = false;
+        if (state == State.STARTING || state == State.READY || state == State.LISTENING) {
+            state = State.FINISHING;
+            return true;
+        }
+        return false;
+    }
+
+    void onReadyForSpeech() {
+        if (state == State.STARTING) state = State.READY;
+    }
+
+    void onBeginningOfSpeech() {
+        if (state == State.STARTING || state == State.READY) state = State.LISTENING;
+    }
+
+    void onEndOfSpeech() {
+        if (state != State.IDLE) state = State.FINISHING;
+    }
+
+    // onResults or onError: the recognizer is free again
+    int onSessionEnded() {
+        state = State.IDLE;
+        if (startPending) {
+            beginSession();
+            return START;
+        }
+        return NOTHING;
+    }
+
+    // Recognizer destroyed or recreated; any pending start is dropped
+    void reset() {
+        state = State.IDLE;
+        startPending = false;
+    }
+
+    // A session delivers one answer: whichever of the partial or final results claims it first
+    boolean claimResult() {
+        if (resultClaimed) return false;
+        resultClaimed = true;
+        return true;
+    }
+
+    private void beginSession() {
+        state = State.STARTING;
+        startPending = false;
+        resultClaimed = false;
+    }
+}
@@ -2,41 +2,96 @@ package com.voiceussd.prototype.audio;
 
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.speech.RecognitionListener;
 import android.speech.RecognizerIntent;
 import android.speech.SpeechRecognizer;
 import android.util.Log;
 
+import com.voiceussd.prototype.diagnostics.LatencyStats;
+import com.voiceussd.prototype.diagnostics.Tracer;
+import com.voiceussd.prototype.diagnostics.TurnTimeline;
+import com.voiceussd.prototype.text.DigitParser;
+import com.voiceussd.prototype.text.DigitSequenceParser;
+import com.voiceussd.prototype.text.NumberLexicon;
+
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class STTManager implements RecognitionListener {
     private static final String TAG = "STTManager";
     private SpeechRecognizer speechRecognizer;
     private Intent recognizerIntent;
     private Context context;
-    private boolean isListening = false;
+    private final RecognizerLifecycle lifecycle = new RecognizerLifecycle();
     private STTCallback callback;
 
+    // Backstop for recognizers that never report back after stopListening()
+    private static final long FINISH_TIMEOUT_MS = 1000;
+    // SpeechRecognizer.ERROR_SERVER_DISCONNECTED, API 31
+    private static final int ERROR_SERVER_DISCONNECTED = 11;
+    private final Runnable finishTimeout = this::onFinishTimeout;
+    private boolean retriedBusyStart = false;
+
+    // SpeechRecognizer.ERROR_LANGUAGE_NOT_SUPPORTED / ERROR_LANGUAGE_UNAVAILABLE, API 31
+    private static final int ERROR_LANGUAGE_NOT_SUPPORTED = 12;
+    private static final int ERROR_LANGUAGE_UNAVAILABLE = 13;
+
+    // Which recognizer serves the turns. On-device recognition avoids the network round
+    // trip where the device has it; the measured numbers decide per device and language.
+    private static final String BACKEND_PREFS = "stt_backends";
+    private static final String BACKEND_STATS_KEY = "stats";
+    private static final int BACKEND_SAVE_EVERY = 10;
+    private RecognizerBackends backends;
+    private RecognizerBackends.Backend backend = RecognizerBackends.Backend.NETWORK;
+    private long speechEndedAt = -1;
+    private int unsavedBackendSessions = 0;
+
+    // Prompt finished (or start requested) -> onReadyForSpeech, per turn
+    private final LatencyStats micReadyLatency = new LatencyStats("prompt done -> mic ready");
+    private long turnRequestedAt = -1;
+
+    // Barge-in: MENU sessions run while the menu is still being read, so our own speech
+    // has to be filtered out of what the recognizer hears
+    private EchoGuard echoGuard;
+    private boolean bargeIn = false;
+    // When the current session first heard speech, on the echo guard's clock; -1 before that
+    private long speechBeganAt = -1;
+
+    // Callbacks all arrive on the main thread, so one parser (and its scratch space) is enough.
+    // It knows every supported language whatever the recognizer is set to.
+    private final DigitParser digitParser = NumberLexicon.compile(NumberLexicon.english(), NumberLexicon.kinyarwanda());
+    private final DigitSequenceParser sequenceParser =
+            NumberLexicon.compileSequences(NumberLexicon.english(), NumberLexicon.kinyarwanda());
+    private String recognitionLanguage = NumberLexicon.ENGLISH_TAG;
+    // Digits the current screen accepts; everything else is rescored away
+    private int allowedDigits = DigitParser.ANY_DIGIT;
+    // CONTINUOUS_DIGITS for an amount: "five thousand" is a quantity, not digits to join
+    private boolean amountInput = false;
+
+    // End-of-speech silence learned per mode. Digit answers are short and can end quickly;
+    // continuous digits keep room for the breath between groups.
+    private final Map<InputMode, SilenceTuner> silenceTuners = new EnumMap<>(InputMode.class);
+
     // NEW: Enhanced input modes with digit-by-digit approach
     private InputMode currentMode = InputMode.MENU;
-    private StringBuilder longInputBuffer = new StringBuilder();
     private Handler timeoutHandler = new Handler(Looper.getMainLooper());
     private Runnable timeoutRunnable;
 
-    public enum InputMode {
-        MENU,           // Single digit for menu selection (existing working functionality)
-        DIGIT_BY_DIGIT  // NEW: Single digit sessions with confirmation loop
-    }
-
     // Enhanced interface for digit-by-digit flow
     public interface STTCallback {
         void onNumberRecognized(int number);           // For menu (existing)
         void onDigitRecognized(int digit);             // NEW: Single digit captured
         void onDoneCommandRecognized();                // NEW: User said "done"
-        void onLongInputCompleted(String fullInput);   // NEW: Timeout or completion
+        void onInputTimeout();                         // No answer for a while in DIGIT_BY_DIGIT
+        void onDigitSequenceRecognized(String digits, float confidence); // CONTINUOUS_DIGITS; "" if nothing usable
+        void onAnswerRejected(String heard);           // Nothing valid for this screen; "" if nothing was heard
         void onSTTError(String error);
         void onSTTReady();
     }
@@ -44,6 +99,9 @@ public class STTManager implements RecognitionListener {
     public STTManager(Context context, STTCallback callback) {
         this.context = context;
         this.callback = callback;
+        silenceTuners.put(InputMode.MENU, new SilenceTuner("MENU", 500, 1500));
+        silenceTuners.put(InputMode.DIGIT_BY_DIGIT, new SilenceTuner("DIGIT_BY_DIGIT", 500, 1500));
+        silenceTuners.put(InputMode.CONTINUOUS_DIGITS, new SilenceTuner("CONTINUOUS_DIGITS", 800, 2000));
         initializeSTT();
     }
 
@@ -53,57 +111,106 @@ public class STTManager implements RecognitionListener {
 
     public void setInputMode(InputMode mode) {
         this.currentMode = mode;
+        bargeIn = false;
+        allowedDigits = DigitParser.ANY_DIGIT;
+        amountInput = false;
         if (mode == InputMode.DIGIT_BY_DIGIT) {
-            longInputBuffer.setLength(0); // Clear buffer
             setupDigitByDigitConfiguration();
+        } else if (mode == InputMode.CONTINUOUS_DIGITS) {
+            setupContinuousDigitsConfiguration();
         } else {
             setupMenuConfiguration();
         }
-        Log.d(TAG, "Switched to input mode: " + mode);
+        Tracer.record(Tracer.DEBUG, TAG, "input mode", mode);
+    }
+
+    // DigitParser mask of the answers the screen accepts, e.g. ParsedScreen.getAllowedDigits().
+    // Reset to any digit by setInputMode.
+    public void setAllowedDigits(int allowedDigits) {
+        this.allowedDigits = allowedDigits;
+        Tracer.record(Tracer.DEBUG, TAG, "allowed digits mask", allowedDigits);
+    }
+
+    // Whether a digit sequence is an amount rather than a phone number or PIN.
+    // Reset to false by setInputMode.
+    public void setAmountInput(boolean amountInput) {
+        this.amountInput = amountInput;
+    }
+
+    // BCP 47 tag for the following sessions, e.g. NumberLexicon.KINYARWANDA_TAG
+    public void setRecognitionLanguage(String languageTag) {
+        if (languageTag.equals(recognitionLanguage)) return;
+
+        recognitionLanguage = languageTag;
+        if (recognizerIntent != null) {
+            recognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, languageTag);
+            recognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE, languageTag);
+        }
+        Tracer.record(Tracer.INFO, TAG, "recognition language", languageTag);
+    }
+
+    public String getRecognitionLanguage() {
+        return recognitionLanguage;
     }
 
     private void setupMenuConfiguration() {
         if (recognizerIntent == null) return;
 
         // Keep your existing working menu configuration
-        recognizerIntent.putExtra(RecognizerIntent.EXTRA_SPEECH_INPUT_COMPLETE_SILENCE_LENGTH_MILLIS, 1500);
-        recognizerIntent.putExtra(RecognizerIntent.EXTRA_SPEECH_INPUT_POSSIBLY_COMPLETE_SILENCE_LENGTH_MILLIS, 1500);
+        applySilence(InputMode.MENU);
         recognizerIntent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
-        Log.d(TAG, "Configured for MENU mode (1.5s timeout)");
     }
 
     private void setupDigitByDigitConfiguration() {
         if (recognizerIntent == null) return;
 
         // NEW: Use same timeouts as menu (which work great!) for individual digit sessions
-        recognizerIntent.putExtra(RecognizerIntent.EXTRA_SPEECH_INPUT_COMPLETE_SILENCE_LENGTH_MILLIS, 1500);
-        recognizerIntent.putExtra(RecognizerIntent.EXTRA_SPEECH_INPUT_POSSIBLY_COMPLETE_SILENCE_LENGTH_MILLIS, 1500);
+        applySilence(InputMode.DIGIT_BY_DIGIT);
         recognizerIntent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
-        Log.d(TAG, "Configured for DIGIT_BY_DIGIT mode (1.5s timeout per digit)");
+    }
+
+    private void setupContinuousDigitsConfiguration() {
+        if (recognizerIntent == null) return;
+
+        // People read numbers out in groups; allow a breath between them
+        applySilence(InputMode.CONTINUOUS_DIGITS);
+        recognizerIntent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+    }
+
+    private void applySilence(InputMode mode) {
+        long silenceMs = silenceTuners.get(mode).getSilenceMs();
+        recognizerIntent.putExtra(RecognizerIntent.EXTRA_SPEECH_INPUT_COMPLETE_SILENCE_LENGTH_MILLIS, silenceMs);
+        recognizerIntent.putExtra(RecognizerIntent.EXTRA_SPEECH_INPUT_POSSIBLY_COMPLETE_SILENCE_LENGTH_MILLIS, silenceMs);
+        Tracer.record(Tracer.DEBUG, TAG, "configured silence ms", mode, silenceMs);
+    }
+
+    // understood: the session gave a usable answer, otherwise it may have been cut off
+    private void endSilenceTuning(boolean understood) {
+        silenceTuners.get(currentMode).endSession(understood, SystemClock.uptimeMillis());
     }
 
     private void initializeSTT() {
-        Log.d(TAG, "=== INITIALIZING STT ===");
+        Tracer.record(Tracer.INFO, TAG, "initializing");
 
         if (SpeechRecognizer.isRecognitionAvailable(context)) {
-            Log.d(TAG, "✅ Speech recognition IS available");
+            Tracer.record(Tracer.DEBUG, TAG, "speech recognition available");
 
-            speechRecognizer = SpeechRecognizer.createSpeechRecognizer(context);
-            if (speechRecognizer == null) {
-                Log.e(TAG, "❌ Failed to create SpeechRecognizer instance");
+            backends = new RecognizerBackends(isOnDeviceRecognitionAvailable());
+            backends.decode(backendPrefs().getString(BACKEND_STATS_KEY, null));
+
+            // Created once and reused across turns, so the recognition service stays bound
+            if (!createRecognizer()) {
                 return;
             }
 
-            speechRecognizer.setRecognitionListener(this);
-            Log.d(TAG, "✅ Recognition listener set");
-
             // Create and configure intent
             recognizerIntent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
             recognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
-            recognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, "en-US");
+            recognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, recognitionLanguage);
             recognizerIntent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, 5);
             recognizerIntent.putExtra(RecognizerIntent.EXTRA_CONFIDENCE_SCORES, true);
             recognizerIntent.putExtra(RecognizerIntent.EXTRA_CALLING_PACKAGE, context.getPackageName());
+            applyBackendExtras();
 
             // Apply initial configuration
             setupMenuConfiguration();
@@ -113,50 +220,230 @@ public class STTManager implements RecognitionListener {
             }
 
         } else {
-            Log.e(TAG, "❌ Speech recognition NOT available on this device");
+            Log.e(TAG, "Speech recognition not available on this device");
             if (callback != null) {
                 callback.onSTTError("Speech recognition not available");
             }
         }
     }
 
+    private boolean createRecognizer() {
+        backend = backends.choose(recognitionLanguage);
+        speechRecognizer = null;
+        if (backend == RecognizerBackends.Backend.ON_DEVICE) {
+            // API 31; checked here as well so older devices never reach the call
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                try {
+                    speechRecognizer = SpeechRecognizer.createOnDeviceSpeechRecognizer(context);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "On-device recognizer unavailable: " + e.getMessage());
+                }
+            }
+            if (speechRecognizer == null) {
+                backends.markUnavailable(backend);
+                backend = backends.choose(recognitionLanguage);
+            }
+        }
+        if (speechRecognizer == null) {
+            speechRecognizer = SpeechRecognizer.createSpeechRecognizer(context);
+        }
+        if (speechRecognizer == null) {
+            Log.e(TAG, "Failed to create SpeechRecognizer instance");
+            return false;
+        }
+
+        applyBackendExtras();
+        speechRecognizer.setRecognitionListener(this);
+        Tracer.record(Tracer.DEBUG, TAG, "recognition listener set");
+        Tracer.record(Tracer.INFO, TAG, "recognizer backend", backend);
+        return true;
+    }
+
+    private boolean isOnDeviceRecognitionAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                && SpeechRecognizer.isOnDeviceRecognitionAvailable(context);
+    }
+
+    private void applyBackendExtras() {
+        if (recognizerIntent == null) return;
+
+        recognizerIntent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, backend != RecognizerBackends.Backend.NETWORK);
+    }
+
+    private SharedPreferences backendPrefs() {
+        return context.getSharedPreferences(BACKEND_PREFS, Context.MODE_PRIVATE);
+    }
+
+    private void saveBackendStats() {
+        unsavedBackendSessions = 0;
+        backendPrefs().edit().putString(BACKEND_STATS_KEY, backends.encode()).apply();
+    }
+
+    private void recordBackendSuccess(long latencyMs) {
+        backends.recordSuccess(backend, latencyMs);
+        Tracer.record(Tracer.INFO, TAG, "recognition ms", backend, latencyMs);
+        if (++unsavedBackendSessions >= BACKEND_SAVE_EVERY) saveBackendStats();
+    }
+
+    private void recordBackendFailure() {
+        backends.recordFailure(backend);
+        Tracer.record(Tracer.INFO, TAG, "recognizer backend failed", backend);
+        if (++unsavedBackendSessions >= BACKEND_SAVE_EVERY) saveBackendStats();
+    }
+
+    // The warm instance is only replaced when the service connection itself is in trouble
+    private void recreateRecognizer() {
+        timeoutHandler.removeCallbacks(finishTimeout);
+        lifecycle.reset();
+        if (speechRecognizer != null) {
+            speechRecognizer.destroy();
+        }
+        createRecognizer();
+    }
+
     public void startListening() {
-        Log.d(TAG, "=== STARTING STT FOR MODE: " + currentMode + " ===");
+        startListening(SystemClock.uptimeMillis());
+    }
+
+    // promptDoneAt: when the TTS prompt that leads into this turn finished
+    public void startListening(long promptDoneAt) {
+        Tracer.record(Tracer.DEBUG, TAG, "start listening", currentMode, lifecycle.getState().ordinal());
 
         if (speechRecognizer == null) {
-            Log.e(TAG, "❌ SpeechRecognizer is null!");
+            Log.e(TAG, "SpeechRecognizer is null, cannot listen");
             return;
         }
 
-        if (isListening) {
-            Log.w(TAG, "⚠️ Already listening, stopping first...");
-            speechRecognizer.stopListening();
-            isListening = false;
+        turnRequestedAt = promptDoneAt;
+        retriedBusyStart = false;
 
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                startListeningInternal();
-            }, 1000);
+        // Switch between turns only, when the numbers (or the language) call for another backend
+        if (lifecycle.isIdle() && backends.choose(recognitionLanguage) != backend) {
+            Tracer.record(Tracer.INFO, TAG, "switching recognizer backend", backends.choose(recognitionLanguage));
+            recreateRecognizer();
+        }
+
+        int action = lifecycle.requestStart();
+        if (action == RecognizerLifecycle.CANCEL_AND_START) {
+            Tracer.record(Tracer.DEBUG, TAG, "cancelling open session before restart");
+            timeoutHandler.removeCallbacks(finishTimeout);
+            speechRecognizer.cancel();
+        }
+        if (action != RecognizerLifecycle.NOTHING) {
+            startListeningInternal();
+        } else {
+            Tracer.record(Tracer.DEBUG, TAG, "start deferred until recognizer is free");
+        }
+    }
+
+    // Listen for a menu choice while the menu is still playing
+    public void startBargeIn(EchoGuard guard) {
+        if (currentMode != InputMode.MENU) return;
+
+        echoGuard = guard;
+        bargeIn = true;
+        Tracer.record(Tracer.DEBUG, TAG, "barge-in listening");
+        startListening();
+    }
+
+    // The prompt finished: keep a barge-in session that already has the microphone,
+    // otherwise start the turn as usual
+    public void onPromptFinished(long promptDoneAt) {
+        boolean hadBargeIn = bargeIn;
+        bargeIn = false;
+
+        RecognizerLifecycle.State state = lifecycle.getState();
+        if (hadBargeIn && (state == RecognizerLifecycle.State.READY || state == RecognizerLifecycle.State.LISTENING)) {
+            // From here on only the user is talking
+            silenceTuners.get(currentMode).startSession();
+            micReadyLatency.record(0);
+            Tracer.record(Tracer.INFO, TAG, "mic ready ms", currentMode, 0);
             return;
         }
+        if (hadBargeIn && state == RecognizerLifecycle.State.STARTING) {
+            turnRequestedAt = promptDoneAt;
+            return;
+        }
+        startListening(promptDoneAt);
+    }
 
+    // Barge-in sessions end on their own (silence, or only our own voice heard) while the
+    // menu is still playing; keep the microphone open until the prompt is over
+    private boolean restartBargeIn() {
+        if (!bargeIn || !lifecycle.isIdle()) return false;
+
+        Tracer.record(Tracer.DEBUG, TAG, "barge-in session ended, relistening");
+        lifecycle.requestStart();
         startListeningInternal();
+        return true;
+    }
+
+    // Ask again straight away rather than guessing; barge-in sessions just keep listening
+    private void rejectAnswer(String heard) {
+        if (restartBargeIn()) return;
+
+        Tracer.record(Tracer.DEBUG, TAG, "no valid answer heard", heard);
+        if (callback != null) {
+            callback.onAnswerRejected(heard);
+        }
+    }
+
+    private boolean isEcho(CharSequence heard) {
+        if (echoGuard == null || currentMode != InputMode.MENU) return false;
+        if (!echoGuard.isEcho(heard, speechBeganAt, SystemClock.uptimeMillis())) return false;
+
+        Tracer.record(Tracer.DEBUG, TAG, "ignoring echo of our own prompt", heard);
+        return true;
     }
 
     private void startListeningInternal() {
         try {
-            isListening = true;
-            Log.d(TAG, "🎤 Starting " + currentMode + " recognition...");
-
             // NEW: For digit-by-digit, start a completion timeout (longer than individual digit timeout)
             if (currentMode == InputMode.DIGIT_BY_DIGIT) {
                 startCompletionTimeout();
             }
 
+            speechBeganAt = -1;
+            speechEndedAt = -1;
+            // Picks up whatever the tuner learned from the previous session
+            applySilence(currentMode);
+            SilenceTuner tuner = silenceTuners.get(currentMode);
+            tuner.startSession();
+            if (bargeIn) {
+                // The recognizer hears our own prompt as well; its pauses aren't the user's
+                tuner.ignoreSession();
+            }
+
             speechRecognizer.startListening(recognizerIntent);
-            Log.d(TAG, "✅ startListening() call completed");
+            Tracer.record(Tracer.DEBUG, TAG, "startListening() returned", currentMode);
         } catch (Exception e) {
-            Log.e(TAG, "❌ Exception: " + e.getMessage());
-            isListening = false;
+            Log.e(TAG, "Failed to start listening", e);
+            lifecycle.reset();
+        }
+    }
+
+    private void onFinishTimeout() {
+        Tracer.record(Tracer.INFO, TAG, "no callback after stop, cancelling session");
+        if (speechRecognizer != null) {
+            speechRecognizer.cancel();
+        }
+        onSessionEnded();
+    }
+
+    private void onSessionEnded() {
+        timeoutHandler.removeCallbacks(finishTimeout);
+        if (lifecycle.onSessionEnded() == RecognizerLifecycle.START) {
+            Tracer.record(Tracer.DEBUG, TAG, "recognizer free, starting deferred turn");
+            startListeningInternal();
+        }
+    }
+
+    // Ends the current session early and waits for its results
+    private void finishSession() {
+        if (speechRecognizer != null && lifecycle.requestStop()) {
+            if (speechEndedAt < 0) speechEndedAt = SystemClock.uptimeMillis();
+            speechRecognizer.stopListening();
+            timeoutHandler.postDelayed(finishTimeout, FINISH_TIMEOUT_MS);
         }
     }
 
@@ -166,14 +453,14 @@ public class STTManager implements RecognitionListener {
             timeoutHandler.removeCallbacks(timeoutRunnable);
         }
 
-        // NEW: 8-second timeout for overall completion (user has time to say "done")
+        // NEW: 8-second timeout for overall completion (user has time to say "done").
+        // Whether there is anything to submit is the session engine's call; it owns the input.
         timeoutRunnable = () -> {
-            if (currentMode == InputMode.DIGIT_BY_DIGIT && longInputBuffer.length() > 0) {
-                Log.d(TAG, "⏰ Overall completion timeout reached (8s). Completing input: " + longInputBuffer.toString());
+            if (currentMode == InputMode.DIGIT_BY_DIGIT) {
+                Tracer.record(Tracer.DEBUG, TAG, "completion timeout");
                 if (callback != null) {
-                    callback.onLongInputCompleted(longInputBuffer.toString());
+                    callback.onInputTimeout();
                 }
-                stopListening();
             }
         };
 
@@ -187,25 +474,48 @@ public class STTManager implements RecognitionListener {
         }
     }
 
+    // The answer was sent; no completion timeout should outlive it
+    public void endInput() {
+        if (timeoutRunnable != null) {
+            timeoutHandler.removeCallbacks(timeoutRunnable);
+        }
+    }
+
     public void stopListening() {
-        if (isListening && speechRecognizer != null) {
-            isListening = false;
-            speechRecognizer.stopListening();
+        if (speechRecognizer != null && !lifecycle.isIdle()) {
+            finishSession();
 
             // Cancel timeout if stopping manually
             if (timeoutRunnable != null) {
                 timeoutHandler.removeCallbacks(timeoutRunnable);
             }
 
-            Log.d(TAG, "=== STT STOPPED LISTENING ===");
+            Tracer.record(Tracer.DEBUG, TAG, "stopped listening");
         }
     }
 
+    // startListening() may be called in any state; this only reports an idle recognizer
     public boolean isReady() {
-        return speechRecognizer != null && !isListening;
+        return speechRecognizer != null && lifecycle.isIdle();
+    }
+
+    public String latencySummary() {
+        String summary = micReadyLatency.summary();
+        for (Map.Entry<InputMode, SilenceTuner> entry : silenceTuners.entrySet()) {
+            summary += "\n" + entry.getKey() + " " + entry.getValue().summary();
+        }
+        if (backends != null) {
+            summary += "\nBackend: " + backend + "\n" + backends.summary();
+        }
+        return summary;
     }
 
     public void shutdown() {
+        timeoutHandler.removeCallbacks(finishTimeout);
+        lifecycle.reset();
+        if (backends != null) {
+            saveBackendStats();
+        }
         if (speechRecognizer != null) {
             speechRecognizer.destroy();
             speechRecognizer = null;
@@ -215,96 +525,112 @@ public class STTManager implements RecognitionListener {
                 timeoutHandler.removeCallbacks(timeoutRunnable);
             }
 
-            Log.d(TAG, "STT Shutdown");
-        }
-    }
-
-    // ENHANCED: Better digit and command extraction
-    private int extractDigit(String speech) {
-        String lowerSpeech = speech.toLowerCase().trim();
-        Log.d(TAG, "===> Parsing speech for digit: '" + speech + "'");
-
-        // Handle various ways people say digits
-        if (lowerSpeech.contains("zero") || lowerSpeech.equals("0")) return 0;
-        if (lowerSpeech.contains("one") || lowerSpeech.equals("1") || lowerSpeech.contains("won")) return 1;
-        if (lowerSpeech.contains("two") || lowerSpeech.equals("2") || lowerSpeech.contains("too")) return 2;
-        if (lowerSpeech.contains("three") || lowerSpeech.equals("3") || lowerSpeech.contains("tree")) return 3;
-        if (lowerSpeech.contains("four") || lowerSpeech.equals("4") || lowerSpeech.contains("for")) return 4;
-        if (lowerSpeech.contains("five") || lowerSpeech.equals("5")) return 5;
-        if (lowerSpeech.contains("six") || lowerSpeech.equals("6") || lowerSpeech.contains("sicks")) return 6;
-        if (lowerSpeech.contains("seven") || lowerSpeech.equals("7")) return 7;
-        if (lowerSpeech.contains("eight") || lowerSpeech.equals("8") || lowerSpeech.contains("ate")) return 8;
-        if (lowerSpeech.contains("nine") || lowerSpeech.equals("9") || lowerSpeech.contains("nein")) return 9;
-
-        // Try to extract pure numbers
-        String digitsOnly = speech.replaceAll("[^0-9]", "");
-        if (digitsOnly.length() == 1) {
-            try {
-                return Integer.parseInt(digitsOnly);
-            } catch (NumberFormatException e) {
-                // Continue to no match
-            }
+            Tracer.record(Tracer.INFO, TAG, "shut down");
         }
-
-        Log.w(TAG, "No valid digit found in: '" + speech + "'");
-        return -1;
-    }
-
-    // NEW: Check for completion commands
-    private boolean isDoneCommand(String speech) {
-        String lowerSpeech = speech.toLowerCase().trim();
-        return lowerSpeech.contains("done") ||
-                lowerSpeech.contains("finished") ||
-                lowerSpeech.contains("complete") ||
-                lowerSpeech.contains("send") ||
-                lowerSpeech.equals("end");
     }
 
     @Override
     public void onReadyForSpeech(Bundle params) {
-        Log.d(TAG, "🟢 === READY FOR " + currentMode + " SPEECH ===");
+        lifecycle.onReadyForSpeech();
+        TurnTimeline.mark(TurnTimeline.MIC_READY, SystemClock.uptimeMillis());
+        if (turnRequestedAt >= 0) {
+            long latency = SystemClock.uptimeMillis() - turnRequestedAt;
+            turnRequestedAt = -1;
+            micReadyLatency.record(latency);
+            Tracer.record(Tracer.INFO, TAG, "mic ready ms", currentMode, latency);
+        } else {
+            Tracer.record(Tracer.DEBUG, TAG, "ready for speech", currentMode);
+        }
     }
 
     @Override
     public void onBeginningOfSpeech() {
-        Log.d(TAG, "🔵 === BEGINNING OF " + currentMode + " SPEECH ===");
+        lifecycle.onBeginningOfSpeech();
+        speechBeganAt = SystemClock.uptimeMillis();
+        TurnTimeline.mark(TurnTimeline.SPEECH_BEGIN, SystemClock.uptimeMillis());
+        Tracer.record(Tracer.DEBUG, TAG, "beginning of speech", currentMode);
     }
 
     @Override
     public void onRmsChanged(float rmsdb) {
-        // Keep your existing implementation
+        silenceTuners.get(currentMode).onLevel(rmsdb, SystemClock.uptimeMillis());
     }
 
     @Override
     public void onBufferReceived(byte[] buffer) {
-        Log.d(TAG, "📊 Audio buffer received: " + (buffer != null ? buffer.length + " bytes" : "null"));
+        Tracer.record(Tracer.VERBOSE, TAG, "audio buffer bytes", buffer != null ? buffer.length : -1);
     }
 
     @Override
     public void onEndOfSpeech() {
-        Log.d(TAG, "🔴 === END OF " + currentMode + " SPEECH ===");
-        isListening = false;
+        Tracer.record(Tracer.DEBUG, TAG, "end of speech", currentMode);
+        lifecycle.onEndOfSpeech();
+        speechEndedAt = SystemClock.uptimeMillis();
 
         // NEW: No automatic restart - wait for explicit command from USSDDetectorService
         // This is the key change that implements our "menu-like loop" strategy
-        Log.d(TAG, "Waiting for explicit restart command...");
     }
 
     @Override
     public void onError(int error) {
-        isListening = false;
         String errorMessage = getErrorText(error);
-        Log.e(TAG, "❌ === STT ERROR: " + errorMessage + " (Code: " + error + ") ===");
-
-        // NEW: For digit-by-digit mode, some errors can be handled gracefully
-        if (currentMode == InputMode.DIGIT_BY_DIGIT) {
-            if (error == SpeechRecognizer.ERROR_NO_MATCH || error == SpeechRecognizer.ERROR_SPEECH_TIMEOUT) {
-                // Don't report as error, just let the system continue
-                Log.d(TAG, "No match in digit-by-digit mode, ready for next attempt");
+        // No match and speech timeouts end most silent turns; only errors passed on to the
+        // service are logged as failures
+        Tracer.record(Tracer.INFO, TAG, "recognizer error", errorMessage, error);
+
+        if (error == ERROR_LANGUAGE_NOT_SUPPORTED || error == ERROR_LANGUAGE_UNAVAILABLE) {
+            // This backend can't do the language; move on to the next one for this turn
+            backends.markUnsupported(backend, recognitionLanguage);
+            saveBackendStats();
+            if (backends.choose(recognitionLanguage) != backend) {
+                recreateRecognizer();
+                lifecycle.requestStart();
+                startListeningInternal();
                 return;
             }
+            onSessionEnded();
+        } else if (error == SpeechRecognizer.ERROR_NETWORK || error == SpeechRecognizer.ERROR_NETWORK_TIMEOUT
+                || error == SpeechRecognizer.ERROR_SERVER) {
+            recordBackendFailure();
+            onSessionEnded();
+        } else if (error == SpeechRecognizer.ERROR_RECOGNIZER_BUSY || error == SpeechRecognizer.ERROR_CLIENT
+                || error == ERROR_SERVER_DISCONNECTED) {
+            // A turn that never got the microphone, or one queued behind this session, gets
+            // one go on the fresh instance
+            boolean retry = lifecycle.isStartPending()
+                    || (lifecycle.getState() == RecognizerLifecycle.State.STARTING && !retriedBusyStart);
+            recreateRecognizer();
+            if (retry) {
+                retriedBusyStart = true;
+                lifecycle.requestStart();
+                startListeningInternal();
+                return;
+            }
+        } else {
+            onSessionEnded();
+        }
+
+        if (error == SpeechRecognizer.ERROR_NO_MATCH) {
+            endSilenceTuning(false);
+        }
+
+        if ((error == SpeechRecognizer.ERROR_NO_MATCH || error == SpeechRecognizer.ERROR_SPEECH_TIMEOUT)
+                && currentMode != InputMode.CONTINUOUS_DIGITS) {
+            // Nothing understood for a menu or a single digit: prompt again
+            rejectAnswer("");
+            return;
+        }
+
+        if (currentMode == InputMode.CONTINUOUS_DIGITS
+                && (error == SpeechRecognizer.ERROR_NO_MATCH || error == SpeechRecognizer.ERROR_SPEECH_TIMEOUT)) {
+            // Nothing usable heard; the service decides whether to fall back to single digits
+            if (callback != null) {
+                callback.onDigitSequenceRecognized("", 0f);
+            }
+            return;
         }
 
+        Log.e(TAG, "Recognizer error: " + errorMessage + " (" + error + ")");
         if (callback != null) {
             callback.onSTTError(errorMessage);
         }
@@ -312,62 +638,130 @@ public class STTManager implements RecognitionListener {
 
     @Override
     public void onResults(Bundle results) {
-        isListening = false;
-        Log.d(TAG, "🎯 === onResults() CALLED FOR " + currentMode + " ===");
+        Tracer.record(Tracer.DEBUG, TAG, "results", currentMode);
+        // Claimed before the session ends, since ending it may start the next turn
+        boolean claimed = lifecycle.claimResult();
+        if (speechEndedAt >= 0) {
+            recordBackendSuccess(SystemClock.uptimeMillis() - speechEndedAt);
+            speechEndedAt = -1;
+        }
+        onSessionEnded();
+        if (!claimed) {
+            // Already acted on from the partial results of this session
+            Tracer.record(Tracer.DEBUG, TAG, "results already taken from partials");
+            return;
+        }
+        TurnTimeline.mark(TurnTimeline.RESULT, SystemClock.uptimeMillis());
 
         if (results == null) {
-            Log.e(TAG, "❌ Results bundle is NULL");
+            Log.e(TAG, "Results bundle is null");
+            endSilenceTuning(false);
+            rejectAnswer("");
             return;
         }
 
         ArrayList<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
         if (matches == null || matches.isEmpty()) {
-            Log.e(TAG, "❌ No recognition results");
+            Tracer.record(Tracer.DEBUG, TAG, "no recognition results");
+            endSilenceTuning(false);
+            rejectAnswer("");
             return;
         }
 
-        // Try all matches to find the best result
-        for (String match : matches) {
-            Log.d(TAG, "Trying match: '" + match + "'");
-
-            if (currentMode == InputMode.MENU) {
-                // KEEP: Existing working menu logic
-                int digit = extractDigit(match);
-                if (digit != -1) {
-                    Log.d(TAG, "✅ === EXTRACTED MENU NUMBER: " + digit + " ===");
-                    if (callback != null) {
-                        callback.onNumberRecognized(digit);
-                    }
-                    return;
+        if (currentMode == InputMode.CONTINUOUS_DIGITS) {
+            deliverDigitSequence(matches, results.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES));
+            return;
+        }
+
+        boolean acceptDone = currentMode == InputMode.DIGIT_BY_DIGIT;
+        int result = digitParser.best(matches, results.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES), acceptDone,
+                allowedDigits);
+        Tracer.record(Tracer.DEBUG, TAG, "best of n-best", matches.get(0), result);
+
+        if (currentMode == InputMode.MENU) {
+            // KEEP: Existing working menu logic
+            if (result != DigitParser.NO_DIGIT && !isEcho(hypothesisFor(result, matches))) {
+                Tracer.record(Tracer.DEBUG, TAG, "extracted menu number", result);
+                endSilenceTuning(true);
+                bargeIn = false;
+                if (callback != null) {
+                    callback.onNumberRecognized(result);
                 }
-            } else if (currentMode == InputMode.DIGIT_BY_DIGIT) {
-                // NEW: Check for "done" command first
-                if (isDoneCommand(match)) {
-                    Log.d(TAG, "✅ === USER SAID DONE ===");
-                    if (callback != null) {
-                        callback.onDoneCommandRecognized();
-                    }
-                    return;
+                return;
+            }
+        } else if (currentMode == InputMode.DIGIT_BY_DIGIT) {
+            // NEW: Check for "done" command first ("yes" confirms the same way)
+            if (result == DigitParser.DONE || result == DigitParser.YES) {
+                Tracer.record(Tracer.DEBUG, TAG, "user said done");
+                endSilenceTuning(true);
+                if (callback != null) {
+                    callback.onDoneCommandRecognized();
                 }
+                return;
+            }
 
-                // Then check for digit
-                int digit = extractDigit(match);
-                if (digit != -1) {
-                    longInputBuffer.append(digit);
-                    Log.d(TAG, "✅ === CAPTURED DIGIT: " + digit + " (Buffer: " + longInputBuffer.toString() + ") ===");
+            // Then check for digit
+            if (result >= 0 && result <= 9) {
+                Tracer.record(Tracer.DEBUG, TAG, "captured digit", result);
+                endSilenceTuning(true);
 
-                    if (callback != null) {
-                        callback.onDigitRecognized(digit);
-                    }
+                if (callback != null) {
+                    callback.onDigitRecognized(result);
+                }
 
-                    // Reset the completion timeout
-                    resetCompletionTimeout();
-                    return;
+                // Reset the completion timeout
+                resetCompletionTimeout();
+                return;
+            }
+        }
+
+        Tracer.record(Tracer.DEBUG, TAG, "no valid result in n-best", matches.size());
+        endSilenceTuning(false);
+        rejectAnswer(matches.get(0));
+    }
+
+    // The highest ranked hypothesis naming the digit best() settled on
+    private CharSequence hypothesisFor(int digit, ArrayList<String> matches) {
+        for (String match : matches) {
+            if (digitParser.parse(match, false, allowedDigits) == digit) return match;
+        }
+        return matches.get(0);
+    }
+
+    // Picks the hypothesis that reads best as a digit string, weighted by the recognizer's
+    // own confidence where it reports one
+    private void deliverDigitSequence(ArrayList<String> matches, float[] scores) {
+        DigitSequenceParser.Result best = null;
+        float bestScore = 0f;
+
+        for (int rank = 0; rank < matches.size(); rank++) {
+            String match = matches.get(rank);
+            if (rank == 0 && digitParser.isDone(match)) {
+                Tracer.record(Tracer.DEBUG, TAG, "user said done");
+                endSilenceTuning(true);
+                if (callback != null) {
+                    callback.onDoneCommandRecognized();
                 }
+                return;
+            }
+
+            DigitSequenceParser.Result parsed = sequenceParser.parse(match, amountInput);
+            float recognizerScore = scores != null && rank < scores.length && scores[rank] > 0
+                    ? scores[rank] : 1f / (1 + rank);
+            float score = parsed.getConfidence() * recognizerScore;
+            Tracer.record(Tracer.VERBOSE, TAG, "digit sequence candidate", parsed, (long) (score * 100));
+            if (score > bestScore) {
+                best = parsed;
+                bestScore = score;
             }
         }
 
-        Log.w(TAG, "No valid result found in any of the " + matches.size() + " matches");
+        String digits = best != null ? best.getDigits() : "";
+        Tracer.record(Tracer.DEBUG, TAG, "digit sequence", digits, (long) (bestScore * 100));
+        endSilenceTuning(!digits.isEmpty());
+        if (callback != null) {
+            callback.onDigitSequenceRecognized(digits, bestScore);
+        }
     }
 
     @Override
@@ -376,18 +770,19 @@ public class STTManager implements RecognitionListener {
             ArrayList<String> partialMatches = partialResults.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
             if (partialMatches != null && !partialMatches.isEmpty()) {
                 String partialText = partialMatches.get(0);
-                Log.d(TAG, "🔄 Partial (" + currentMode + "): '" + partialText + "'");
+                Tracer.record(Tracer.VERBOSE, TAG, "partial", partialText);
 
                 if (currentMode == InputMode.MENU) {
                     // KEEP: Existing working partial logic for menu
-                    int digit = extractDigit(partialText);
-                    if (digit != -1) {
-                        Log.d(TAG, "✅ === FOUND MENU NUMBER IN PARTIAL: " + digit + " ===");
+                    int digit = digitParser.parse(partialText, false, allowedDigits);
+                    if (digit != DigitParser.NO_DIGIT && !isEcho(partialText)) {
+                        Tracer.record(Tracer.DEBUG, TAG, "menu number in partial", digit);
 
-                        if (speechRecognizer != null && isListening) {
-                            speechRecognizer.stopListening();
-                            isListening = false;
-                        }
+                        if (!lifecycle.claimResult()) return;
+                        TurnTimeline.mark(TurnTimeline.RESULT, SystemClock.uptimeMillis());
+                        bargeIn = false;
+                        endSilenceTuning(true);
+                        finishSession();
 
                         if (callback != null) {
                             callback.onNumberRecognized(digit);
@@ -395,33 +790,30 @@ public class STTManager implements RecognitionListener {
                     }
                 } else if (currentMode == InputMode.DIGIT_BY_DIGIT) {
                     // NEW: Handle partial results for digit-by-digit
-                    if (isDoneCommand(partialText)) {
-                        Log.d(TAG, "✅ === FOUND DONE COMMAND IN PARTIAL ===");
+                    int result = digitParser.parse(partialText, true, allowedDigits);
+                    if (result == DigitParser.DONE || result == DigitParser.YES) {
+                        Tracer.record(Tracer.DEBUG, TAG, "done command in partial");
 
-                        if (speechRecognizer != null && isListening) {
-                            speechRecognizer.stopListening();
-                            isListening = false;
-                        }
+                        if (!lifecycle.claimResult()) return;
+                        TurnTimeline.mark(TurnTimeline.RESULT, SystemClock.uptimeMillis());
+                        endSilenceTuning(true);
+                        finishSession();
 
                         if (callback != null) {
                             callback.onDoneCommandRecognized();
                         }
-                    } else {
-                        int digit = extractDigit(partialText);
-                        if (digit != -1) {
-                            Log.d(TAG, "✅ === FOUND DIGIT IN PARTIAL: " + digit + " ===");
-
-                            if (speechRecognizer != null && isListening) {
-                                speechRecognizer.stopListening();
-                                isListening = false;
-                            }
-
-                            longInputBuffer.append(digit);
-                            if (callback != null) {
-                                callback.onDigitRecognized(digit);
-                            }
-                            resetCompletionTimeout();
+                    } else if (result >= 0 && result <= 9) {
+                        Tracer.record(Tracer.DEBUG, TAG, "digit in partial", result);
+
+                        if (!lifecycle.claimResult()) return;
+                        TurnTimeline.mark(TurnTimeline.RESULT, SystemClock.uptimeMillis());
+                        endSilenceTuning(true);
+                        finishSession();
+
+                        if (callback != null) {
+                            callback.onDigitRecognized(result);
                         }
+                        resetCompletionTimeout();
                     }
                 }
             }
@@ -453,6 +845,10 @@ public class STTManager implements RecognitionListener {
                 return "Server error";
             case SpeechRecognizer.ERROR_SPEECH_TIMEOUT:
                 return "No Speech input";
+            case ERROR_LANGUAGE_NOT_SUPPORTED:
+                return "Language not supported";
+            case ERROR_LANGUAGE_UNAVAILABLE:
+                return "Language unavailable";
             default:
                 return "Unknown error";
         }
@@ -0,0 +1,113 @@
+package com.voiceussd.prototype.audio;
+
+import com.voiceussd.prototype.diagnostics.LatencyStats;
+
+import java.util.Arrays;
+
+// Learns how long one user pauses inside an answer for one input mode and derives the
+// end-of-speech silence from it, clamped to [minMs, maxMs]. Pauses come from the
+// recognizer's RMS callbacks; an answer that wasn't understood after speech was heard is
+// taken as a possible cut-off and backs the silence off for a while.
+final class SilenceTuner {
+    static final int MIN_SAMPLES = 5;
+    static final int WINDOW = 20;
+    static final float SPEECH_RMS_DB = 3f;
+    static final long MARGIN_MS = 300;
+    static final long BACKOFF_STEP_MS = 250;
+    static final long BACKOFF_DECAY_MS = 50;
+
+    private final long minMs;
+    private final long maxMs;
+
+    // Longest pause inside each recent answer, ring buffer
+    private final long[] pauses = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int pauseCount = 0;
+    private int pauseNext = 0;
+    private long backoffMs = 0;
+    private long utteranceMs = 0;
+    private long silenceMs;
+
+    // Last voice frame -> result, i.e. the dead time the user actually waits
+    private final LatencyStats deadTime;
+
+    // Current session
+    private boolean active = false;
+    private long firstVoiceAt = -1;
+    private long lastVoiceAt = -1;
+    private long longestPause = 0;
+
+    SilenceTuner(String name, long minMs, long maxMs) {
+        this.minMs = minMs;
+        this.maxMs = maxMs;
+        this.silenceMs = maxMs;
+        this.deadTime = new LatencyStats(name + " last voice -> result");
+    }
+
+    // Silence to configure for the next session
+    long getSilenceMs() {
+        return silenceMs;
+    }
+
+    void startSession() {
+        active = true;
+        firstVoiceAt = -1;
+        lastVoiceAt = -1;
+        longestPause = 0;
+    }
+
+    // Sessions that shouldn't teach anything, e.g. ones overlapping our own speech
+    void ignoreSession() {
+        active = false;
+    }
+
+    void onLevel(float rmsdb, long nowMs) {
+        if (!active || rmsdb < SPEECH_RMS_DB) return;
+
+        if (firstVoiceAt < 0) {
+            firstVoiceAt = nowMs;
+        } else if (nowMs - lastVoiceAt > longestPause) {
+            longestPause = nowMs - lastVoiceAt;
+        }
+        lastVoiceAt = nowMs;
+    }
+
+    // understood: the session produced a usable answer
+    void endSession(boolean understood, long nowMs) {
+        if (!active) return;
+        active = false;
+        if (firstVoiceAt < 0) return; // Nothing said, nothing learned
+
+        deadTime.record(nowMs - lastVoiceAt);
+        if (understood) {
+            pauses[pauseNext] = longestPause;
+            pauseNext = (pauseNext + 1) % WINDOW;
+            if (pauseCount < WINDOW) pauseCount++;
+
+            long length = lastVoiceAt - firstVoiceAt;
+            utteranceMs = utteranceMs == 0 ? length : (utteranceMs * 4 + length) / 5;
+            backoffMs = Math.max(0, backoffMs - BACKOFF_DECAY_MS);
+        } else if (silenceMs < maxMs) {
+            backoffMs = Math.min(maxMs - minMs, backoffMs + BACKOFF_STEP_MS);
+        }
+        silenceMs = compute();
+    }
+
+    private long compute() {
+        if (pauseCount < MIN_SAMPLES) return maxMs;
+
+        System.arraycopy(pauses, 0, sorted, 0, pauseCount);
+        Arrays.sort(sorted, 0, pauseCount);
+        long p90 = sorted[(pauseCount * 9 - 1) / 10];
+        return Math.max(minMs, Math.min(maxMs, p90 + MARGIN_MS + backoffMs));
+    }
+
+    long getBackoffMs() {
+        return backoffMs;
+    }
+
+    String summary() {
+        return "silence=" + silenceMs + "ms (" + minMs + "-" + maxMs + "), samples=" + pauseCount
+                + ", backoff=" + backoffMs + "ms, utterance=" + utteranceMs + "ms; " + deadTime.summary();
+    }
+}
@@ -0,0 +1,118 @@
+package com.voiceussd.prototype.audio;
+
+import com.voiceussd.prototype.text.MenuOption;
+
+import java.util.List;
+
+// Builds the sentences TTSManager speaks. Kept free of Android types so the strings can be
+// prepared (and cached) ahead of the TTS call.
+public final class SpeechText {
+    // Fixed pieces of the digit confirmation, also rendered on their own for ClipSplicer
+    public static final String GOT = "Got";
+    public static final String CURRENT_INPUT = "Current input:";
+    public static final String NEXT_DIGIT_PROMPT = "Say next digit or done.";
+    public static final String EMPTY_INPUT = "empty";
+
+    private SpeechText() {
+    }
+
+    public static String menu(List<MenuOption> menuOptions) {
+        StringBuilder speechBuilder = new StringBuilder();
+        speechBuilder.append("Say the number representing the service you want.");
+
+        for (MenuOption option : menuOptions) {
+            speechBuilder.append(option).append(". ");
+        }
+
+        return speechBuilder.toString();
+    }
+
+    public static String menuReprompt(List<MenuOption> menuOptions) {
+        StringBuilder speechBuilder = new StringBuilder("Sorry, that is not one of the options. Say ");
+        for (int i = 0; i < menuOptions.size(); i++) {
+            if (i > 0) {
+                speechBuilder.append(i == menuOptions.size() - 1 ? " or " : ", ");
+            }
+            speechBuilder.append(menuOptions.get(i).getNumber());
+        }
+        return speechBuilder.append('.').toString();
+    }
+
+    public static String digitReprompt(String currentInput) {
+        if (currentInput == null || currentInput.isEmpty()) {
+            return "Sorry, I did not catch a digit. Say the first digit.";
+        }
+        return "Sorry, I did not catch a digit. " + NEXT_DIGIT_PROMPT;
+    }
+
+    public static String wrongPrefix(String prefix, String currentInput) {
+        return "Sorry, this number must start with " + formatInputForSpeech(prefix) + ". " + tryAgain(currentInput);
+    }
+
+    public static String tooLong(int maxLength, String currentInput) {
+        return "Sorry, that is more than " + maxLength + " digits. " + tryAgain(currentInput);
+    }
+
+    public static String tooShort(int minLength, String currentInput) {
+        return "Sorry, this needs at least " + minLength + " digits. " + tryAgain(currentInput);
+    }
+
+    public static String noAnswerUnderstood() {
+        return "Sorry, I could not understand an answer. Closing this request, please dial again.";
+    }
+
+    public static String inputFailed(String currentInput) {
+        return "Sorry, that did not reach the phone. " + tryAgain(currentInput);
+    }
+
+    private static String tryAgain(String currentInput) {
+        if (currentInput == null || currentInput.isEmpty()) {
+            return "Please start again.";
+        }
+        return "So far I have " + formatInputForSpeech(currentInput) + ". Please continue.";
+    }
+
+    public static String digitInputStart(String inputPrompt) {
+        return inputPrompt + ". Say the first digit.";
+    }
+
+    public static String digitSequenceStart(String inputPrompt) {
+        return inputPrompt + ". Say the digits, then say done.";
+    }
+
+    public static String digitSequenceConfirmation(String currentInput) {
+        return "Got " + formatInputForSpeech(currentInput) + ". Say more digits or done.";
+    }
+
+    public static String digitByDigitFallback(String currentInput) {
+        if (currentInput == null || currentInput.isEmpty()) {
+            return "Sorry, I did not catch that. Let's go one digit at a time. Say the first digit.";
+        }
+        return "Sorry, I did not catch that. So far I have " + formatInputForSpeech(currentInput)
+                + ". Let's go one digit at a time. Say the next digit.";
+    }
+
+    public static String digitConfirmation(int digit, String currentInput) {
+        return GOT + " " + digit + ". " + CURRENT_INPUT + " " + formatInputForSpeech(currentInput) + ". " + NEXT_DIGIT_PROMPT;
+    }
+
+    public static String inputCompletion(String finalInput) {
+        return "Input completed: " + formatInputForSpeech(finalInput) + ". Submitting.";
+    }
+
+    // Add spaces between digits for clearer pronunciation
+    public static String formatInputForSpeech(String input) {
+        if (input == null || input.isEmpty()) {
+            return EMPTY_INPUT;
+        }
+
+        StringBuilder formatted = new StringBuilder(input.length() * 2);
+        for (int i = 0; i < input.length(); i++) {
+            if (i > 0) {
+                formatted.append(' ');
+            }
+            formatted.append(input.charAt(i));
+        }
+        return formatted.toString();
+    }
+}
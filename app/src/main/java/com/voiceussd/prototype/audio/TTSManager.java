@@ -2,16 +2,24 @@ package com.voiceussd.prototype.audio;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
 import android.speech.tts.UtteranceProgressListener;
+import android.speech.tts.Voice;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.voiceussd.prototype.diagnostics.LatencyStats;
+import com.voiceussd.prototype.diagnostics.Tracer;
+import com.voiceussd.prototype.diagnostics.TurnTimeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
-import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
 
 public class TTSManager implements TextToSpeech.OnInitListener {
     private static final String TAG = "TTSManager";
@@ -19,8 +27,42 @@ public class TTSManager implements TextToSpeech.OnInitListener {
     private boolean isTTSReady = false;
     private Context context;
 
+    // Menus and input prompts repeat across sessions, so they are rendered once and replayed
+    // from disk instead of going through the engine every time
+    private static final String CACHE_DIR = "tts";
+    private static final long CACHE_MAX_BYTES = 8L * 1024 * 1024;
+    private static final String CACHE_UTTERANCE_PREFIX = "cache:";
+    private static final float SPEECH_RATE = 1.0f;
+    private static final float PITCH = 1.0f;
+
+    private final TtsAudioCache audioCache;
+    private final ClipPlayer clipPlayer;
+    private final Set<String> pendingSynthesis = new HashSet<>();
+
+    // Request -> first audio, split by whether the clip came from the cache
+    private final LatencyStats cachedFirstAudio = new LatencyStats("first audio (cached)");
+    private final LatencyStats synthesizedFirstAudio = new LatencyStats("first audio (synthesized)");
+    private volatile String timedUtteranceId;
+    private volatile long timedRequestAt;
+
+    // Digit confirmations are spliced from word clips once all of them have been rendered
+    private final ClipSplicer splicer = new ClipSplicer();
+    private final Map<String, String> phraseKeys = new HashMap<>(); // cache key -> clip id
+    private final LatencyStats splicedConfirmations = new LatencyStats("digit confirmation (spliced)");
+    private final LatencyStats synthesizedConfirmations = new LatencyStats("digit confirmation (synthesized)");
+
+    // Told what we say and when, for barge-in echo rejection
+    private volatile EchoGuard echoGuard;
+
     public TTSManager(Context context) {
+        this(context, Looper.getMainLooper());
+    }
+
+    // looper: the thread that calls this manager; cached clips complete there
+    public TTSManager(Context context, Looper looper) {
         this.context = context;
+        this.clipPlayer = new ClipPlayer(looper);
+        this.audioCache = new TtsAudioCache(new File(context.getCacheDir(), CACHE_DIR), CACHE_MAX_BYTES);
         initializeTTS();
     }
 
@@ -37,9 +79,10 @@ public class TTSManager implements TextToSpeech.OnInitListener {
                 Log.e(TAG, "Language not supported");
             } else {
                 isTTSReady = true;
-                tts.setSpeechRate(1.0f);
-                tts.setPitch(1.0f);
+                tts.setSpeechRate(SPEECH_RATE);
+                tts.setPitch(PITCH);
                 setupUtteranceListener();
+                prepareClips();
                 Log.d(TAG, "TTS initialized successfully");
             }
         } else {
@@ -63,74 +106,245 @@ public class TTSManager implements TextToSpeech.OnInitListener {
         tts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
             @Override
             public void onStart(String utteranceId) {
-                Log.d(TAG, "=== TTS STARTED READING ===");
+                Tracer.record(Tracer.DEBUG, TAG, "started", utteranceId);
+
+                EchoGuard guard = echoGuard;
+                if (guard != null && !utteranceId.startsWith(CACHE_UTTERANCE_PREFIX)) {
+                    guard.onRange(0, SystemClock.uptimeMillis());
+                }
+                if (!utteranceId.startsWith(CACHE_UTTERANCE_PREFIX)) {
+                    TurnTimeline.mark(TurnTimeline.TTS_START, SystemClock.uptimeMillis());
+                }
+
+                if (utteranceId.equals(timedUtteranceId)) {
+                    timedUtteranceId = null;
+                    long elapsed = SystemClock.uptimeMillis() - timedRequestAt;
+                    if ("digit_confirmation".equals(utteranceId)) {
+                        synthesizedConfirmations.record(elapsed);
+                    } else {
+                        synthesizedFirstAudio.record(elapsed);
+                    }
+                }
             }
 
             @Override
             public void onDone(String utteranceId) {
-                Log.d(TAG, "=== TTS FINISHED - utteranceId: " + utteranceId + " ===");
-
-                // Handle different types of TTS completion
-                if ("ussd_menu".equals(utteranceId) || "ussd_input_start".equals(utteranceId)) {
-                    // Original behavior - trigger STT after menu or initial input prompt
-                    Log.d(TAG, "=== READY TO LISTEN (INITIAL) ===");
-                    if (sttCallback != null) {
-                        sttCallback.onTTSFinished();
-                    }
-                } else if ("digit_confirmation".equals(utteranceId) || "next_digit_prompt".equals(utteranceId)) {
-                    // NEW: After digit confirmation, trigger next digit listening
-                    Log.d(TAG, "=== READY FOR NEXT DIGIT ===");
-                    if (sttCallback != null) {
-                        sttCallback.onDigitConfirmationFinished();
-                    }
-                } else {
-                    // Read-only content or completion messages
-                    Log.d(TAG, "Read-only content finished, no STT needed");
+                Tracer.record(Tracer.DEBUG, TAG, "done", utteranceId);
+
+                if (utteranceId.startsWith(CACHE_UTTERANCE_PREFIX)) {
+                    onClipSynthesized(utteranceId.substring(CACHE_UTTERANCE_PREFIX.length()), true);
+                    return;
                 }
+                dispatchDone(utteranceId);
             }
 
             @Override
             public void onError(String utteranceId) {
                 Log.e(TAG, "TTS error occurred for utteranceId: " + utteranceId);
+
+                if (utteranceId.startsWith(CACHE_UTTERANCE_PREFIX)) {
+                    onClipSynthesized(utteranceId.substring(CACHE_UTTERANCE_PREFIX.length()), false);
+                }
+            }
+
+            @Override
+            public void onRangeStart(String utteranceId, int start, int end, int frame) {
+                // API 26+: keeps the echo guard's word timeline in step with the audio
+                EchoGuard guard = echoGuard;
+                if (guard != null && !utteranceId.startsWith(CACHE_UTTERANCE_PREFIX)) {
+                    guard.onRange(start, SystemClock.uptimeMillis());
+                }
+            }
+
+            @Override
+            public void onStop(String utteranceId, boolean interrupted) {
+                // Renders still queued when a QUEUE_FLUSH speak arrives are dropped
+                if (utteranceId.startsWith(CACHE_UTTERANCE_PREFIX)) {
+                    onClipSynthesized(utteranceId.substring(CACHE_UTTERANCE_PREFIX.length()), false);
+                }
             }
         });
     }
 
-    // KEEP: Your existing working speakMenu method
-    public void speakMenu(String ussdText) {
-        if (!isTTSReady) {
-            Log.w(TAG, "TTS not ready yet");
-            return;
+    // Same completion path for engine speech (binder thread) and cached clips (main thread)
+    private void dispatchDone(String utteranceId) {
+        TurnTimeline.mark(TurnTimeline.TTS_DONE, SystemClock.uptimeMillis());
+        // Handle different types of TTS completion
+        if ("ussd_menu".equals(utteranceId) || "ussd_input_start".equals(utteranceId)) {
+            // Original behavior - trigger STT after menu or initial input prompt
+            if (sttCallback != null) {
+                sttCallback.onTTSFinished();
+            }
+        } else if ("digit_confirmation".equals(utteranceId) || "next_digit_prompt".equals(utteranceId)) {
+            // NEW: After digit confirmation, trigger next digit listening
+            if (sttCallback != null) {
+                sttCallback.onDigitConfirmationFinished();
+            }
+        }
+        // Read-only content and completion messages need no STT
+    }
+
+    private void onClipSynthesized(String key, boolean success) {
+        synchronized (pendingSynthesis) {
+            pendingSynthesis.remove(key);
+        }
+        if (success && audioCache.commit(key)) {
+            Tracer.record(Tracer.DEBUG, TAG, "cached clip", key, audioCache.getTotalBytes());
+            String clipId;
+            synchronized (phraseKeys) {
+                clipId = phraseKeys.get(key);
+            }
+            if (clipId != null) {
+                loadPhrase(clipId, key);
+            }
+        } else {
+            audioCache.discard(key);
         }
+    }
 
-        List<String> menuOptions = parseMenuOptions(ussdText);
+    // Loads the splicer's word clips for the current voice, rendering the ones not cached yet.
+    // Safe to call repeatedly: loaded and in-flight clips are skipped.
+    private void prepareClips() {
+        String voice = voiceName();
+        for (Map.Entry<String, String> phrase : ClipSplicer.phrases().entrySet()) {
+            String clipId = phrase.getKey();
+            if (splicer.has(clipId)) continue;
+
+            String key = TtsAudioCache.key(phrase.getValue(), voice, SPEECH_RATE, PITCH);
+            synchronized (phraseKeys) {
+                phraseKeys.put(key, clipId);
+            }
+            if (!loadPhrase(clipId, key)) {
+                synthesizeForCache(phrase.getValue(), key);
+            }
+        }
+    }
 
-        if (menuOptions.isEmpty()) {
-            Log.w(TAG, "No menu options found to speak");
-            return;
+    private boolean loadPhrase(String clipId, String key) {
+        File clip = audioCache.find(key);
+        if (clip == null) return false;
+
+        try {
+            PcmAudio audio = PcmAudio.readWav(clip);
+            if (!splicer.put(clipId, audio)) {
+                // Engine output format changed; start the set over with this clip
+                splicer.clear();
+                splicer.put(clipId, audio);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable word clip: " + e.getMessage());
+            audioCache.remove(key);
+            return false;
         }
+    }
 
-        String speechText = createSpeechText(menuOptions);
-        Log.d(TAG, "Speaking menu: " + speechText);
+    // Recurring prompts: play the pre-rendered clip when there is one, otherwise speak through
+    // the engine and render the clip in the background for next time
+    private void speakRecurring(String speechText, String utteranceId) {
+        long requestedAt = SystemClock.uptimeMillis();
+        String key = TtsAudioCache.key(speechText, voiceName(), SPEECH_RATE, PITCH);
+
+        File clip = audioCache.find(key);
+        if (clip != null) {
+            try {
+                PcmAudio audio = PcmAudio.readWav(clip);
+                timedUtteranceId = null;
+                tts.stop();
+                if (clipPlayer.play(audio, () -> dispatchDone(utteranceId))) {
+                    cachedFirstAudio.record(SystemClock.uptimeMillis() - requestedAt);
+                    TurnTimeline.mark(TurnTimeline.TTS_START, SystemClock.uptimeMillis());
+                    noteSpeaking(speechText, audio.getDurationMs());
+                    Tracer.record(Tracer.DEBUG, TAG, "playing cached clip", utteranceId, audio.getDurationMs());
+                    return;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Dropping unreadable cached clip: " + e.getMessage());
+                audioCache.remove(key);
+            }
+        }
+
+        timedUtteranceId = utteranceId;
+        timedRequestAt = requestedAt;
+        speak(speechText, utteranceId);
+        synthesizeForCache(speechText, key);
+    }
+
+    private void synthesizeForCache(String speechText, String key) {
+        synchronized (pendingSynthesis) {
+            if (!pendingSynthesis.add(key)) return;
+        }
 
+        // Queued behind the live utterance; a later QUEUE_FLUSH drops it and the next miss retries
+        String synthesisId = CACHE_UTTERANCE_PREFIX + key;
         Bundle params = new Bundle();
-        params.putString(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, "ussd_menu");
-        tts.speak(speechText, TextToSpeech.QUEUE_FLUSH, params, "ussd_menu");
+        params.putString(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, synthesisId);
+        if (tts.synthesizeToFile(speechText, params, audioCache.pendingFile(key), synthesisId) != TextToSpeech.SUCCESS) {
+            synchronized (pendingSynthesis) {
+                pendingSynthesis.remove(key);
+            }
+        }
     }
 
-    // NEW: Start digit-by-digit input session
-    public void speakDigitInputStart(String inputPrompt) {
+    private void speak(String text, String utteranceId) {
+        clipPlayer.stop();
+        noteSpeaking(text, 0);
+
+        Bundle params = new Bundle();
+        params.putString(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, utteranceId);
+        tts.speak(text, TextToSpeech.QUEUE_FLUSH, params, utteranceId);
+    }
+
+    private void noteSpeaking(String text, long durationMs) {
+        EchoGuard guard = echoGuard;
+        if (guard != null) {
+            guard.speaking(text, SystemClock.uptimeMillis(), durationMs);
+        }
+    }
+
+    public void setEchoGuard(EchoGuard guard) {
+        this.echoGuard = guard;
+    }
+
+    // Barge-in: cut the prompt short. No completion callback follows.
+    public void stopSpeaking() {
+        clipPlayer.stop();
+        if (tts != null) {
+            tts.stop();
+        }
+        EchoGuard guard = echoGuard;
+        if (guard != null) {
+            guard.stopped(SystemClock.uptimeMillis());
+        }
+    }
+
+    private String voiceName() {
+        Voice voice = tts.getVoice();
+        return voice != null ? voice.getName() : String.valueOf(tts.getDefaultEngine());
+    }
+
+    // Takes the finished menu sentence (SpeechText.menu); parsing is done and cached upstream
+    public void speakMenu(String speechText) {
         if (!isTTSReady) {
             Log.w(TAG, "TTS not ready yet");
             return;
         }
 
-        String speechText = inputPrompt + ". Say the first digit.";
-        Log.d(TAG, "Speaking digit input start: " + speechText);
+        Tracer.record(Tracer.DEBUG, TAG, "speaking menu", speechText);
 
-        Bundle params = new Bundle();
-        params.putString(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, "ussd_input_start");
-        tts.speak(speechText, TextToSpeech.QUEUE_FLUSH, params, "ussd_input_start");
+        speakRecurring(speechText, "ussd_menu");
+    }
+
+    // NEW: Start digit-by-digit input session; speechText comes from SpeechText.digitInputStart
+    public void speakDigitInputStart(String speechText) {
+        if (!isTTSReady) {
+            Log.w(TAG, "TTS not ready yet");
+            return;
+        }
+
+        Tracer.record(Tracer.DEBUG, TAG, "speaking digit input start", speechText);
+
+        speakRecurring(speechText, "ussd_input_start");
     }
 
     // NEW: Confirm digit and prompt for next
@@ -140,44 +354,58 @@ public class TTSManager implements TextToSpeech.OnInitListener {
             return;
         }
 
-        String speechText = "Got " + digit + ". Current input: " + formatInputForSpeech(currentInput) + ". Say next digit or done.";
-        Log.d(TAG, "Speaking digit confirmation: " + speechText);
+        long requestedAt = SystemClock.uptimeMillis();
+        PcmAudio spliced = currentInput != null ? splicer.digitConfirmation(digit, currentInput) : null;
+        if (spliced != null) {
+            timedUtteranceId = null;
+            tts.stop();
+            if (clipPlayer.play(spliced, () -> dispatchDone("digit_confirmation"))) {
+                splicedConfirmations.record(SystemClock.uptimeMillis() - requestedAt);
+                TurnTimeline.mark(TurnTimeline.TTS_START, SystemClock.uptimeMillis());
+                if (echoGuard != null) {
+                    noteSpeaking(SpeechText.digitConfirmation(digit, currentInput), spliced.getDurationMs());
+                }
+                Tracer.record(Tracer.DEBUG, TAG, "playing spliced confirmation", currentInput, spliced.getDurationMs());
+                return;
+            }
+        }
 
-        Bundle params = new Bundle();
-        params.putString(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, "digit_confirmation");
-        tts.speak(speechText, TextToSpeech.QUEUE_FLUSH, params, "digit_confirmation");
+        String speechText = SpeechText.digitConfirmation(digit, currentInput);
+        Tracer.record(Tracer.DEBUG, TAG, "speaking digit confirmation", speechText);
+
+        timedUtteranceId = "digit_confirmation";
+        timedRequestAt = requestedAt;
+        speak(speechText, "digit_confirmation");
+        // Word clips rendered at init may have been flushed by earlier speech; queue the rest
+        prepareClips();
     }
 
-    // NEW: Completion confirmation
-    public void speakInputCompletion(String finalInput) {
+    // Read back everything captured so far in continuous digit mode
+    public void confirmDigitSequence(String currentInput) {
         if (!isTTSReady) {
             Log.w(TAG, "TTS not ready yet");
             return;
         }
 
-        String speechText = "Input completed: " + formatInputForSpeech(finalInput) + ". Submitting.";
-        Log.d(TAG, "Speaking input completion: " + speechText);
+        String speechText = SpeechText.digitSequenceConfirmation(currentInput);
+        Tracer.record(Tracer.DEBUG, TAG, "speaking digit sequence confirmation", speechText);
 
-        Bundle params = new Bundle();
-        params.putString(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, "input_completion");
-        tts.speak(speechText, TextToSpeech.QUEUE_FLUSH, params, "input_completion");
+        timedUtteranceId = "digit_confirmation";
+        timedRequestAt = SystemClock.uptimeMillis();
+        speak(speechText, "digit_confirmation");
     }
 
-    // NEW: Helper to format input for clear speech
-    private String formatInputForSpeech(String input) {
-        if (input == null || input.isEmpty()) {
-            return "empty";
+    // NEW: Completion confirmation
+    public void speakInputCompletion(String finalInput) {
+        if (!isTTSReady) {
+            Log.w(TAG, "TTS not ready yet");
+            return;
         }
 
-        // Add spaces between digits for clearer pronunciation
-        StringBuilder formatted = new StringBuilder();
-        for (int i = 0; i < input.length(); i++) {
-            if (i > 0) {
-                formatted.append(" ");
-            }
-            formatted.append(input.charAt(i));
-        }
-        return formatted.toString();
+        String speechText = SpeechText.inputCompletion(finalInput);
+        Tracer.record(Tracer.DEBUG, TAG, "speaking input completion", speechText);
+
+        speak(speechText, "input_completion");
     }
 
     // KEEP: Your existing speakSimpleText method for other cases
@@ -191,51 +419,24 @@ public class TTSManager implements TextToSpeech.OnInitListener {
             return;
         }
 
-        Log.d(TAG, "Speaking simple text: " + text + " (expects input: " + expectsInput + ")");
+        Tracer.record(Tracer.DEBUG, TAG, expectsInput ? "speaking prompt" : "speaking read-only text", text);
 
         String utteranceId = expectsInput ? "ussd_input_start" : "ussd_readonly";
 
-        Bundle params = new Bundle();
-        params.putString(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, utteranceId);
-        tts.speak(text, TextToSpeech.QUEUE_FLUSH, params, utteranceId);
-    }
-
-    // KEEP: Your existing parsing methods
-    private List<String> parseMenuOptions(String ussdText) {
-        List<String> options = new ArrayList<>();
-
-        Pattern pattern = Pattern.compile("(\\d+)\\)\\s*(.+?)(?=\\n\\d+\\)|\\nn\\s|$)", Pattern.DOTALL);
-        Matcher matcher = pattern.matcher(ussdText);
-
-        while (matcher.find()) {
-            String number = matcher.group(1);
-            String text = Objects.requireNonNull(matcher.group(2)).trim();
-            text = text.replaceAll("\\s+", " ").trim();
-
-            String option = number + ": " + text;
-            options.add(option);
-            Log.d(TAG, "Parsed: " + option);
-        }
-
-        return options;
-    }
-
-    private String createSpeechText(List<String> menuOptions) {
-        StringBuilder speechBuilder = new StringBuilder();
-        speechBuilder.append("Say the number representing the service you want.");
-
-        for (String option : menuOptions) {
-            speechBuilder.append(option).append(". ");
-        }
-
-        return speechBuilder.toString();
+        speak(text, utteranceId);
     }
 
     public boolean isReady() {
         return isTTSReady;
     }
 
+    public String cacheSummary() {
+        return audioCache.summary() + "\n" + cachedFirstAudio.summary() + "\n" + synthesizedFirstAudio.summary()
+                + "\n" + splicedConfirmations.summary() + "\n" + synthesizedConfirmations.summary();
+    }
+
     public void shutdown() {
+        clipPlayer.stop();
         if (tts != null) {
             tts.stop();
             tts.shutdown();
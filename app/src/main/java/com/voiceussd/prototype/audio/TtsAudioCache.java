@@ -0,0 +1,142 @@
+package com.voiceussd.prototype.audio;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Size-bounded on-disk LRU of synthesized utterances. Entries are WAV files named after a
+// hash of the text and the voice settings that produced them; file modification times carry
+// the LRU order across restarts. Methods are called from the main and TTS binder threads.
+public final class TtsAudioCache {
+    private static final String CLIP_SUFFIX = ".wav";
+    private static final String PENDING_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    public TtsAudioCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    public static String key(String text, String voice, float rate, float pitch) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((voice + "|" + rate + "|" + pitch + "|" + text).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    public synchronized File find(String key) {
+        if (entries.get(key) == null) { // get(), not containsKey(), so the entry moves to the LRU tail
+            misses++;
+            return null;
+        }
+
+        File clip = clipFile(key);
+        if (!clip.isFile()) {
+            // Deleted behind our back (cache directories can be cleared by the system)
+            totalBytes -= entries.remove(key);
+            misses++;
+            return null;
+        }
+
+        hits++;
+        clip.setLastModified(System.currentTimeMillis());
+        return clip;
+    }
+
+    // Where synthesizeToFile should write; becomes visible to find() after commit()
+    public File pendingFile(String key) {
+        return new File(directory, key + PENDING_SUFFIX);
+    }
+
+    public synchronized boolean commit(String key) {
+        File pending = pendingFile(key);
+        File clip = clipFile(key);
+        if (!pending.isFile() || pending.length() == 0 || !pending.renameTo(clip)) {
+            pending.delete();
+            return false;
+        }
+
+        Long previous = entries.put(key, clip.length());
+        if (previous != null) totalBytes -= previous;
+        totalBytes += clip.length();
+        trim();
+        return true;
+    }
+
+    public synchronized void discard(String key) {
+        pendingFile(key).delete();
+    }
+
+    // For clips that turn out to be unreadable
+    public synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) totalBytes -= size;
+        clipFile(key).delete();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized String summary() {
+        return "clips=" + entries.size() + ", bytes=" + totalBytes + "/" + maxBytes + ", hits=" + hits + ", misses=" + misses;
+    }
+
+    private File clipFile(String key) {
+        return new File(directory, key + CLIP_SUFFIX);
+    }
+
+    private void load() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(PENDING_SUFFIX)) {
+                file.delete(); // Left over from a synthesis that never finished
+            } else if (name.endsWith(CLIP_SUFFIX)) {
+                entries.put(name.substring(0, name.length() - CLIP_SUFFIX.length()), file.length());
+                totalBytes += file.length();
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            clipFile(entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+}
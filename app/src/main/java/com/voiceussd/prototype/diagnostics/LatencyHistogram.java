@@ -0,0 +1,79 @@
+package com.voiceussd.prototype.diagnostics;
+
+// Log-linear histogram of millisecond latencies. Values below 16 get a bucket each; above that
+// every power of two is split into 8 buckets, so a reported percentile is within 12.5% of the
+// true value. The buckets are one fixed array, so recording never allocates.
+// Not synchronized; TurnTimeline guards the histograms it owns.
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    // Top power of two tracked; anything slower (over ~35 minutes) lands in the last bucket
+    private static final int MAX_EXPONENT = 30;
+    static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long maxMs;
+
+    public void record(long ms) {
+        if (ms < 0) ms = 0;
+        counts[bucketOf(ms)]++;
+        count++;
+        if (ms > maxMs) maxMs = ms;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxMs() {
+        return maxMs;
+    }
+
+    // Upper bound of the bucket holding the given percentile, never above the largest sample
+    public long percentile(double percent) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxMs);
+            }
+        }
+        return maxMs;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        maxMs = 0;
+    }
+
+    static int bucketOf(long ms) {
+        if (ms < LINEAR_LIMIT) return (int) ms;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(ms);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int sub = (int) (ms >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + sub) * width + width - 1;
+    }
+
+    public String summary() {
+        if (count == 0) return "no samples";
+        return "n=" + count + ", p50=" + percentile(50) + "ms, p90=" + percentile(90) + "ms, p99="
+                + percentile(99) + "ms, max=" + maxMs + "ms";
+    }
+}
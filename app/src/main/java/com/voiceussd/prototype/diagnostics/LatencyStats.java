@@ -0,0 +1,42 @@
+package com.voiceussd.prototype.diagnostics;
+
+// Running count / mean / max for one latency measurement. Safe to record from any thread.
+public final class LatencyStats {
+    private final String name;
+    private long count = 0;
+    private long totalMs = 0;
+    private long maxMs = 0;
+    private long lastMs = -1;
+
+    public LatencyStats(String name) {
+        this.name = name;
+    }
+
+    public synchronized void record(long ms) {
+        count++;
+        totalMs += ms;
+        lastMs = ms;
+        if (ms > maxMs) maxMs = ms;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMeanMs() {
+        return count == 0 ? 0 : totalMs / count;
+    }
+
+    public synchronized long getMaxMs() {
+        return maxMs;
+    }
+
+    public synchronized long getLastMs() {
+        return lastMs;
+    }
+
+    public synchronized String summary() {
+        if (count == 0) return name + ": no samples";
+        return name + ": n=" + count + ", mean=" + (totalMs / count) + "ms, max=" + maxMs + "ms, last=" + lastMs + "ms";
+    }
+}
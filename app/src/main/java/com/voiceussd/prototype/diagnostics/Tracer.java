@@ -0,0 +1,129 @@
+package com.voiceussd.prototype.diagnostics;
+
+import java.io.PrintWriter;
+
+// In-memory trace ring buffer used instead of streaming debug output to logcat.
+//
+// Trace points are gated by a runtime level. When a level is off the call returns after one
+// int compare, and since messages are constants and arguments are passed as-is (no string
+// building at the call site), a disabled trace point costs nothing else. When enabled, records
+// go into preallocated arrays that are only formatted when dump() is called.
+public final class Tracer {
+
+    public static final int OFF = 0;
+    public static final int INFO = 1;
+    public static final int DEBUG = 2;
+    public static final int VERBOSE = 3;
+
+    private static final int CAPACITY = 2048;
+    private static final char[] LEVEL_CHARS = {'-', 'I', 'D', 'V'};
+
+    private static volatile int level = OFF;
+
+    private static final long[] times = new long[CAPACITY];
+    private static final byte[] levels = new byte[CAPACITY];
+    private static final String[] tags = new String[CAPACITY];
+    private static final String[] messages = new String[CAPACITY];
+    private static final Object[] details = new Object[CAPACITY];
+    private static final long[] values = new long[CAPACITY];
+    private static final long[] extras = new long[CAPACITY];
+    private static int next = 0;
+    private static long recorded = 0;
+
+    private Tracer() {
+    }
+
+    public static void setLevel(int newLevel) {
+        level = Math.max(OFF, Math.min(VERBOSE, newLevel));
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    // For call sites that need to do work before they can record anything
+    public static boolean isEnabled(int traceLevel) {
+        return traceLevel <= level;
+    }
+
+    public static void record(int traceLevel, String tag, String message) {
+        if (traceLevel > level) return;
+        write(traceLevel, tag, message, null, Long.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    public static void record(int traceLevel, String tag, String message, long value) {
+        if (traceLevel > level) return;
+        write(traceLevel, tag, message, null, value, Long.MIN_VALUE);
+    }
+
+    public static void record(int traceLevel, String tag, String message, long value, long extra) {
+        if (traceLevel > level) return;
+        write(traceLevel, tag, message, null, value, extra);
+    }
+
+    // Detail is stored by reference and only turned into a string by dump()
+    public static void record(int traceLevel, String tag, String message, Object detail) {
+        if (traceLevel > level) return;
+        write(traceLevel, tag, message, detail, Long.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    public static void record(int traceLevel, String tag, String message, Object detail, long value) {
+        if (traceLevel > level) return;
+        write(traceLevel, tag, message, detail, value, Long.MIN_VALUE);
+    }
+
+    private static synchronized void write(int traceLevel, String tag, String message, Object detail,
+                                           long value, long extra) {
+        int slot = next;
+        times[slot] = System.nanoTime();
+        levels[slot] = (byte) traceLevel;
+        tags[slot] = tag;
+        messages[slot] = message;
+        details[slot] = detail;
+        values[slot] = value;
+        extras[slot] = extra;
+        next = (slot + 1) % CAPACITY;
+        recorded++;
+    }
+
+    public static synchronized long recordedCount() {
+        return recorded;
+    }
+
+    public static synchronized void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            details[i] = null;
+        }
+        next = 0;
+        recorded = 0;
+    }
+
+    // Oldest record first; times are milliseconds relative to the newest record
+    public static synchronized void dump(PrintWriter writer) {
+        int count = (int) Math.min(recorded, CAPACITY);
+        writer.println("Trace level " + LEVEL_CHARS[level] + ", " + count + " of " + recorded + " records");
+        if (count == 0) return;
+
+        int first = (next - count + CAPACITY) % CAPACITY;
+        long newest = times[(next - 1 + CAPACITY) % CAPACITY];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int slot = (first + i) % CAPACITY;
+            line.setLength(0);
+            line.append(String.format("%10.3f ", (times[slot] - newest) / 1_000_000.0))
+                    .append(LEVEL_CHARS[levels[slot]]).append(' ')
+                    .append(tags[slot]).append(": ")
+                    .append(messages[slot]);
+            if (details[slot] != null) {
+                line.append(" '").append(details[slot]).append('\'');
+            }
+            if (values[slot] != Long.MIN_VALUE) {
+                line.append(' ').append(values[slot]);
+            }
+            if (extras[slot] != Long.MIN_VALUE) {
+                line.append(' ').append(extras[slot]);
+            }
+            writer.println(line);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.voiceussd.prototype.diagnostics;
+
+import java.io.PrintWriter;
+
+// Where the time goes in one USSD turn, from the carrier's dialog appearing to our answer
+// being sent and the next dialog arriving. The service, TTS, recognizer and input simulator
+// each mark their stage; every mark feeds the histogram of the interval since the previous
+// mark of the same turn. Marks arrive from several threads and never allocate.
+//
+// Times are SystemClock.uptimeMillis(), the clock AccessibilityEvent.getEventTime() uses, so
+// the dialog mark can carry the event's own time and include the wait in our event queue.
+public final class TurnTimeline {
+
+    public static final int DIALOG_DETECTED = 0; // First screen of a session
+    public static final int SNAPSHOT_DONE = 1;   // Tree walked and screen classified
+    public static final int TTS_START = 2;       // First audio of a prompt
+    public static final int TTS_DONE = 3;
+    public static final int MIC_READY = 4;
+    public static final int SPEECH_BEGIN = 5;
+    public static final int RESULT = 6;          // Recognizer answer acted on
+    public static final int TEXT_SET = 7;        // Input field confirmed the text
+    public static final int SEND_CLICKED = 8;
+    public static final int NEXT_DIALOG = 9;     // Carrier's reply to what we sent
+    private static final int STAGE_COUNT = 10;
+
+    private static final String[] STAGE_NAMES = {
+            "dialog detected", "snapshot done", "tts start", "tts done", "mic ready",
+            "speech begin", "result", "text set", "send clicked", "next dialog"
+    };
+
+    private static final LatencyHistogram[] stages = new LatencyHistogram[STAGE_COUNT];
+    private static final LatencyHistogram dialogToSend = new LatencyHistogram();
+    private static final LatencyHistogram sendToNextDialog = new LatencyHistogram();
+
+    static {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    private static long turnStartedAt = -1;
+    private static long lastMarkAt = -1;
+    private static long sentAt = -1;
+
+    private TurnTimeline() {
+    }
+
+    public static synchronized void mark(int stage, long uptimeMs) {
+        if (stage == DIALOG_DETECTED || stage == NEXT_DIALOG) {
+            if (stage == NEXT_DIALOG && sentAt >= 0) {
+                long carrier = uptimeMs - sentAt;
+                stages[NEXT_DIALOG].record(carrier);
+                sendToNextDialog.record(carrier);
+            }
+            turnStartedAt = uptimeMs;
+            sentAt = -1;
+        } else if (turnStartedAt >= 0) {
+            stages[stage].record(uptimeMs - lastMarkAt);
+            if (stage == SEND_CLICKED) {
+                dialogToSend.record(uptimeMs - turnStartedAt);
+                sentAt = uptimeMs;
+            }
+        } else {
+            // Speech or input outside a USSD session (the service just started, or a test prompt)
+            return;
+        }
+        lastMarkAt = uptimeMs;
+    }
+
+    // The dialog closed; nothing after this belongs to its turns
+    public static synchronized void endSession() {
+        turnStartedAt = -1;
+        lastMarkAt = -1;
+        sentAt = -1;
+    }
+
+    public static synchronized void reset() {
+        for (LatencyHistogram histogram : stages) {
+            histogram.reset();
+        }
+        dialogToSend.reset();
+        sendToNextDialog.reset();
+        endSession();
+    }
+
+    static synchronized long percentile(int stage, double percent) {
+        return stages[stage].percentile(percent);
+    }
+
+    static synchronized long dialogToSendPercentile(double percent) {
+        return dialogToSend.percentile(percent);
+    }
+
+    public static synchronized void dump(PrintWriter writer) {
+        writer.println("Turn timeline (ms since previous mark):");
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            if (stages[i].getCount() > 0) {
+                writer.println("  " + STAGE_NAMES[i] + ": " + stages[i].summary());
+            }
+        }
+        writer.println("  dialog -> answer sent: " + dialogToSend.summary());
+        writer.println("  answer sent -> next dialog: " + sendToNextDialog.summary());
+    }
+
+    // One row per stage, tab separated, for comparing devices and releases side by side
+    public static synchronized void export(PrintWriter writer, String device, String release) {
+        writer.println("# device\t" + device);
+        writer.println("# release\t" + release);
+        writer.println("stage\tn\tp50\tp90\tp99\tmax");
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            exportRow(writer, STAGE_NAMES[i], stages[i]);
+        }
+        exportRow(writer, "dialog -> answer sent", dialogToSend);
+        exportRow(writer, "answer sent -> next dialog", sendToNextDialog);
+    }
+
+    private static void exportRow(PrintWriter writer, String name, LatencyHistogram histogram) {
+        writer.println(name + '\t' + histogram.getCount() + '\t' + histogram.percentile(50) + '\t'
+                + histogram.percentile(90) + '\t' + histogram.percentile(99) + '\t' + histogram.getMaxMs());
+    }
+}
@@ -0,0 +1,61 @@
+package com.voiceussd.prototype.services;
+
+import android.view.accessibility.AccessibilityNodeInfo;
+
+// Live trees; every getChild() is a binder call into the dialer
+final class AccessibilityNodeReader implements NodeReader<AccessibilityNodeInfo> {
+    static final AccessibilityNodeReader INSTANCE = new AccessibilityNodeReader();
+
+    private AccessibilityNodeReader() {
+    }
+
+    @Override
+    public int getWindowId(AccessibilityNodeInfo node) {
+        return node.getWindowId();
+    }
+
+    @Override
+    public CharSequence getText(AccessibilityNodeInfo node) {
+        return node.getText();
+    }
+
+    @Override
+    public CharSequence getClassName(AccessibilityNodeInfo node) {
+        return node.getClassName();
+    }
+
+    @Override
+    public String getViewIdResourceName(AccessibilityNodeInfo node) {
+        return node.getViewIdResourceName();
+    }
+
+    @Override
+    public CharSequence getContentDescription(AccessibilityNodeInfo node) {
+        return node.getContentDescription();
+    }
+
+    @Override
+    public boolean isEditable(AccessibilityNodeInfo node) {
+        return node.isEditable();
+    }
+
+    @Override
+    public boolean isClickable(AccessibilityNodeInfo node) {
+        return node.isClickable();
+    }
+
+    @Override
+    public int getChildCount(AccessibilityNodeInfo node) {
+        return node.getChildCount();
+    }
+
+    @Override
+    public AccessibilityNodeInfo getChild(AccessibilityNodeInfo node, int index) {
+        return node.getChild(index);
+    }
+
+    @Override
+    public void recycle(AccessibilityNodeInfo node) {
+        node.recycle();
+    }
+}
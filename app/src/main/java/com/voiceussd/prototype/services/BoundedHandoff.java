@@ -0,0 +1,51 @@
+package com.voiceussd.prototype.services;
+
+// Fixed-size FIFO between the thread that receives work and the thread that does it. When
+// the consumer falls behind the oldest item is pushed out and handed back to the producer
+// (to recycle), so a stalled worker costs stale events rather than memory.
+final class BoundedHandoff<T> {
+    private final Object[] items;
+    private int head = 0;
+    private int size = 0;
+    private long evicted = 0;
+
+    BoundedHandoff(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity " + capacity);
+        items = new Object[capacity];
+    }
+
+    // Returns the item pushed out to make room, or null
+    @SuppressWarnings("unchecked")
+    synchronized T offer(T item) {
+        T pushedOut = null;
+        if (size == items.length) {
+            pushedOut = (T) items[head];
+            items[head] = null;
+            head = (head + 1) % items.length;
+            size--;
+            evicted++;
+        }
+        items[(head + size) % items.length] = item;
+        size++;
+        return pushedOut;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized T poll() {
+        if (size == 0) return null;
+
+        T item = (T) items[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        size--;
+        return item;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long getEvicted() {
+        return evicted;
+    }
+}
@@ -0,0 +1,13 @@
+package com.voiceussd.prototype.services;
+
+// Resource IDs in the stock dialer's USSD dialog, shared by the walk that finds these views
+// and the simulator that types into them
+final class DialerViews {
+    static final String INPUT_FIELD_ID = "com.android.phone:id/input_field";
+    static final String SEND_BUTTON_ID = "android:id/button1";
+    static final String CANCEL_BUTTON_ID = "android:id/button2";
+    static final String MESSAGE_ID = "android:id/message";
+
+    private DialerViews() {
+    }
+}
@@ -0,0 +1,81 @@
+package com.voiceussd.prototype.services;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import com.voiceussd.prototype.text.CharSequences;
+
+// First stage of the accessibility pipeline. Runs for every event the framework delivers,
+// so it only looks at the event type and package name and never allocates.
+public class EventPreFilter {
+
+    public static final int DROP = 0;      // Not ours, ignore
+    public static final int PROCESS = 1;   // Handle right away
+    public static final int COALESCE = 2;  // Fold into the pending burst for this window
+
+    // One writer each: dropped by accept() on the main thread, the other two by the worker.
+    // Volatile so dump() on a binder thread reads whole, current values; with a single
+    // writer the increments lose nothing.
+    private volatile long dropped = 0;
+    private volatile long coalesced = 0;
+    private volatile long processed = 0;
+
+    // Main thread
+    public int accept(int eventType, CharSequence packageName, boolean ussdActive) {
+        if (eventType != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED &&
+                eventType != AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED &&
+                eventType != AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED) {
+            dropped++;
+            return DROP;
+        }
+
+        if (!isDialerPackage(packageName)) {
+            // While a USSD dialog is up, any other window means the dialog went away
+            if (ussdActive) {
+                return PROCESS;
+            }
+            dropped++;
+            return DROP;
+        }
+
+        return eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED ? PROCESS : COALESCE;
+    }
+
+    // The COALESCE half of accept(), for events that already passed it on another thread
+    public static boolean isCoalescable(int eventType, CharSequence packageName) {
+        return eventType != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED && isDialerPackage(packageName);
+    }
+
+    public static boolean isDialerPackage(CharSequence packageName) {
+        if (packageName == null) return false;
+        return CharSequences.contains(packageName, "phone") ||
+                CharSequences.contains(packageName, "dialer") ||
+                CharSequences.contains(packageName, "telecom") ||
+                CharSequences.contains(packageName, "telephony");
+    }
+
+    // Worker
+    public void onCoalesced() {
+        coalesced++;
+    }
+
+    // Worker
+    public void onProcessed() {
+        processed++;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public String summary() {
+        return "dropped=" + dropped + ", coalesced=" + coalesced + ", processed=" + processed;
+    }
+}
@@ -0,0 +1,211 @@
+package com.voiceussd.prototype.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary trace of the events the worker handled, written on the device with
+// "dumpsys ... record start" and replayed on the JVM. Every distinct string is written once
+// and referred to by index after that, so the package and class names repeated on every event
+// and the node trees that barely change within a session cost a few bytes each.
+final class EventRecording {
+    static final int MAGIC = 0x55535344; // "USSD"
+    static final int VERSION = 1;
+
+    private static final int END = 0;
+    private static final int EVENT = 1;
+
+    private EventRecording() {
+    }
+
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private long lastTime = 0;
+        private int events = 0;
+
+        Writer(OutputStream stream) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        void write(RecordedEvent event) throws IOException {
+            out.writeByte(EVENT);
+            // Coalesced events can be handled after newer ones, so deltas may be negative
+            writeSigned(event.eventTime - lastTime);
+            lastTime = event.eventTime;
+            writeVarint(event.eventType);
+            writeSigned(event.windowId);
+            writeString(event.packageName);
+            writeString(event.className);
+            writeVarint(event.text.size());
+            for (String part : event.text) {
+                writeString(part);
+            }
+            out.writeBoolean(event.root != null);
+            if (event.root != null) {
+                writeNode(event.root);
+            }
+            events++;
+        }
+
+        int getEvents() {
+            return events;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.writeByte(END);
+            out.close();
+        }
+
+        private void writeNode(RecordedNode node) throws IOException {
+            writeSigned(node.windowId);
+            writeString(node.text);
+            writeString(node.className);
+            writeString(node.viewId);
+            writeString(node.contentDescription);
+            writeVarint(node.flags);
+            writeVarint(node.children.size());
+            for (RecordedNode child : node.children) {
+                writeNode(child);
+            }
+        }
+
+        // 0 is null, 1..n a string seen before, n + 1 a new one that follows inline
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarint(index);
+                return;
+            }
+            index = strings.size() + 1;
+            strings.put(value, index);
+            writeVarint(index);
+            out.writeUTF(value);
+        }
+
+        private void writeSigned(long value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    static List<RecordedEvent> read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an event recording");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+
+        Reader reader = new Reader(in);
+        List<RecordedEvent> events = new ArrayList<>();
+        long time = 0;
+        while (true) {
+            int tag;
+            try {
+                tag = in.readUnsignedByte();
+            } catch (EOFException e) {
+                // Recording cut short (the service died); keep what was written
+                break;
+            }
+            if (tag == END) break;
+            if (tag != EVENT) {
+                throw new IOException("Bad record tag " + tag);
+            }
+
+            time += reader.readSigned();
+            int eventType = (int) reader.readVarint();
+            int windowId = (int) reader.readSigned();
+            String packageName = reader.readString();
+            String className = reader.readString();
+            int parts = (int) reader.readVarint();
+            List<String> text = new ArrayList<>(parts);
+            for (int i = 0; i < parts; i++) {
+                text.add(reader.readString());
+            }
+            RecordedEvent event = new RecordedEvent(time, eventType, windowId, packageName, className, text);
+            if (in.readBoolean()) {
+                event.root = reader.readNode();
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        RecordedNode readNode() throws IOException {
+            int windowId = (int) readSigned();
+            String text = readString();
+            String className = readString();
+            String viewId = readString();
+            String contentDescription = readString();
+            int flags = (int) readVarint();
+            int childCount = (int) readVarint();
+            List<RecordedNode> children = new ArrayList<>(childCount);
+            for (int i = 0; i < childCount; i++) {
+                children.add(readNode());
+            }
+            return new RecordedNode(windowId, text, className, viewId, contentDescription, flags, children);
+        }
+
+        String readString() throws IOException {
+            int index = (int) readVarint();
+            if (index == 0) return null;
+            if (index <= strings.size()) return strings.get(index - 1);
+            if (index != strings.size() + 1) {
+                throw new IOException("Bad string index " + index);
+            }
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+
+        long readSigned() throws IOException {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+}
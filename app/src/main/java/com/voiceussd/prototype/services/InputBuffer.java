@@ -0,0 +1,140 @@
+package com.voiceussd.prototype.services;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+// Authoritative contents of the dialog's input field. Changes go to the field through one
+// write at a time; whatever changes arrive while a write is in flight go out together in the
+// next one, so fast recognition can't make writes overwrite each other. A failed write is
+// retried with everything the buffer holds by then; digits are never dropped from the buffer,
+// even when the field keeps refusing them. Confined to one thread.
+final class InputBuffer {
+
+    interface Writer {
+        // Completes true once the field shows text
+        CompletableFuture<Boolean> write(String text);
+    }
+
+    private static final class Waiter {
+        final int version;
+        final CompletableFuture<Boolean> done;
+
+        Waiter(int version, CompletableFuture<Boolean> done) {
+            this.version = version;
+            this.done = done;
+        }
+    }
+
+    // Writes of the same change before its waiters are told it failed
+    static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final Writer writer;
+    private final StringBuilder text = new StringBuilder();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private String confirmed = "";
+    private int version = 0;
+    private int generation = 0; // Bumped by reset, so late results of old writes are ignored
+    private boolean writing = false;
+    private int failedAttempts = 0;
+    private long changes = 0;
+    private long writes = 0;
+
+    InputBuffer(Writer writer) {
+        this.writer = writer;
+    }
+
+    // A new field: drop anything not yet written and start from what it shows
+    void reset(String fieldText) {
+        failWaiters();
+        text.setLength(0);
+        text.append(fieldText);
+        confirmed = fieldText;
+        generation++;
+        writing = false;
+        failedAttempts = 0;
+    }
+
+    // Each completes true once the field shows this change (possibly with later ones)
+    CompletableFuture<Boolean> append(int digit) {
+        text.append(digit);
+        return changed();
+    }
+
+    CompletableFuture<Boolean> replace(String newText) {
+        text.setLength(0);
+        text.append(newText);
+        return changed();
+    }
+
+    String get() {
+        return text.toString();
+    }
+
+    // The field shows the buffer and nothing is on its way
+    boolean isSettled() {
+        return !writing && confirmed.contentEquals(text);
+    }
+
+    long getChanges() {
+        return changes;
+    }
+
+    long getWrites() {
+        return writes;
+    }
+
+    private CompletableFuture<Boolean> changed() {
+        changes++;
+        version++;
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        waiters.add(new Waiter(version, done));
+        if (!writing) {
+            flush();
+        }
+        return done;
+    }
+
+    private void flush() {
+        writing = true;
+        writes++;
+        int writeGeneration = generation;
+        int writeVersion = version;
+        String written = text.toString();
+        writer.write(written).thenAccept(ok -> {
+            if (writeGeneration == generation) {
+                onWritten(writeVersion, written, ok);
+            }
+        });
+    }
+
+    private void onWritten(int writeVersion, String written, boolean ok) {
+        writing = false;
+
+        if (!ok) {
+            // Write the whole buffer again, with any digits that arrived in the meantime
+            if (++failedAttempts < MAX_WRITE_ATTEMPTS) {
+                flush();
+                return;
+            }
+            // Report the failure but keep the text: the next change or submit writes it all out
+            failedAttempts = 0;
+            failWaiters();
+            return;
+        }
+
+        failedAttempts = 0;
+        confirmed = written;
+        while (!waiters.isEmpty() && waiters.peek().version <= writeVersion) {
+            waiters.poll().done.complete(true);
+        }
+        if (version > writeVersion) {
+            flush();
+        }
+    }
+
+    private void failWaiters() {
+        while (!waiters.isEmpty()) {
+            waiters.poll().done.complete(false);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.voiceussd.prototype.services;
+
+import java.util.concurrent.CompletableFuture;
+
+// Turns the accessibility events that follow our own actions into completions: the text
+// we set shows up in a TYPE_VIEW_TEXT_CHANGED, and a click on send makes the dialog change.
+// A send only counts as answered by a new window, or by the dialog we clicked in showing a
+// different message; our own click and late echoes of the text we set change neither.
+// One expectation of each kind is pending at a time; a newer one supersedes the older.
+// Timeouts are driven by the caller. Confined to the thread that owns InputSimulator.
+final class InputConfirmations {
+    private CompletableFuture<Boolean> textWrite;
+    private String expectedText;
+    private CompletableFuture<Boolean> dialogReaction;
+    private int dialogWindowId;
+    private String messageAtClick;
+
+    CompletableFuture<Boolean> expectText(String text) {
+        supersede(textWrite);
+        expectedText = text;
+        textWrite = new CompletableFuture<>();
+        return textWrite;
+    }
+
+    // messageAtClick is the dialog's message when send was clicked, null if it has none
+    CompletableFuture<Boolean> expectDialogReaction(int windowId, String messageAtClick) {
+        supersede(dialogReaction);
+        dialogReaction = new CompletableFuture<>();
+        dialogWindowId = windowId;
+        this.messageAtClick = messageAtClick;
+        return dialogReaction;
+    }
+
+    // Lets the caller skip reading the message for content changes that can't confirm anything
+    boolean awaitsContentOf(int windowId) {
+        return dialogReaction != null && windowId == dialogWindowId;
+    }
+
+    void onTextChanged(CharSequence text) {
+        if (textWrite == null || text == null || !expectedText.contentEquals(text)) return;
+
+        CompletableFuture<Boolean> done = textWrite;
+        textWrite = null;
+        expectedText = null;
+        done.complete(true);
+    }
+
+    // TYPE_WINDOW_STATE_CHANGED: the carrier's reply came up as a new dialog
+    void onWindowChanged() {
+        if (dialogReaction == null) return;
+        completeDialogReaction();
+    }
+
+    // TYPE_WINDOW_CONTENT_CHANGED, with the dialog's message as it reads now
+    void onContentChanged(int windowId, CharSequence message) {
+        if (!awaitsContentOf(windowId) || message == null) return;
+        if (messageAtClick != null && messageAtClick.contentEquals(message)) return;
+        completeDialogReaction();
+    }
+
+    private void completeDialogReaction() {
+        CompletableFuture<Boolean> done = dialogReaction;
+        dialogReaction = null;
+        messageAtClick = null;
+        done.complete(true);
+    }
+
+    // No event in time: fall back to what the caller could check directly
+    void expire(CompletableFuture<Boolean> pending, boolean fallback) {
+        if (pending == textWrite) {
+            textWrite = null;
+            expectedText = null;
+        } else if (pending == dialogReaction) {
+            dialogReaction = null;
+            messageAtClick = null;
+        }
+        pending.complete(fallback);
+    }
+
+    boolean isPending(CompletableFuture<Boolean> pending) {
+        return pending == textWrite || pending == dialogReaction;
+    }
+
+    void cancelAll() {
+        supersede(textWrite);
+        supersede(dialogReaction);
+        textWrite = null;
+        expectedText = null;
+        dialogReaction = null;
+        messageAtClick = null;
+    }
+
+    private static void supersede(CompletableFuture<Boolean> pending) {
+        if (pending != null) {
+            pending.complete(false);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.voiceussd.prototype.services;
+
+// What an input screen accepts: a length range, an optional prefix and whether only digits
+// are allowed. Lets entry finish the moment the answer is complete and turn away a wrong
+// start before the carrier does. Written in the fourth column of the rule table, e.g.
+// "length=10 prefix=07".
+public final class InputSchema {
+    public static final InputSchema ANY = new InputSchema(1, Integer.MAX_VALUE, "", true);
+
+    public enum Verdict {
+        INCOMPLETE, // Valid so far, more may follow
+        COMPLETE,   // Reached the maximum length; nothing more can follow
+        WRONG_PREFIX,
+        TOO_LONG,
+        NOT_NUMERIC
+    }
+
+    private final int minLength;
+    private final int maxLength;
+    private final String prefix;
+    private final boolean numeric;
+
+    public InputSchema(int minLength, int maxLength, String prefix, boolean numeric) {
+        if (minLength < 1 || maxLength < minLength) {
+            throw new IllegalArgumentException("Bad length range " + minLength + "-" + maxLength);
+        }
+        if (prefix.length() > maxLength) {
+            throw new IllegalArgumentException("Prefix longer than the input: " + prefix);
+        }
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.prefix = prefix;
+        this.numeric = numeric;
+    }
+
+    // Space separated: length=N or length=MIN-MAX, prefix=DIGITS, text (allow non-digits)
+    public static InputSchema parse(String spec) {
+        int minLength = ANY.minLength;
+        int maxLength = ANY.maxLength;
+        String prefix = "";
+        boolean numeric = true;
+
+        for (String token : spec.trim().split("\\s+")) {
+            if (token.isEmpty()) continue;
+
+            if (token.startsWith("length=")) {
+                String range = token.substring("length=".length());
+                int dash = range.indexOf('-');
+                try {
+                    minLength = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+                    maxLength = dash < 0 ? minLength : Integer.parseInt(range.substring(dash + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad length: " + token);
+                }
+            } else if (token.startsWith("prefix=")) {
+                prefix = token.substring("prefix=".length());
+            } else if (token.equals("text")) {
+                numeric = false;
+            } else {
+                throw new IllegalArgumentException("Unknown schema setting: " + token);
+            }
+        }
+        return new InputSchema(minLength, maxLength, prefix, numeric);
+    }
+
+    public Verdict check(CharSequence input) {
+        int length = input.length();
+        if (numeric) {
+            for (int i = 0; i < length; i++) {
+                char c = input.charAt(i);
+                if (c < '0' || c > '9') return Verdict.NOT_NUMERIC;
+            }
+        }
+        // Only the part typed so far has to agree with the prefix
+        for (int i = 0, n = Math.min(length, prefix.length()); i < n; i++) {
+            if (input.charAt(i) != prefix.charAt(i)) return Verdict.WRONG_PREFIX;
+        }
+        if (length > maxLength) return Verdict.TOO_LONG;
+        return length == maxLength ? Verdict.COMPLETE : Verdict.INCOMPLETE;
+    }
+
+    // Long enough to send when the user says done
+    public boolean isLongEnough(CharSequence input) {
+        return input.length() >= minLength;
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    @Override
+    public String toString() {
+        return "length=" + minLength + "-" + (maxLength == Integer.MAX_VALUE ? "*" : String.valueOf(maxLength))
+                + (prefix.isEmpty() ? "" : " prefix=" + prefix) + (numeric ? "" : " text");
+    }
+}
@@ -3,186 +3,353 @@ package com.voiceussd.prototype.services;
 import android.accessibilityservice.AccessibilityService;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
+import com.voiceussd.prototype.diagnostics.Tracer;
+import com.voiceussd.prototype.diagnostics.TurnTimeline;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class InputSimulator {
     private static final String TAG = "InputSimulator";
     private AccessibilityService accessibilityService;
 
-    // Resource IDs (keep your existing ones)
-    private static final String INPUT_FIELD_ID = "com.android.phone:id/input_field";
-    private static final String SEND_BUTTON_ID = "android:id/button1";
-    private static final String CANCEL_BUTTON_ID = "android:id/button2";
+    // Node handles for the dialog window we last worked with. Kept across digits and only
+    // looked up again when the window changes or a handle goes stale.
+    private static final int NO_WINDOW = -1;
+    private int handleWindowId = NO_WINDOW;
+    private AccessibilityNodeInfo inputFieldHandle;
+    private AccessibilityNodeInfo sendButtonHandle;
+
+    // Backstops for the events that confirm an action
+    private static final long TEXT_CONFIRM_TIMEOUT_MS = 300;
+    private static final long SEND_CONFIRM_TIMEOUT_MS = 3000;
+    private final InputConfirmations confirmations = new InputConfirmations();
+
+    // What the field should hold; written to it through the cached handle, one write at a time
+    private final InputBuffer inputBuffer = new InputBuffer(this::writeText);
 
-    public InputSimulator(AccessibilityService service) {
+    // Timeouts run on handler, the thread that drives this simulator and feeds it events
+    private final Handler handler;
+
+    public InputSimulator(AccessibilityService service, Handler handler) {
         this.accessibilityService = service;
+        this.handler = handler;
     }
 
-    // KEEP: Your existing working method for menu input
-    public boolean inputNumberAndSend(int number) {
-        Log.d(TAG, "=== ATTEMPTING TO INPUT NUMBER: " + number);
-
-        // Step 1: Find and fill input field
-        boolean inputSuccess = inputNumber(number);
-        if (!inputSuccess) {
-            Log.e(TAG, "Failed to input number");
-            return false;
+    // Seed the handle cache from the walk USSDDetectorService already did for this dialog
+    public void setScreenSnapshot(UssdScreenSnapshot snapshot) {
+        clearHandles();
+        confirmations.cancelAll();
+        if (snapshot == null) {
+            inputBuffer.reset("");
+            return;
         }
 
-        // Step 2: Wait 2 seconds, then click SEND Button
-        Log.d(TAG, "Waiting 2 seconds before sending...");
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            boolean sendSuccess = clickSendButton();
-            if (!sendSuccess) {
-                Log.e(TAG, "Failed to click SEND Button");
-            } else {
-                Log.d(TAG, "=== SUCCESSFULLY SUBMITTED: " + number + " ===");
-            }
-        }, 2000); // 2 second delay
+        handleWindowId = snapshot.getWindowId();
+        inputFieldHandle = copyOf(snapshot.getInputField());
+        sendButtonHandle = copyOf(snapshot.getSendButton());
+        CharSequence fieldText = inputFieldHandle != null ? inputFieldHandle.getText() : null;
+        inputBuffer.reset(fieldText != null ? fieldText.toString() : "");
+    }
 
-        return true; // Return true since input was successful, send happens after delay
+    // Everything entered so far, including digits still on their way to the field
+    public String getInput() {
+        return inputBuffer.get();
     }
 
-    // NEW: Method for real-time digit input
-    // Updated inputSingleDigit method in InputSimulator class
+    public String bufferSummary() {
+        return "changes=" + inputBuffer.getChanges() + ", writes=" + inputBuffer.getWrites();
+    }
 
-    public boolean inputSingleDigit(int digit) {
-        Log.d(TAG, "=== INPUTTING SINGLE DIGIT: " + digit + " ===");
+    private void onWindowChanged(int windowId) {
+        if (windowId != handleWindowId) {
+            clearHandles();
+        }
+    }
 
-        // Add small delay to ensure UI is ready and previous operations are complete
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
+    // Feed of the events that confirm our own actions (worker thread)
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED:
+                if (!event.getText().isEmpty()) {
+                    confirmations.onTextChanged(event.getText().get(0));
+                }
+                break;
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+                onWindowChanged(event.getWindowId());
+                confirmations.onWindowChanged();
+                break;
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+                // Only read back while a send waits on this dialog; the message tells the
+                // carrier's reply apart from our own click and text writes
+                if (confirmations.awaitsContentOf(event.getWindowId())) {
+                    confirmations.onContentChanged(event.getWindowId(), readDialogMessage(event.getWindowId()));
+                }
+                break;
+            default:
+                break;
+        }
+    }
 
-            // Get current text and append the new digit
-            AccessibilityNodeInfo rootNode = accessibilityService.getRootInActiveWindow();
-            if (rootNode == null) {
-                Log.e(TAG, "No active window found for digit input");
-                return;
+    // KEEP: Your existing working method for menu input
+    // Completes once the dialog has reacted to send, false if any step failed
+    public CompletableFuture<Boolean> inputNumberAndSend(int number) {
+        Tracer.record(Tracer.DEBUG, TAG, "input number", number);
+
+        // Step 1: Fill the input field, then send as soon as the text is confirmed
+        return inputBuffer.replace(String.valueOf(number)).thenCompose(written -> {
+            if (!written) {
+                Log.e(TAG, "Failed to input number");
+                return CompletableFuture.completedFuture(false);
             }
+            return send();
+        }).thenApply(sent -> {
+            if (sent) {
+                Tracer.record(Tracer.DEBUG, TAG, "submitted number", number);
+            }
+            return sent;
+        });
+    }
 
-            try {
-                AccessibilityNodeInfo inputField = findInputField(rootNode);
-                if (inputField == null) {
-                    Log.e(TAG, "Input field not found for digit input");
-                    return;
-                }
-
-                // Get current text
-                String currentText = "";
-                CharSequence existingText = inputField.getText();
-                if (existingText != null) {
-                    currentText = existingText.toString();
-                }
+    // NEW: Method for real-time digit input
+    // Completes when the field shows the appended digit. The field is never read back:
+    // the buffer is the authority, and digits arriving mid-write go out with the next write.
+    public CompletableFuture<Boolean> inputSingleDigit(int digit) {
+        Tracer.record(Tracer.DEBUG, TAG, "input digit", digit);
+        return inputBuffer.append(digit);
+    }
 
-                // Append new digit
-                String newText = currentText + digit;
+    // NEW: Method to submit the complete long input
+    // Makes sure the field holds the whole answer, then sends it
+    public CompletableFuture<Boolean> submitLongInput(String fullInput) {
+        Tracer.record(Tracer.DEBUG, TAG, "submitting long input", fullInput);
+
+        CompletableFuture<Boolean> ready = inputBuffer.isSettled() && fullInput.equals(inputBuffer.get())
+                ? CompletableFuture.completedFuture(true)
+                : inputBuffer.replace(fullInput);
+        return ready.thenCompose(written -> {
+            if (!written) {
+                Log.e(TAG, "Input field does not hold the answer, not sending");
+                return CompletableFuture.completedFuture(false);
+            }
+            return send();
+        }).thenApply(sent -> {
+            if (sent) {
+                Tracer.record(Tracer.DEBUG, TAG, "submitted long input", fullInput);
+            } else {
+                Log.e(TAG, "Failed to submit long input");
+            }
+            return sent;
+        });
+    }
 
-                // Set the updated text
-                Bundle arguments = new Bundle();
-                arguments.putCharSequence(AccessibilityNodeInfo.ACTION_ARGUMENT_SET_TEXT_CHARSEQUENCE, newText);
-                boolean success = inputField.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, arguments);
+    // One ACTION_SET_TEXT, confirmed by its TYPE_VIEW_TEXT_CHANGED. Dialers that don't report
+    // text changes are checked by reading the field back after TEXT_CONFIRM_TIMEOUT_MS.
+    private CompletableFuture<Boolean> writeText(String text) {
+        // The cached handle is used as is; refresh() would cost another IPC per digit
+        AccessibilityNodeInfo inputField = inputFieldHandle != null ? inputFieldHandle : acquireInputField();
+        if (inputField == null) {
+            Log.e(TAG, "Input field not found");
+            return CompletableFuture.completedFuture(false);
+        }
 
-                if (success) {
-                    Log.d(TAG, "Successfully added digit: " + digit + " (Full text: '" + newText + "')");
-                } else {
-                    Log.e(TAG, "Failed to add digit: " + digit);
-                }
+        CompletableFuture<Boolean> confirmed = confirmations.expectText(text);
+        Bundle arguments = new Bundle();
+        arguments.putCharSequence(AccessibilityNodeInfo.ACTION_ARGUMENT_SET_TEXT_CHARSEQUENCE, text);
+        boolean success = inputField.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, arguments);
+        if (!success) {
+            // The cached handle may belong to a view that is gone; look it up once more
+            recycle(inputFieldHandle);
+            inputFieldHandle = null;
+            inputField = acquireInputField();
+            success = inputField != null && inputField.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, arguments);
+        }
+        if (!success) {
+            Log.e(TAG, "Failed to set text in input field");
+            confirmations.expire(confirmed, false);
+            return confirmed;
+        }
 
-                inputField.recycle();
-            } finally {
-                rootNode.recycle();
+        handler.postDelayed(() -> {
+            if (confirmations.isPending(confirmed)) {
+                confirmations.expire(confirmed, fieldHolds(text));
+            }
+        }, TEXT_CONFIRM_TIMEOUT_MS);
+        confirmed.thenAccept(written -> {
+            if (written) {
+                TurnTimeline.mark(TurnTimeline.TEXT_SET, SystemClock.uptimeMillis());
             }
+        });
+        return confirmed;
+    }
 
-        }, 100); // 100ms delay
+    // Clicks send and waits for the dialog to change in response
+    private CompletableFuture<Boolean> send() {
+        AccessibilityNodeInfo sendButton = acquireSendButton();
+        int windowId = sendButton != null ? sendButton.getWindowId() : NO_WINDOW;
+        CompletableFuture<Boolean> reacted =
+                confirmations.expectDialogReaction(windowId, readDialogMessage(windowId));
+        if (!clickSendButton()) {
+            confirmations.expire(reacted, false);
+            return reacted;
+        }
 
-        return true; // Return true immediately since the actual work happens in the handler
+        handler.postDelayed(() -> {
+            if (confirmations.isPending(reacted)) {
+                Log.w(TAG, "Dialog did not react to SEND within " + SEND_CONFIRM_TIMEOUT_MS + "ms");
+                confirmations.expire(reacted, false);
+            }
+        }, SEND_CONFIRM_TIMEOUT_MS);
+        return reacted;
     }
 
-    // NEW: Method to submit the complete long input
-    public boolean submitLongInput(String fullInput) {
-        Log.d(TAG, "=== SUBMITTING COMPLETE LONG INPUT: " + fullInput + " ===");
-
-        // Wait a moment, then click send
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            boolean sendSuccess = clickSendButton();
-            if (!sendSuccess) {
-                Log.e(TAG, "Failed to click SEND button for long input");
-            } else {
-                Log.d(TAG, "=== SUCCESSFULLY SUBMITTED LONG INPUT: " + fullInput + " ===");
+    // The message of the dialog in the given window, or null when that window is no longer
+    // active or shows no message view
+    private String readDialogMessage(int windowId) {
+        AccessibilityNodeInfo rootNode = accessibilityService.getRootInActiveWindow();
+        if (rootNode == null) return null;
+
+        String message = null;
+        if (rootNode.getWindowId() == windowId) {
+            List<AccessibilityNodeInfo> matches = rootNode.findAccessibilityNodeInfosByViewId(DialerViews.MESSAGE_ID);
+            if (matches != null) {
+                for (AccessibilityNodeInfo match : matches) {
+                    CharSequence text = match.getText();
+                    if (message == null && text != null) {
+                        message = text.toString();
+                    }
+                    match.recycle();
+                }
             }
-        }, 500); // Shorter delay for long input
+        }
+        rootNode.recycle();
+        return message;
+    }
+
+    private boolean fieldHolds(String text) {
+        AccessibilityNodeInfo inputField = acquireInputField();
+        CharSequence current = inputField != null ? inputField.getText() : null;
+        return current != null && text.contentEquals(current);
+    }
+
+    // Replaces the whole field in one ACTION_SET_TEXT (continuous digit capture)
+    public CompletableFuture<Boolean> setInputText(String text) {
+        Tracer.record(Tracer.DEBUG, TAG, "set input text", text);
+        return inputBuffer.replace(text);
+    }
 
-        return true;
+    // Dismisses the USSD dialog: its cancel button, or back where the dialer has none
+    public boolean cancelDialog() {
+        AccessibilityNodeInfo cancelButton = lookUpInActiveWindow(DialerViews.CANCEL_BUTTON_ID);
+        boolean success = cancelButton != null && cancelButton.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+        recycle(cancelButton);
+        if (!success) {
+            success = accessibilityService.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+        }
+        Tracer.record(Tracer.DEBUG, TAG, "cancelled dialog", success ? 1 : 0);
+        return success;
     }
 
     // KEEP: Your existing private methods (they work perfectly)
-    private boolean inputNumber(int number) {
-        AccessibilityNodeInfo rootNode = accessibilityService.getRootInActiveWindow();
-        if (rootNode == null) {
-            Log.e(TAG, "No active window found");
+    private boolean clickSendButton() {
+        AccessibilityNodeInfo sendButton = acquireSendButton();
+        if (sendButton == null) {
+            Log.e(TAG, "SEND button not found");
             return false;
         }
 
-        try {
-            AccessibilityNodeInfo inputField = findInputField(rootNode);
-            if (inputField == null) {
-                Log.e(TAG, "Input field not found");
-                return false;
-            }
+        boolean success = sendButton.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+        if (!success) {
+            // The cached handle may belong to a view that is gone; look it up once more
+            recycle(sendButtonHandle);
+            sendButtonHandle = null;
+            sendButton = acquireSendButton();
+            success = sendButton != null && sendButton.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+        }
 
-            Bundle arguments = new Bundle();
-            arguments.putCharSequence(AccessibilityNodeInfo.ACTION_ARGUMENT_SET_TEXT_CHARSEQUENCE, String.valueOf(number));
-            boolean success = inputField.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, arguments);
+        if (success) {
+            TurnTimeline.mark(TurnTimeline.SEND_CLICKED, SystemClock.uptimeMillis());
+            Tracer.record(Tracer.DEBUG, TAG, "clicked send");
+        } else {
+            Log.e(TAG, "Failed to click SEND button");
+        }
 
-            if (success) {
-                Log.d(TAG, "Successfully input number: " + number);
-            } else {
-                Log.e(TAG, "ERROR: Failed to set text in input field: ");
-            }
+        return success;
+    }
 
-            inputField.recycle();
-            return success;
-        } finally {
-            rootNode.recycle();
+    private AccessibilityNodeInfo acquireInputField() {
+        // refresh() fails once the view is gone, and also updates the cached text
+        if (inputFieldHandle != null && inputFieldHandle.refresh()) {
+            return inputFieldHandle;
         }
+        recycle(inputFieldHandle);
+        inputFieldHandle = null;
+        inputFieldHandle = lookUpInActiveWindow(DialerViews.INPUT_FIELD_ID);
+        return inputFieldHandle;
     }
 
-    private boolean clickSendButton() {
+    private AccessibilityNodeInfo acquireSendButton() {
+        if (sendButtonHandle == null) {
+            sendButtonHandle = lookUpInActiveWindow(DialerViews.SEND_BUTTON_ID);
+        }
+        return sendButtonHandle;
+    }
+
+    private AccessibilityNodeInfo lookUpInActiveWindow(String resourceId) {
         AccessibilityNodeInfo rootNode = accessibilityService.getRootInActiveWindow();
         if (rootNode == null) {
-            Log.e(TAG, "No active window found for SEND button");
-            return false;
+            Log.e(TAG, "No active window found");
+            return null;
         }
 
-        try {
-            AccessibilityNodeInfo sendButton = findSendButton(rootNode);
-            if (sendButton == null) {
-                Log.e(TAG, "SEND button not found");
-                return false;
-            }
-
-            boolean success = sendButton.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+        if (rootNode.getWindowId() != handleWindowId) {
+            clearHandles();
+            handleWindowId = rootNode.getWindowId();
+        }
 
-            if (success) {
-                Log.d(TAG, "Successfully clicked SEND button");
-            } else {
-                Log.e(TAG, "Failed to click SEND button");
+        // Direct view-ID lookup first; the recursive walk is only a fallback
+        AccessibilityNodeInfo result = null;
+        List<AccessibilityNodeInfo> matches = rootNode.findAccessibilityNodeInfosByViewId(resourceId);
+        if (matches != null) {
+            for (AccessibilityNodeInfo match : matches) {
+                if (result == null) {
+                    result = match;
+                } else {
+                    match.recycle();
+                }
             }
+        }
+        if (result == null) {
+            Tracer.record(Tracer.DEBUG, TAG, "view-ID lookup failed, walking the tree", resourceId);
+            result = findNodeByResourceId(rootNode, resourceId);
+        }
 
-            sendButton.recycle();
-            return success;
-        } finally {
+        if (result != rootNode) {
             rootNode.recycle();
         }
+        return result;
+    }
+
+    private void clearHandles() {
+        recycle(inputFieldHandle);
+        recycle(sendButtonHandle);
+        inputFieldHandle = null;
+        sendButtonHandle = null;
+        handleWindowId = NO_WINDOW;
     }
 
-    private AccessibilityNodeInfo findInputField(AccessibilityNodeInfo root) {
-        return findNodeByResourceId(root, INPUT_FIELD_ID);
+    private static AccessibilityNodeInfo copyOf(AccessibilityNodeInfo node) {
+        return node != null ? AccessibilityNodeInfo.obtain(node) : null;
     }
 
-    private AccessibilityNodeInfo findSendButton(AccessibilityNodeInfo root) {
-        return findNodeByResourceId(root, SEND_BUTTON_ID);
+    private static void recycle(AccessibilityNodeInfo node) {
+        if (node != null) {
+            node.recycle();
+        }
     }
 
     private AccessibilityNodeInfo findNodeByResourceId(AccessibilityNodeInfo node, String resourceId) {
@@ -190,7 +357,7 @@ public class InputSimulator {
 
         String nodeResourceId = node.getViewIdResourceName();
         if (resourceId.equals(nodeResourceId)) {
-            Log.d(TAG, "Found target node: " + resourceId);
+            Tracer.record(Tracer.VERBOSE, TAG, "found target node", resourceId);
             return node;
         }
 
@@ -199,7 +366,9 @@ public class InputSimulator {
             if (child != null) {
                 AccessibilityNodeInfo result = findNodeByResourceId(child, resourceId);
                 if (result != null) {
-                    child.recycle();
+                    if (result != child) {
+                        child.recycle();
+                    }
                     return result;
                 }
                 child.recycle();
@@ -0,0 +1,26 @@
+package com.voiceussd.prototype.services;
+
+// Read access to an accessibility node tree: AccessibilityNodeInfo on the device, recorded
+// nodes when a trace is replayed on the JVM. Nodes handed out by getChild() belong to the
+// caller, who gives them back with recycle().
+public interface NodeReader<N> {
+    int getWindowId(N node);
+
+    CharSequence getText(N node);
+
+    CharSequence getClassName(N node);
+
+    String getViewIdResourceName(N node);
+
+    CharSequence getContentDescription(N node);
+
+    boolean isEditable(N node);
+
+    boolean isClickable(N node);
+
+    int getChildCount(N node);
+
+    N getChild(N node, int index);
+
+    void recycle(N node);
+}
@@ -0,0 +1,56 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.text.DigitParser;
+import com.voiceussd.prototype.text.MenuOption;
+
+import java.util.Collections;
+import java.util.List;
+
+// Result of classifying and parsing one screen text: what kind of screen it is, the menu
+// options on it (menus only) and the sentence to speak for it
+public final class ParsedScreen {
+    private final ScreenRule rule;
+    private final List<MenuOption> options;
+    private final String speechText;
+    private final int allowedDigits;
+
+    public ParsedScreen(ScreenRule rule, List<MenuOption> options, String speechText) {
+        this.rule = rule;
+        this.options = Collections.unmodifiableList(options);
+        this.speechText = speechText;
+        this.allowedDigits = allowedDigits(rule.getType(), options);
+    }
+
+    // Menus accept their single-digit option numbers; input fields any digit
+    private static int allowedDigits(ScreenType type, List<MenuOption> options) {
+        if (type != ScreenType.MENU) return DigitParser.ANY_DIGIT;
+
+        int mask = 0;
+        for (MenuOption option : options) {
+            mask |= DigitParser.digitMask(option.getNumber());
+        }
+        return mask != 0 ? mask : DigitParser.ANY_DIGIT;
+    }
+
+    public ScreenType getType() {
+        return rule.getType();
+    }
+
+    public ScreenRule getRule() {
+        return rule;
+    }
+
+    public List<MenuOption> getOptions() {
+        return options;
+    }
+
+    // DigitParser mask of the answers this screen accepts
+    public int getAllowedDigits() {
+        return allowedDigits;
+    }
+
+    // Null for a menu without any parsable options
+    public String getSpeechText() {
+        return speechText;
+    }
+}
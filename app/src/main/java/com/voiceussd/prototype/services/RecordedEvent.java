@@ -0,0 +1,25 @@
+package com.voiceussd.prototype.services;
+
+import java.util.Collections;
+import java.util.List;
+
+// One accessibility event as the worker saw it, and the tree it read while handling it (if any)
+final class RecordedEvent {
+    final long eventTime;
+    final int eventType;
+    final int windowId;
+    final String packageName;
+    final String className;
+    final List<String> text;
+    RecordedNode root;
+
+    RecordedEvent(long eventTime, int eventType, int windowId, String packageName, String className,
+                  List<String> text) {
+        this.eventTime = eventTime;
+        this.eventType = eventType;
+        this.windowId = windowId;
+        this.packageName = packageName;
+        this.className = className;
+        this.text = Collections.unmodifiableList(text);
+    }
+}
@@ -0,0 +1,104 @@
+package com.voiceussd.prototype.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A node tree copied out of the dialer, with just the fields detection and extraction read
+final class RecordedNode {
+    static final int EDITABLE = 1;
+    static final int CLICKABLE = 1 << 1;
+
+    final int windowId;
+    final String text;
+    final String className;
+    final String viewId;
+    final String contentDescription;
+    final int flags;
+    final List<RecordedNode> children;
+
+    RecordedNode(int windowId, String text, String className, String viewId, String contentDescription,
+                 int flags, List<RecordedNode> children) {
+        this.windowId = windowId;
+        this.text = text;
+        this.className = className;
+        this.viewId = viewId;
+        this.contentDescription = contentDescription;
+        this.flags = flags;
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    // Copies the whole tree; children fetched along the way are recycled, the root is not
+    static <N> RecordedNode copyOf(N node, NodeReader<N> reader) {
+        int childCount = reader.getChildCount(node);
+        List<RecordedNode> children = new ArrayList<>(childCount);
+        for (int i = 0; i < childCount; i++) {
+            N child = reader.getChild(node, i);
+            if (child != null) {
+                children.add(copyOf(child, reader));
+                reader.recycle(child);
+            }
+        }
+
+        int flags = (reader.isEditable(node) ? EDITABLE : 0) | (reader.isClickable(node) ? CLICKABLE : 0);
+        return new RecordedNode(reader.getWindowId(node), string(reader.getText(node)),
+                string(reader.getClassName(node)), reader.getViewIdResourceName(node),
+                string(reader.getContentDescription(node)), flags, children);
+    }
+
+    private static String string(CharSequence text) {
+        return text != null ? text.toString() : null;
+    }
+
+    static final NodeReader<RecordedNode> READER = new NodeReader<RecordedNode>() {
+        @Override
+        public int getWindowId(RecordedNode node) {
+            return node.windowId;
+        }
+
+        @Override
+        public CharSequence getText(RecordedNode node) {
+            return node.text;
+        }
+
+        @Override
+        public CharSequence getClassName(RecordedNode node) {
+            return node.className;
+        }
+
+        @Override
+        public String getViewIdResourceName(RecordedNode node) {
+            return node.viewId;
+        }
+
+        @Override
+        public CharSequence getContentDescription(RecordedNode node) {
+            return node.contentDescription;
+        }
+
+        @Override
+        public boolean isEditable(RecordedNode node) {
+            return (node.flags & EDITABLE) != 0;
+        }
+
+        @Override
+        public boolean isClickable(RecordedNode node) {
+            return (node.flags & CLICKABLE) != 0;
+        }
+
+        @Override
+        public int getChildCount(RecordedNode node) {
+            return node.children.size();
+        }
+
+        @Override
+        public RecordedNode getChild(RecordedNode node, int index) {
+            return node.children.get(index);
+        }
+
+        @Override
+        public void recycle(RecordedNode node) {
+            // Plain objects; nothing to give back
+        }
+    };
+}
@@ -0,0 +1,168 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.audio.InputMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Feeds a recording through the same detection, extraction and classification code the
+// service runs, with TTS, recognizer and input field faked out. Every screen that asks for
+// something is answered (first menu option, the shortest input the schema accepts) so the
+// session moves on to the carrier's next screen the way it did on the phone. Nothing in the
+// app calls it: it lives here so the unit tests and the benchmark module share it.
+final class ReplayRunner {
+
+    static final class Result {
+        final List<ScreenType> screens = new ArrayList<>();
+        long events;
+        long sessions;
+    }
+
+    private final ScreenClassifier classifier;
+    // False to have the dialog never react to a send, as on a slow network
+    private final boolean sendsConfirmed;
+    private final StringBuilder field = new StringBuilder();
+    private RecordedEvent current;
+    private long now = 0;
+
+    ReplayRunner(ScreenClassifier classifier) {
+        this(classifier, true);
+    }
+
+    ReplayRunner(ScreenClassifier classifier, boolean sendsConfirmed) {
+        this.classifier = classifier;
+        this.sendsConfirmed = sendsConfirmed;
+    }
+
+    Result run(List<RecordedEvent> events) {
+        UssdSessionEngine engine = new UssdSessionEngine(SPEAKER, LISTENER, input, () -> now, true);
+        UssdEventProcessor<RecordedNode> processor = new UssdEventProcessor<>(RecordedNode.READER,
+                new ScreenParseCache(classifier, 64), engine, () -> now, new Host());
+        Result result = new Result();
+
+        for (RecordedEvent event : events) {
+            now = event.eventTime;
+            current = event;
+            long screensBefore = processor.getScreens();
+            processor.process(event.eventType, event.packageName, event.className, event.text, event.eventTime);
+            if (processor.getScreens() != screensBefore) {
+                ParsedScreen screen = processor.getLastScreen();
+                result.screens.add(screen.getType());
+                answer(engine, screen);
+            }
+            result.events++;
+        }
+        result.sessions = processor.getSessions();
+        return result;
+    }
+
+    private final class Host implements UssdEventProcessor.Host<RecordedNode> {
+        @Override
+        public RecordedNode getRootInActiveWindow() {
+            return current.root;
+        }
+
+        @Override
+        public void onScreenCaptured(ScreenWalk<RecordedNode> walk) {
+            // What InputSimulator does with a new snapshot
+            CharSequence text = walk.getInputField() != null ? walk.getInputField().text : null;
+            field.setLength(0);
+            if (text != null) field.append(text);
+        }
+
+        @Override
+        public void onSessionClosed() {
+        }
+    }
+
+    private void answer(UssdSessionEngine engine, ParsedScreen screen) {
+        switch (screen.getType()) {
+            case MENU:
+                engine.onPromptDone(now);
+                engine.onMenuChoice(screen.getOptions().isEmpty() ? 1 : screen.getOptions().get(0).getNumber());
+                return;
+            case READ_ONLY:
+                return;
+            default:
+                break;
+        }
+
+        String answer = shortestAnswer(screen.getRule().getSchema());
+        engine.onPromptDone(now);
+        if (screen.getType().acceptsDigitSequence()) {
+            engine.onDigitSequence(answer, 1f);
+        } else {
+            for (int i = 0; i < answer.length(); i++) {
+                engine.onDigit(answer.charAt(i) - '0');
+                engine.onPromptDone(now);
+            }
+        }
+        if (!engine.isAwaitingScreen()) {
+            engine.onDone();
+        }
+    }
+
+    private static String shortestAnswer(InputSchema schema) {
+        StringBuilder answer = new StringBuilder(schema.getPrefix());
+        while (answer.length() < Math.max(1, schema.getMinLength())) {
+            answer.append('1');
+        }
+        return answer.toString();
+    }
+
+    private static final UssdSessionEngine.Speaker SPEAKER = new UssdSessionEngine.Speaker() {
+        @Override public void speakMenu(String text) { }
+        @Override public void speakInputStart(String text) { }
+        @Override public void speakPrompt(String text) { }
+        @Override public void speakDigitConfirmation(int digit, String input) { }
+        @Override public void speakSequenceConfirmation(String input) { }
+        @Override public void speakInformation(String text) { }
+        @Override public void speakCompletion(String input) { }
+        @Override public void stop() { }
+    };
+
+    private static final UssdSessionEngine.Listener LISTENER = new UssdSessionEngine.Listener() {
+        @Override public void configure(InputMode mode, int allowedDigits, boolean amount) { }
+        @Override public void setLanguage(String languageTag) { }
+        @Override public void startBargeIn() { }
+        @Override public void listen(long promptDoneAt) { }
+        @Override public void endInput() { }
+    };
+
+    // The field takes every write; sends are confirmed unless told otherwise
+    private final UssdSessionEngine.Input input = new UssdSessionEngine.Input() {
+        @Override
+        public CompletableFuture<Boolean> sendChoice(int number) {
+            return CompletableFuture.completedFuture(sendsConfirmed);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> appendDigit(int digit) {
+            field.append(digit);
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> setText(String text) {
+            field.setLength(0);
+            field.append(text);
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> submit(String text) {
+            return CompletableFuture.completedFuture(sendsConfirmed);
+        }
+
+        @Override
+        public boolean cancel() {
+            return true;
+        }
+
+        @Override
+        public String getInput() {
+            return field.toString();
+        }
+    };
+}
@@ -0,0 +1,79 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.text.KeywordMatcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Decides what kind of screen a USSD dialog is, driven by the screen rule table. Each dialer
+// package gets its rules compiled into one KeywordMatcher whose category bits are the rule
+// positions, so the lowest bit in a match is the highest-priority rule.
+public final class ScreenClassifier {
+    private static final int MAX_RULES = 32;
+
+    private static final ScreenRule DEFAULT_UNKNOWN_INPUT = new ScreenRule(ScreenType.UNKNOWN_INPUT,
+            "Please provide the requested information", new ArrayList<>());
+    private static final ScreenRule READ_ONLY = new ScreenRule(ScreenType.READ_ONLY, "", new ArrayList<>());
+
+    private final CompiledRules defaultRules;
+    private final Map<String, CompiledRules> packageRules = new HashMap<>();
+
+    public ScreenClassifier(ScreenRuleTable table) {
+        defaultRules = new CompiledRules(table.rulesFor(null));
+        for (String dialerPackage : table.packages()) {
+            packageRules.put(dialerPackage, new CompiledRules(table.rulesFor(dialerPackage)));
+        }
+    }
+
+    public static ScreenClassifier load(InputStream in) throws IOException {
+        try (InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return new ScreenClassifier(ScreenRuleTable.parse(reader));
+        }
+    }
+
+    public ScreenRule classify(CharSequence screenText, String dialerPackage, boolean hasInputField) {
+        CompiledRules rules = dialerPackage != null ? packageRules.get(dialerPackage) : null;
+        if (rules == null) {
+            rules = defaultRules;
+        }
+
+        int mask = rules.matcher.match(screenText);
+        if (mask != 0) {
+            return rules.rules.get(Integer.numberOfTrailingZeros(mask));
+        }
+        return hasInputField ? rules.unknownInput : READ_ONLY;
+    }
+
+    private static final class CompiledRules {
+        final List<ScreenRule> rules = new ArrayList<>();
+        final KeywordMatcher matcher;
+        final ScreenRule unknownInput;
+
+        CompiledRules(List<ScreenRule> table) {
+            KeywordMatcher.Builder builder = new KeywordMatcher.Builder();
+            ScreenRule fallback = null;
+
+            for (ScreenRule rule : table) {
+                if (rule.getKeywords().isEmpty()) {
+                    // Keyword-less UNKNOWN_INPUT row: only supplies the fallback prompt
+                    if (fallback == null) fallback = rule;
+                    continue;
+                }
+                if (rules.size() == MAX_RULES) {
+                    throw new IllegalArgumentException("More than " + MAX_RULES + " keyword rules");
+                }
+                builder.add(rules.size(), rule.getKeywords().toArray(new String[0]));
+                rules.add(rule);
+            }
+
+            matcher = builder.build();
+            unknownInput = fallback != null ? fallback : DEFAULT_UNKNOWN_INPUT;
+        }
+    }
+}
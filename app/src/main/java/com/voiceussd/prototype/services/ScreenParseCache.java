@@ -0,0 +1,113 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.audio.SpeechText;
+import com.voiceussd.prototype.text.MenuOption;
+import com.voiceussd.prototype.text.MenuParser;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Bounded LRU of parsed screens. Users walk the same *182# menus many times a day, so
+// classification, option parsing and the speech sentence are kept per screen, keyed by a
+// hash of the normalized text (case and whitespace runs ignored) plus the classifier inputs.
+public final class ScreenParseCache {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final ScreenClassifier classifier;
+    private final Map<Long, ParsedScreen> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    public ScreenParseCache(ScreenClassifier classifier, final int capacity) {
+        this.classifier = classifier;
+        this.entries = new LinkedHashMap<Long, ParsedScreen>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ParsedScreen> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public ParsedScreen get(String screenText, String dialerPackage, boolean hasInputField) {
+        long key = hash(screenText, dialerPackage, hasInputField);
+        ParsedScreen parsed = entries.get(key);
+        if (parsed != null) {
+            hits++;
+            return parsed;
+        }
+
+        misses++;
+        parsed = parse(screenText, dialerPackage, hasInputField);
+        entries.put(key, parsed);
+        return parsed;
+    }
+
+    private ParsedScreen parse(String screenText, String dialerPackage, boolean hasInputField) {
+        ScreenRule rule = classifier.classify(screenText, dialerPackage, hasInputField);
+
+        List<MenuOption> options = new ArrayList<>();
+        String speechText;
+        switch (rule.getType()) {
+            case MENU:
+                options = MenuParser.parseMenuOptions(screenText);
+                speechText = options.isEmpty() ? null : SpeechText.menu(options);
+                break;
+            case READ_ONLY:
+                speechText = screenText;
+                break;
+            default:
+                speechText = rule.getType().acceptsDigitSequence()
+                        ? SpeechText.digitSequenceStart(rule.getPrompt())
+                        : SpeechText.digitInputStart(rule.getPrompt());
+                break;
+        }
+        return new ParsedScreen(rule, options, speechText);
+    }
+
+    static long hash(CharSequence text, String dialerPackage, boolean hasInputField) {
+        long hash = FNV_OFFSET;
+        boolean started = false;
+        boolean pendingSpace = false;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            // Collapse whitespace runs and drop leading/trailing whitespace
+            if (pendingSpace && started) {
+                hash = (hash ^ ' ') * FNV_PRIME;
+            }
+            started = true;
+            pendingSpace = false;
+            hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+        }
+
+        hash = (hash ^ (hasInputField ? 1 : 2)) * FNV_PRIME;
+        if (dialerPackage != null) {
+            for (int i = 0; i < dialerPackage.length(); i++) {
+                hash = (hash ^ dialerPackage.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public String summary() {
+        return "hits=" + hits + ", misses=" + misses + ", size=" + entries.size();
+    }
+}
@@ -0,0 +1,45 @@
+package com.voiceussd.prototype.services;
+
+import java.util.Collections;
+import java.util.List;
+
+// One row of the screen rule table: a screen type, the prompt spoken for it, the keywords
+// that identify it and the shape of the answer it takes
+public final class ScreenRule {
+    private final ScreenType type;
+    private final String prompt;
+    private final List<String> keywords;
+    private final InputSchema schema;
+
+    public ScreenRule(ScreenType type, String prompt, List<String> keywords) {
+        this(type, prompt, keywords, InputSchema.ANY);
+    }
+
+    public ScreenRule(ScreenType type, String prompt, List<String> keywords, InputSchema schema) {
+        this.type = type;
+        this.prompt = prompt;
+        this.keywords = Collections.unmodifiableList(keywords);
+        this.schema = schema;
+    }
+
+    public ScreenType getType() {
+        return type;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    public InputSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + keywords;
+    }
+}
@@ -0,0 +1,111 @@
+package com.voiceussd.prototype.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Parsed form of assets/screen_rules.txt; see that file for the format
+public final class ScreenRuleTable {
+    public static final String DEFAULT_SECTION = "default";
+
+    private final Map<String, List<ScreenRule>> sections;
+
+    private ScreenRuleTable(Map<String, List<ScreenRule>> sections) {
+        this.sections = sections;
+    }
+
+    public static ScreenRuleTable empty() {
+        return new ScreenRuleTable(new LinkedHashMap<>());
+    }
+
+    public static ScreenRuleTable parse(Reader source) throws IOException {
+        Map<String, List<ScreenRule>> sections = new LinkedHashMap<>();
+        String section = null;
+        int lineNumber = 0;
+
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = line.substring(1, line.length() - 1).trim();
+                if (!sections.containsKey(section)) {
+                    sections.put(section, new ArrayList<>());
+                }
+                continue;
+            }
+
+            if (section == null) {
+                throw new IOException("Line " + lineNumber + ": rule outside of a [section]");
+            }
+            sections.get(section).add(parseRule(line, lineNumber));
+        }
+
+        return new ScreenRuleTable(sections);
+    }
+
+    private static ScreenRule parseRule(String line, int lineNumber) throws IOException {
+        String[] columns = line.split("\\|", -1);
+        if (columns.length != 3 && columns.length != 4) {
+            throw new IOException("Line " + lineNumber + ": expected TYPE | prompt | keywords [| schema]");
+        }
+
+        ScreenType type;
+        try {
+            type = ScreenType.valueOf(columns[0].trim());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Line " + lineNumber + ": unknown screen type '" + columns[0].trim() + "'");
+        }
+        if (type == ScreenType.READ_ONLY) {
+            throw new IOException("Line " + lineNumber + ": READ_ONLY is the fallback and cannot be a rule");
+        }
+
+        List<String> keywords = new ArrayList<>();
+        for (String keyword : columns[2].split(",")) {
+            keyword = keyword.trim();
+            if (!keyword.isEmpty()) {
+                keywords.add(keyword);
+            }
+        }
+        if (keywords.isEmpty() && type != ScreenType.UNKNOWN_INPUT) {
+            throw new IOException("Line " + lineNumber + ": " + type + " rule needs at least one keyword");
+        }
+
+        InputSchema schema = InputSchema.ANY;
+        if (columns.length == 4 && !columns[3].trim().isEmpty()) {
+            try {
+                schema = InputSchema.parse(columns[3]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        return new ScreenRule(type, columns[1].trim(), keywords, schema);
+    }
+
+    // Rules for a dialer package followed by the defaults
+    public List<ScreenRule> rulesFor(String dialerPackage) {
+        List<ScreenRule> rules = new ArrayList<>();
+        if (dialerPackage != null && sections.containsKey(dialerPackage)) {
+            rules.addAll(sections.get(dialerPackage));
+        }
+        if (sections.containsKey(DEFAULT_SECTION)) {
+            rules.addAll(sections.get(DEFAULT_SECTION));
+        }
+        return rules;
+    }
+
+    public List<String> packages() {
+        List<String> packages = new ArrayList<>(sections.keySet());
+        packages.remove(DEFAULT_SECTION);
+        return Collections.unmodifiableList(packages);
+    }
+}
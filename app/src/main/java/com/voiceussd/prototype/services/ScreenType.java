@@ -0,0 +1,19 @@
+package com.voiceussd.prototype.services;
+
+public enum ScreenType {
+    PIN,
+    PHONE_NUMBER,
+    AMOUNT,
+    MENU,
+    UNKNOWN_INPUT,  // Has an input field but no rule matched
+    READ_ONLY;
+
+    public boolean expectsDigits() {
+        return this == PIN || this == PHONE_NUMBER || this == AMOUNT || this == UNKNOWN_INPUT;
+    }
+
+    // Answers short enough to say in one go; the rest are taken one digit at a time
+    public boolean acceptsDigitSequence() {
+        return this == PHONE_NUMBER || this == AMOUNT;
+    }
+}
@@ -0,0 +1,187 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.diagnostics.Tracer;
+
+// One pre-order walk of a dialog's node tree: the USSD text, whether it takes input, and the
+// input field and buttons. Works on any tree a NodeReader can read, so the extraction that
+// runs on the device is the one replays exercise. Nodes it keeps are handed to the caller.
+final class ScreenWalk<N> {
+    private static final String TAG = "ScreenWalk";
+
+    private final NodeReader<N> reader;
+    private final int windowId;
+    private final StringBuilder text = new StringBuilder();
+    private N inputField;
+    private N firstEditable;
+    private N sendButton;
+    private N cancelButton;
+
+    private int nodeCount = 0;
+    private int childCalls = 0;
+    // Pre-order positions, used to reconstruct what the old early-exit walks cost
+    private int firstEditableIndex = -1;
+    private int inputFieldIndex = -1;
+    private int sendButtonIndex = -1;
+
+    private ScreenWalk(NodeReader<N> reader, int windowId) {
+        this.reader = reader;
+        this.windowId = windowId;
+    }
+
+    static <N> ScreenWalk<N> walk(N root, NodeReader<N> reader) {
+        ScreenWalk<N> walk = new ScreenWalk<>(reader, reader.getWindowId(root));
+        walk.visit(root, 0, false);
+
+        // Only keep the handles we hand out
+        if (walk.inputField == null) {
+            walk.inputField = walk.firstEditable;
+        } else if (walk.firstEditable != null && walk.firstEditable != walk.inputField) {
+            reader.recycle(walk.firstEditable);
+        }
+        walk.firstEditable = null;
+        return walk;
+    }
+
+    int getWindowId() {
+        return windowId;
+    }
+
+    String getText() {
+        return text.toString();
+    }
+
+    boolean isEditable() {
+        return firstEditableIndex >= 0;
+    }
+
+    N getInputField() {
+        return inputField;
+    }
+
+    N getSendButton() {
+        return sendButton;
+    }
+
+    N getCancelButton() {
+        return cancelButton;
+    }
+
+    // The caller must not recycle a node the walk handed out as one of the above
+    boolean retains(N node) {
+        return node == inputField || node == sendButton || node == cancelButton;
+    }
+
+    // For a walk nobody took over: recycles the handles it kept
+    void release() {
+        if (inputField != null) reader.recycle(inputField);
+        if (sendButton != null) reader.recycle(sendButton);
+        if (cancelButton != null) reader.recycle(cancelButton);
+        inputField = null;
+        sendButton = null;
+        cancelButton = null;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    int getChildCalls() {
+        return childCalls;
+    }
+
+    int getLegacyChildCalls() {
+        // Full walks: extractUSSDText and analyzeAllNodesForInputs
+        int calls = 2 * childCalls;
+        // Early-exit walks stop at the matching node, or cost a full walk when there is none
+        calls += firstEditableIndex >= 0 ? firstEditableIndex : childCalls;
+        calls += inputFieldIndex >= 0 ? inputFieldIndex : childCalls;
+        calls += sendButtonIndex >= 0 ? sendButtonIndex : childCalls;
+        return calls;
+    }
+
+    static boolean isRelevantUSSDContent(String text) {
+        String lowerText = text.toLowerCase();
+        return !lowerText.equals("ok") &&
+                !lowerText.equals("cancel") &&
+                !lowerText.equals("send") &&
+                !lowerText.contains("ussd code running") &&
+                text.trim().length() > 2;
+    }
+
+    // Returns true when the node was retained as a handle and must not be recycled
+    private boolean visit(N node, int depth, boolean recyclable) {
+        int index = nodeCount++;
+        boolean retained = false;
+
+        CharSequence nodeClass = reader.getClassName(node);
+        String className = nodeClass != null ? nodeClass.toString() : "";
+        String resourceId = reader.getViewIdResourceName(node);
+        boolean editable = "android.widget.EditText".equals(className) || reader.isEditable(node);
+
+        // What is typed into the field is ours, not the carrier's: leaving it out keeps the
+        // text of a screen the same while we answer it
+        CharSequence nodeText = reader.getText(node);
+        if (!editable && nodeText != null && nodeText.length() > 0) {
+            String textStr = nodeText.toString();
+            if (isRelevantUSSDContent(textStr)) {
+                text.append(textStr).append(' ');
+            }
+        }
+
+        if (firstEditableIndex < 0 && editable) {
+            firstEditableIndex = index;
+            firstEditable = node;
+            retained = true;
+        }
+        if (inputField == null && DialerViews.INPUT_FIELD_ID.equals(resourceId)) {
+            inputFieldIndex = index;
+            inputField = node;
+            retained = true;
+        } else if (sendButton == null && DialerViews.SEND_BUTTON_ID.equals(resourceId)) {
+            sendButtonIndex = index;
+            sendButton = node;
+            retained = true;
+        } else if (cancelButton == null && DialerViews.CANCEL_BUTTON_ID.equals(resourceId)) {
+            cancelButton = node;
+            retained = true;
+        }
+
+        traceInterestingNode(node, depth, className, resourceId, nodeText);
+
+        int childCount = reader.getChildCount(node);
+        for (int i = 0; i < childCount; i++) {
+            N child = reader.getChild(node, i);
+            childCalls++;
+            if (child != null && !visit(child, depth + 1, true)) {
+                reader.recycle(child);
+            }
+        }
+
+        return retained || !recyclable;
+    }
+
+    // Node dump for working out new dialer layouts; only paid for when VERBOSE tracing is on
+    private void traceInterestingNode(N node, int depth, String className, String resourceId,
+                                      CharSequence nodeText) {
+        if (!Tracer.isEnabled(Tracer.VERBOSE)) return;
+
+        String id = resourceId != null ? resourceId : "";
+        boolean editable = reader.isEditable(node);
+        boolean clickable = reader.isClickable(node);
+        boolean isInteresting = className.contains("Edit") ||
+                editable ||
+                clickable ||
+                id.contains("input") ||
+                id.contains("edit") ||
+                id.contains("field") ||
+                id.contains("button") ||
+                nodeText != null;
+        if (!isInteresting) return;
+
+        Tracer.record(Tracer.VERBOSE, TAG, "node", className, depth);
+        Tracer.record(Tracer.VERBOSE, TAG, "  resource id", resourceId);
+        Tracer.record(Tracer.VERBOSE, TAG, "  text", nodeText);
+        Tracer.record(Tracer.VERBOSE, TAG, "  content desc", reader.getContentDescription(node));
+        Tracer.record(Tracer.VERBOSE, TAG, "  editable/clickable", editable ? 1 : 0, clickable ? 1 : 0);
+    }
+}
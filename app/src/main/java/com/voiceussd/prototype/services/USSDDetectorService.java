@@ -2,346 +2,273 @@ package com.voiceussd.prototype.services;
 
 import android.accessibilityservice.AccessibilityService;
 import android.accessibilityservice.AccessibilityServiceInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
+import com.voiceussd.prototype.audio.EchoGuard;
+import com.voiceussd.prototype.audio.InputMode;
 import com.voiceussd.prototype.audio.TTSManager;
 import com.voiceussd.prototype.audio.STTManager;
+import com.voiceussd.prototype.diagnostics.Tracer;
+import com.voiceussd.prototype.diagnostics.TurnTimeline;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class USSDDetectorService extends AccessibilityService {
     private static final String TAG = "USSDDetectorService";
-    private boolean isUSSDActive = false;
-
+    private static final String SCREEN_RULES_ASSET = "screen_rules.txt";
     private TTSManager ttsManager;
     private STTManager sttManager;
     private InputSimulator inputSimulator;
-    private String currentUSSDContent = "";
-    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    private UssdScreenSnapshot currentSnapshot;
+    private static final int SCREEN_CACHE_SIZE = 64;
+    private ScreenParseCache screenCache;
 
-    // NEW: State machine for digit-by-digit input
-    private enum DigitInputState {
-        IDLE,                    // Not in digit input mode
-        WAITING_FOR_FIRST_DIGIT, // Just started, waiting for first digit
-        WAITING_FOR_NEXT_DIGIT,  // Got a digit, waiting for next one
-        COMPLETED               // User said "done" or timeout reached
-    }
-
-    private DigitInputState digitInputState = DigitInputState.IDLE;
-    private StringBuilder currentDigitInput = new StringBuilder();
+    // Listen for the menu choice while the menu is still being read
+    private static final boolean MENU_BARGE_IN = true;
+    private final EchoGuard echoGuard = new EchoGuard();
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
 
+    // Threading: the main thread only runs the cheap pre-filter and the SpeechRecognizer
+    // (which requires it). Snapshots, classification and the session state below belong to
+    // the worker; events reach it through a bounded queue, recognizer callbacks by posting.
+    private static final int EVENT_QUEUE_CAPACITY = 32;
+    private HandlerThread workerThread;
+    private Handler workerHandler;
+    private final BoundedHandoff<AccessibilityEvent> eventQueue = new BoundedHandoff<>(EVENT_QUEUE_CAPACITY);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainEvents = this::drainEvents;
+
+    // Cheap first stage and coalescing of content-changed bursts
+    private static final long COALESCE_WINDOW_MS = 60;
+    private final EventPreFilter eventFilter = new EventPreFilter();
+    private AccessibilityEvent pendingEvent;
+    private final Runnable flushPendingEvent = this::flushPendingEvent;
+
+    // Detection and classification, then the session from screen to submit; both on the worker
+    private UssdEventProcessor<AccessibilityNodeInfo> eventProcessor;
+    private UssdSessionEngine sessionEngine;
+    private static final String TIMELINE_FILE = "turn_timeline.tsv";
+
+    // Trace of what the worker handled, for replaying on the JVM ("dumpsys ... record start")
+    private EventRecording.Writer recorder;
+    private RecordedEvent recordingEvent;
+
+    // Main thread
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
-        if (event == null) return;
+        if (event == null || eventProcessor == null) return;
 
-        String packageName = event.getPackageName() != null ? event.getPackageName().toString() : "";
-        String className = event.getClassName() != null ? event.getClassName().toString() : "";
-
-        // Log phone-related dialogs for debugging
-        boolean isPhoneRelated = packageName.contains("phone") || packageName.contains("dialer");
-        boolean isDialog = className.contains("AlertDialog");
-
-        if (isPhoneRelated && isDialog) {
-            Log.d(TAG, "========== PHONE DIALOG DETECTED ==========");
-            Log.d(TAG, "Package: " + packageName);
-            Log.d(TAG, "Class: " + className);
-            Log.d(TAG, "Event Text: " + event.getText().toString());
-            Log.d(TAG, "==========================================");
+        int verdict = eventFilter.accept(event.getEventType(), event.getPackageName(), eventProcessor.isActive());
+        if (verdict == EventPreFilter.DROP) {
+            return;
         }
 
-        if (isUSSDDialog(event, packageName, className)) {
-            if (!isUSSDActive) {
-                isUSSDActive = true;
-                Log.d(TAG, "=== USSD WINDOW DETECTED ===");
-                handleUSSDWindow(event);
-            }
-        } else if (isUSSDActive && isUSSDWindowClosed(event, packageName, className)) {
-            isUSSDActive = false;
-            digitInputState = DigitInputState.IDLE; // Reset state
-            Log.d(TAG, "=== USSD WINDOW CLOSED ====");
+        // The framework recycles the event after this callback returns, so hand over a copy
+        AccessibilityEvent pushedOut = eventQueue.offer(AccessibilityEvent.obtain(event));
+        if (pushedOut != null) {
+            pushedOut.recycle();
         }
-    }
-
-    private boolean isUSSDDialog(AccessibilityEvent event, String packageName, String className) {
-        boolean isPhoneRelated = packageName.contains("phone") || packageName.contains("dialer") ||
-                packageName.contains("telecom") || packageName.contains("telephony") ||
-                packageName.equals("com.android.phone") || packageName.equals("com.google.android.dialer");
-
-        boolean isDialog = className.contains("AlertDialog");
-
-        boolean hasUSSDContent = false;
-        if (!event.getText().isEmpty()) {
-            String text = event.getText().toString().toLowerCase();
-            hasUSSDContent = text.contains("ussd") || text.contains("ussd code") || text.contains("1)") ||
-                    text.contains("n next") || text.contains("balance") || text.contains("amafaranga") ||
-                    text.contains("kwemeza") || text.contains("pin") || text.contains("shyiramo") ||
-                    text.contains("mobile number") || text.contains("nimero ya mobile") ||
-                    text.contains("recipient") || text.contains("07xxxxxxxx") ||
-                    text.contains("format 07") || text.contains("enter") || text.contains("amount");
+        if (drainScheduled.compareAndSet(false, true)) {
+            workerHandler.post(drainEvents);
         }
-
-        return (isPhoneRelated && isDialog) && hasUSSDContent;
     }
 
-    private void handleUSSDWindow(AccessibilityEvent event) {
-        if (!event.getText().isEmpty()) {
-            String ussdText = event.getText().toString();
-            if (!ussdText.contains("USSD code running")) {
-                currentUSSDContent = "";
-
-                AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-                if (rootNode != null) {
-                    extractUSSDText(rootNode);
-                    boolean hasInputField = detectInputField(rootNode);
-
-                    Log.d(TAG, "USSD Content: " + currentUSSDContent);
-                    Log.d(TAG, "Has Input Field: " + hasInputField);
-
-                    // Analyze different window types
-                    String lowerContent = currentUSSDContent.toLowerCase();
-
-                    if (lowerContent.contains("pin") || lowerContent.contains("umubare w'ibanga")) {
-                        analyzeInputFields(rootNode, "PIN");
-                        handleDigitByDigitInputWindow("Enter your PIN");
-                    } else if (lowerContent.contains("mobile number") || lowerContent.contains("nimero ya mobile") ||
-                            lowerContent.contains("07xxxxxxxx")) {
-                        analyzeInputFields(rootNode, "PHONE NUMBER");
-                        handleDigitByDigitInputWindow("Enter phone number starting with zero seven");
-                    } else if (lowerContent.contains("enter amount") || lowerContent.contains("amafaranga")) {
-                        Log.d(TAG, "AMOUNT WINDOW OPEN: " + event.getText());
-                        analyzeInputFields(rootNode, "AMOUNT");
-                        handleDigitByDigitInputWindow("Enter the amount to send");
-                    } else if (isMenuContent(currentUSSDContent)) {
-                        analyzeInputFields(rootNode, "MENU");
-                        handleMenuWindow();
-                    } else if (hasInputField) {
-                        analyzeInputFields(rootNode, "UNKNOWN INPUT");
-                        handleDigitByDigitInputWindow("Please provide the requested information");
-                    } else {
-                        analyzeInputFields(rootNode, "READ-ONLY");
-                        handleReadOnlyWindow();
-                    }
-
-                    rootNode.recycle();
-                }else{
-                    Log.d(TAG, "ROOT NODE IS NULL & TEXT IS: " + event.getText());
-                }
-            }
+    private void drainEvents() {
+        drainScheduled.set(false);
+        AccessibilityEvent event;
+        while ((event = eventQueue.poll()) != null) {
+            dispatchEvent(event);
         }
     }
 
-    private boolean detectInputField(AccessibilityNodeInfo node) {
-        if (node == null) return false;
+    // Worker; takes ownership of the event
+    private void dispatchEvent(AccessibilityEvent event) {
+        // Confirmations of our own input must not wait out the coalescing window
+        if (inputSimulator != null) {
+            inputSimulator.onAccessibilityEvent(event);
+        }
 
-        String className = node.getClassName() != null ? node.getClassName().toString() : "";
-        if ("android.widget.EditText".equals(className) || node.isEditable()) {
-            Log.d(TAG, "Found input field: " + className);
-            return true;
+        if (EventPreFilter.isCoalescable(event.getEventType(), event.getPackageName())) {
+            coalesceEvent(event);
+            return;
         }
 
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            if (child != null) {
-                if (detectInputField(child)) {
-                    child.recycle();
-                    return true;
-                }
-                child.recycle();
+        // A window state change supersedes any pending content changes for the same window
+        if (pendingEvent != null) {
+            if (pendingEvent.getWindowId() == event.getWindowId()) {
+                discardPendingEvent();
+                eventFilter.onCoalesced();
+            } else {
+                flushPendingEvent();
             }
         }
 
-        return false;
+        processEvent(event);
+        event.recycle();
     }
 
-    // KEEP: Your existing working menu logic
-    private void handleMenuWindow() {
-        Log.d(TAG, "=== HANDLING MENU WINDOW ===");
-        digitInputState = DigitInputState.IDLE; // Ensure we're not in digit mode
-        sttManager.setInputMode(STTManager.InputMode.MENU);
-
-        if (!currentUSSDContent.isEmpty()) {
-            ttsManager.speakMenu(currentUSSDContent);
+    private void coalesceEvent(AccessibilityEvent event) {
+        if (pendingEvent != null) {
+            if (pendingEvent.getWindowId() == event.getWindowId()) {
+                // Same burst: keep only the latest copy, the flush is already scheduled
+                pendingEvent.recycle();
+                pendingEvent = event;
+                eventFilter.onCoalesced();
+                return;
+            }
+            flushPendingEvent();
         }
-    }
 
-    // NEW: Handle digit-by-digit input
-    private void handleDigitByDigitInputWindow(String promptText) {
-        Log.d(TAG, "=== HANDLING DIGIT-BY-DIGIT INPUT WINDOW ===");
-
-        // Reset state
-        digitInputState = DigitInputState.WAITING_FOR_FIRST_DIGIT;
-        currentDigitInput.setLength(0);
+        pendingEvent = event;
+        workerHandler.postDelayed(flushPendingEvent, COALESCE_WINDOW_MS);
+    }
 
-        // Switch STT to digit-by-digit mode
-        sttManager.setInputMode(STTManager.InputMode.DIGIT_BY_DIGIT);
+    private void flushPendingEvent() {
+        workerHandler.removeCallbacks(flushPendingEvent);
+        if (pendingEvent == null) return;
 
-        // Start the session with TTS
-        ttsManager.speakDigitInputStart(promptText);
+        AccessibilityEvent event = pendingEvent;
+        pendingEvent = null;
+        processEvent(event);
+        event.recycle();
     }
 
-    private void handleReadOnlyWindow() {
-        Log.d(TAG, "=== HANDLING READ-ONLY WINDOW ===");
-        digitInputState = DigitInputState.IDLE;
-        String speechText = currentUSSDContent;
-        ttsManager.speakSimpleText(speechText, false);
+    private void discardPendingEvent() {
+        workerHandler.removeCallbacks(flushPendingEvent);
+        if (pendingEvent != null) {
+            pendingEvent.recycle();
+            pendingEvent = null;
+        }
     }
 
-    // NEW: Handle individual digit recognition
-    private void handleDigitRecognized(int digit) {
-        Log.d(TAG, "=== PROCESSING RECOGNIZED DIGIT: " + digit + " ===");
+    private void processEvent(AccessibilityEvent event) {
+        eventFilter.onProcessed();
 
-        // Add digit to input field
-        boolean success = inputSimulator.inputSingleDigit(digit);
-        if (!success) {
-            Log.e(TAG, "Failed to input digit: " + digit);
-            return;
+        if (recorder != null) {
+            recordingEvent = new RecordedEvent(event.getEventTime(), event.getEventType(), event.getWindowId(),
+                    stringOf(event.getPackageName()), stringOf(event.getClassName()), textOf(event));
         }
-
-        // Update our local tracking
-        currentDigitInput.append(digit);
-
-        // Update state
-        if (digitInputState == DigitInputState.WAITING_FOR_FIRST_DIGIT) {
-            digitInputState = DigitInputState.WAITING_FOR_NEXT_DIGIT;
+        eventProcessor.process(event.getEventType(), event.getPackageName(), event.getClassName(),
+                event.getText(), event.getEventTime());
+        if (recordingEvent != null) {
+            writeRecorded(recordingEvent);
+            recordingEvent = null;
         }
-
-        // Provide audio confirmation and prompt for next digit
-        ttsManager.confirmDigitAndPromptNext(digit, currentDigitInput.toString());
     }
 
-    // NEW: Handle "done" command
-    private void handleDoneCommand() {
-        Log.d(TAG, "=== PROCESSING DONE COMMAND ===");
-
-        if (currentDigitInput.length() > 0) {
-            digitInputState = DigitInputState.COMPLETED;
-
-            // Speak completion confirmation
-            ttsManager.speakInputCompletion(currentDigitInput.toString());
+    // Live trees for the event processor
+    private final class LiveScreens implements UssdEventProcessor.Host<AccessibilityNodeInfo> {
+        @Override
+        public AccessibilityNodeInfo getRootInActiveWindow() {
+            AccessibilityNodeInfo root = USSDDetectorService.this.getRootInActiveWindow();
+            if (root != null && recordingEvent != null) {
+                // A second walk, but only while recording
+                recordingEvent.root = RecordedNode.copyOf(root, AccessibilityNodeReader.INSTANCE);
+            }
+            return root;
+        }
 
-            // Submit the input
-            boolean success = inputSimulator.submitLongInput(currentDigitInput.toString());
-            if (!success) {
-                Log.e(TAG, "Failed to submit long input");
+        @Override
+        public void onScreenCaptured(ScreenWalk<AccessibilityNodeInfo> walk) {
+            UssdScreenSnapshot snapshot = UssdScreenSnapshot.of(walk);
+            replaceSnapshot(snapshot);
+            if (Tracer.isEnabled(Tracer.DEBUG)) {
+                Tracer.record(Tracer.DEBUG, TAG, "  snapshot", snapshot.describe());
             }
+        }
 
-            // Reset for next session
-            currentDigitInput.setLength(0);
-            digitInputState = DigitInputState.IDLE;
-        } else {
-            Log.w(TAG, "Done command received but no digits entered");
+        @Override
+        public void onSessionClosed() {
+            replaceSnapshot(null);
+            Tracer.record(Tracer.INFO, TAG, "events dropped/coalesced", eventFilter.getDropped(), eventFilter.getCoalesced());
+            Tracer.record(Tracer.INFO, TAG, "events processed", eventFilter.getProcessed());
+            Tracer.record(Tracer.INFO, TAG, "screen cache hits/misses", screenCache.getHits(), screenCache.getMisses());
         }
     }
 
-    // NEW: Handle timeout completion
-    private void handleLongInputCompleted(String fullInput) {
-        Log.d(TAG, "=== PROCESSING INPUT COMPLETION (TIMEOUT): " + fullInput + " ===");
-
-        digitInputState = DigitInputState.COMPLETED;
-
-        // Speak completion confirmation
-        ttsManager.speakInputCompletion(fullInput);
-
-        // Submit the input
-        boolean success = inputSimulator.submitLongInput(fullInput);
-        if (!success) {
-            Log.e(TAG, "Failed to submit long input");
+    private void replaceSnapshot(UssdScreenSnapshot snapshot) {
+        if (currentSnapshot != null) {
+            currentSnapshot.release();
         }
-
-        // Reset for next session
-        currentDigitInput.setLength(0);
-        digitInputState = DigitInputState.IDLE;
+        currentSnapshot = snapshot;
+        inputSimulator.setScreenSnapshot(snapshot);
     }
 
-    private void extractUSSDText(AccessibilityNodeInfo node) {
-        if (node == null) return;
-
-        CharSequence text = node.getText();
-        if (text != null && text.length() > 0) {
-            String textStr = text.toString();
-            Log.d(TAG, "Node Text: " + textStr);
-
-            if (isRelevantUSSDContent(textStr)) {
-                currentUSSDContent += textStr + " ";
-            }
-        }
+    // SpeechRecognizer has to be driven from the main thread
+    private void onMain(Runnable action) {
+        mainHandler.post(action);
+    }
 
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            if (child != null) {
-                extractUSSDText(child);
-                child.recycle();
-            }
+    private void onWorker(Runnable action) {
+        if (workerHandler != null) {
+            workerHandler.post(action);
         }
     }
 
-    private void analyzeInputFields(AccessibilityNodeInfo rootNode, String windowType) {
-        Log.d(TAG, "========== " + windowType + " WINDOW INPUT ANALYSIS ==========");
-        Log.d(TAG, "Content: " + currentUSSDContent);
-        analyzeAllNodesForInputs(rootNode, 0);
-        Log.d(TAG, "==========================================================");
+    private static String stringOf(CharSequence text) {
+        return text != null ? text.toString() : null;
     }
 
-    private void analyzeAllNodesForInputs(AccessibilityNodeInfo node, int depth) {
-        if (node == null) return;
-
-        String indent = "  ".repeat(depth);
-        String className = node.getClassName() != null ? node.getClassName().toString() : "null";
-        String resourceId = node.getViewIdResourceName() != null ? node.getViewIdResourceName() : "null";
-        String text = node.getText() != null ? node.getText().toString() : "null";
-        String contentDesc = node.getContentDescription() != null ? node.getContentDescription().toString() : "null";
-
-        boolean isInteresting = className.contains("Edit") ||
-                node.isEditable() ||
-                node.isClickable() ||
-                resourceId.contains("input") ||
-                resourceId.contains("edit") ||
-                resourceId.contains("field") ||
-                resourceId.contains("button") ||
-                !text.equals("null");
-
-        if (isInteresting) {
-            Log.d(TAG, indent + "*** Node[" + depth + "]: " + className + " ***");
-            Log.d(TAG, indent + "    ResourceID: " + resourceId);
-            Log.d(TAG, indent + "    Text: '" + text + "'");
-            Log.d(TAG, indent + "    ContentDesc: '" + contentDesc + "'");
-            Log.d(TAG, indent + "    Editable: " + node.isEditable());
-            Log.d(TAG, indent + "    Clickable: " + node.isClickable());
-
-            if (className.contains("Edit") || node.isEditable()) {
-                Log.d(TAG, indent + "    🎯 LIKELY INPUT FIELD!");
-            }
-
-            if (resourceId.contains("button") || text.toLowerCase().contains("send") || text.toLowerCase().contains("ok")) {
-                Log.d(TAG, indent + "    🔘 LIKELY BUTTON!");
-            }
+    private static List<String> textOf(AccessibilityEvent event) {
+        List<String> text = new ArrayList<>(event.getText().size());
+        for (CharSequence part : event.getText()) {
+            text.add(stringOf(part));
         }
+        return text;
+    }
 
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            if (child != null) {
-                analyzeAllNodesForInputs(child, depth + 1);
-                child.recycle();
-            }
+    // Worker
+    private void startRecording(File file) {
+        stopRecording();
+        try {
+            recorder = new EventRecording.Writer(new FileOutputStream(file));
+            Log.d(TAG, "Recording events to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start recording: " + e.getMessage());
         }
     }
 
-    private boolean isRelevantUSSDContent(String text) {
-        String lowerText = text.toLowerCase();
-        return !lowerText.equals("ok") &&
-                !lowerText.equals("cancel") &&
-                !lowerText.equals("send") &&
-                !lowerText.contains("ussd code running") &&
-                text.trim().length() > 2;
+    private void writeRecorded(RecordedEvent event) {
+        try {
+            recorder.write(event);
+        } catch (IOException e) {
+            Log.e(TAG, "Recording failed, stopping: " + e.getMessage());
+            stopRecording();
+        }
     }
 
-    private boolean isMenuContent(String text) {
-        return text.contains("1)") || text.contains("0)");
+    private void stopRecording() {
+        if (recorder == null) return;
+        try {
+            recorder.close();
+            Log.d(TAG, "Recorded " + recorder.getEvents() + " events");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to finish recording: " + e.getMessage());
+        }
+        recorder = null;
     }
 
-    private boolean isUSSDWindowClosed(AccessibilityEvent event, String packageName, String className) {
-        return !className.contains("AlertDialog");
+    private File exportDir() {
+        File dir = getExternalFilesDir(null);
+        return dir != null ? dir : getFilesDir();
     }
 
     @Override
@@ -354,40 +281,50 @@ public class USSDDetectorService extends AccessibilityService {
         super.onServiceConnected();
         Log.d(TAG, "USSDDetectorService connected and ready");
 
-        // Initialize TTS
-        ttsManager = new TTSManager(this);
+        workerThread = new HandlerThread("ussd-worker");
+        workerThread.start();
+        workerHandler = new Handler(workerThread.getLooper());
+
+        // Compile the screen rule table once for the lifetime of the service
+        screenCache = new ScreenParseCache(loadScreenClassifier(), SCREEN_CACHE_SIZE);
+
+        // Initialize TTS; spoken to from the worker
+        ttsManager = new TTSManager(this, workerThread.getLooper());
+        ttsManager.setEchoGuard(echoGuard);
 
         // Initialize input simulator
-        inputSimulator = new InputSimulator(this);
+        inputSimulator = new InputSimulator(this, workerHandler);
 
-        // Initialize STT with enhanced callback
+        // Initialize STT with enhanced callback; results go to the session engine on the worker
         sttManager = new STTManager(this, new STTManager.STTCallback() {
             @Override
             public void onNumberRecognized(int number) {
-                // KEEP: Your existing working menu logic
-                Log.d(TAG, "=== USER SPOKE MENU NUMBER: " + number + " ===");
-                boolean success = inputSimulator.inputNumberAndSend(number);
-                if (!success) {
-                    Log.e(TAG, "Failed to process menu input");
-                }
+                onWorker(() -> sessionEngine.onMenuChoice(number));
             }
 
             @Override
             public void onDigitRecognized(int digit) {
-                // NEW: Handle digit-by-digit input
-                handleDigitRecognized(digit);
+                onWorker(() -> sessionEngine.onDigit(digit));
             }
 
             @Override
             public void onDoneCommandRecognized() {
-                // NEW: Handle "done" command
-                handleDoneCommand();
+                onWorker(() -> sessionEngine.onDone());
             }
 
             @Override
-            public void onLongInputCompleted(String fullInput) {
-                // NEW: Handle timeout completion
-                handleLongInputCompleted(fullInput);
+            public void onDigitSequenceRecognized(String digits, float confidence) {
+                onWorker(() -> sessionEngine.onDigitSequence(digits, confidence));
+            }
+
+            @Override
+            public void onAnswerRejected(String heard) {
+                onWorker(() -> sessionEngine.onAnswerRejected(heard));
+            }
+
+            @Override
+            public void onInputTimeout() {
+                onWorker(() -> sessionEngine.onInputTimeout());
             }
 
             @Override
@@ -397,35 +334,32 @@ public class USSDDetectorService extends AccessibilityService {
 
             @Override
             public void onSTTReady() {
-                Log.d(TAG, "STT is ready");
+                Tracer.record(Tracer.DEBUG, TAG, "STT ready");
             }
         });
 
-        // Enhanced TTS to STT connection
+        // Every prompt that expects an answer ends the same way; the engine knows what comes next
         ttsManager.setSTTCallback(new TTSManager.STTTriggerCallback() {
             @Override
             public void onTTSFinished() {
-                // Original behavior - for menu and initial input prompts
-                mainHandler.post(() -> {
-                    if (sttManager != null && sttManager.isReady()) {
-                        sttManager.startListening();
-                    }
-                });
+                long promptDoneAt = SystemClock.uptimeMillis();
+                onWorker(() -> sessionEngine.onPromptDone(promptDoneAt));
             }
 
             @Override
             public void onDigitConfirmationFinished() {
-                // NEW: After digit confirmation, start listening for next digit
-                mainHandler.post(() -> {
-                    if (sttManager != null && sttManager.isReady() &&
-                            digitInputState == DigitInputState.WAITING_FOR_NEXT_DIGIT) {
-                        Log.d(TAG, "Starting to listen for next digit...");
-                        sttManager.startListening();
-                    }
-                });
+                long promptDoneAt = SystemClock.uptimeMillis();
+                onWorker(() -> sessionEngine.onPromptDone(promptDoneAt));
             }
         });
 
+        // Per-turn times are all uptime, the clock of AccessibilityEvent.getEventTime(), so the
+        // engine, speech timings and TurnTimeline can be compared with each other
+        sessionEngine = new UssdSessionEngine(new TtsSpeaker(), new SttListener(), new FieldInput(),
+                SystemClock::uptimeMillis, MENU_BARGE_IN);
+        eventProcessor = new UssdEventProcessor<>(AccessibilityNodeReader.INSTANCE, screenCache, sessionEngine,
+                SystemClock::uptimeMillis, new LiveScreens());
+
         // Configure accessibility service
         AccessibilityServiceInfo info = new AccessibilityServiceInfo();
         info.eventTypes = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED |
@@ -437,9 +371,241 @@ public class USSDDetectorService extends AccessibilityService {
         setServiceInfo(info);
     }
 
+    // Worker thread, like the engine
+    private final class TtsSpeaker implements UssdSessionEngine.Speaker {
+        @Override
+        public void speakMenu(String text) {
+            ttsManager.speakMenu(text);
+        }
+
+        @Override
+        public void speakInputStart(String text) {
+            ttsManager.speakDigitInputStart(text);
+        }
+
+        @Override
+        public void speakPrompt(String text) {
+            ttsManager.speakSimpleText(text, true);
+        }
+
+        @Override
+        public void speakDigitConfirmation(int digit, String input) {
+            ttsManager.confirmDigitAndPromptNext(digit, input);
+        }
+
+        @Override
+        public void speakSequenceConfirmation(String input) {
+            ttsManager.confirmDigitSequence(input);
+        }
+
+        @Override
+        public void speakInformation(String text) {
+            ttsManager.speakSimpleText(text, false);
+        }
+
+        @Override
+        public void speakCompletion(String input) {
+            ttsManager.speakInputCompletion(input);
+        }
+
+        @Override
+        public void stop() {
+            ttsManager.stopSpeaking();
+        }
+    }
+
+    // SpeechRecognizer has to be driven from the main thread
+    private final class SttListener implements UssdSessionEngine.Listener {
+        @Override
+        public void configure(InputMode mode, int allowedDigits, boolean amount) {
+            onMain(() -> {
+                sttManager.setInputMode(mode);
+                sttManager.setAllowedDigits(allowedDigits);
+                sttManager.setAmountInput(amount);
+            });
+        }
+
+        @Override
+        public void setLanguage(String languageTag) {
+            onMain(() -> sttManager.setRecognitionLanguage(languageTag));
+        }
+
+        @Override
+        public void startBargeIn() {
+            onMain(() -> sttManager.startBargeIn(echoGuard));
+        }
+
+        @Override
+        public void listen(long promptDoneAt) {
+            // STTManager queues the start if the previous session is still finishing,
+            // and keeps a barge-in session that is already listening
+            onMain(() -> sttManager.onPromptFinished(promptDoneAt));
+        }
+
+        @Override
+        public void endInput() {
+            onMain(() -> sttManager.endInput());
+        }
+    }
+
+    private final class FieldInput implements UssdSessionEngine.Input {
+        @Override
+        public CompletableFuture<Boolean> sendChoice(int number) {
+            return inputSimulator.inputNumberAndSend(number);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> appendDigit(int digit) {
+            return inputSimulator.inputSingleDigit(digit);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> setText(String text) {
+            return inputSimulator.setInputText(text);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> submit(String text) {
+            return inputSimulator.submitLongInput(text);
+        }
+
+        @Override
+        public boolean cancel() {
+            return inputSimulator.cancelDialog();
+        }
+
+        @Override
+        public String getInput() {
+            return inputSimulator.getInput();
+        }
+    }
+
+    private ScreenClassifier loadScreenClassifier() {
+        try (InputStream in = getAssets().open(SCREEN_RULES_ASSET)) {
+            return ScreenClassifier.load(in);
+        } catch (IOException e) {
+            // Without rules every screen falls back to input or read-only handling
+            Log.e(TAG, "Failed to load " + SCREEN_RULES_ASSET + ": " + e.getMessage());
+            return new ScreenClassifier(ScreenRuleTable.empty());
+        }
+    }
+
+    // adb shell dumpsys activity service com.voiceussd.prototype/.services.USSDDetectorService [trace <level> | timeline | record start|stop]
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length == 2 && "trace".equals(args[0])) {
+            Tracer.setLevel(parseTraceLevel(args[1]));
+            writer.println("Trace level set to " + args[1]);
+            return;
+        }
+        if (args != null && args.length == 2 && "record".equals(args[0]) && workerHandler != null) {
+            if ("start".equals(args[1])) {
+                File file = new File(exportDir(), "ussd_" + System.currentTimeMillis() + ".rec");
+                workerHandler.post(() -> startRecording(file));
+                writer.println("Recording to " + file);
+            } else {
+                workerHandler.post(this::stopRecording);
+                writer.println("Recording stopped");
+            }
+            return;
+        }
+        if (args != null && args.length == 1 && "timeline".equals(args[0])) {
+            File exported = exportTimeline();
+            writer.println(exported != null ? "Turn timeline written to " + exported : "Turn timeline export failed");
+            return;
+        }
+
+        writer.println("Event pipeline: " + eventFilter.summary() + ", queued=" + eventQueue.size()
+                + ", pushed out=" + eventQueue.getEvicted());
+        if (sessionEngine != null) {
+            writer.println("Session: " + sessionEngine.summary() + ", screens=" + eventProcessor.getScreens());
+        }
+        if (inputSimulator != null) {
+            writer.println("Input writes: " + inputSimulator.bufferSummary());
+        }
+        if (screenCache != null) {
+            writer.println("Screen cache: " + screenCache.summary());
+        }
+        if (ttsManager != null) {
+            writer.println("TTS cache: " + ttsManager.cacheSummary());
+        }
+        if (sttManager != null) {
+            writer.println("STT: " + sttManager.latencySummary());
+        }
+        TurnTimeline.dump(writer);
+        Tracer.dump(writer);
+    }
+
+    // Per-stage percentiles as TSV, tagged with device and build so runs can be compared.
+    // adb pull /sdcard/Android/data/com.voiceussd.prototype/files/turn_timeline.tsv
+    private File exportTimeline() {
+        File file = new File(exportDir(), TIMELINE_FILE);
+        String device = Build.MANUFACTURER + " " + Build.MODEL + ", API " + Build.VERSION.SDK_INT;
+        String release;
+        try {
+            PackageInfo info = getPackageManager().getPackageInfo(getPackageName(), 0);
+            release = info.versionName + " (" + info.versionCode + ")";
+        } catch (PackageManager.NameNotFoundException e) {
+            release = "unknown";
+        }
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            TurnTimeline.export(out, device, release);
+            return file;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to export turn timeline: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static int parseTraceLevel(String level) {
+        switch (level) {
+            case "info":
+                return Tracer.INFO;
+            case "debug":
+                return Tracer.DEBUG;
+            case "verbose":
+                return Tracer.VERBOSE;
+            default:
+                return Tracer.OFF;
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (workerThread == null) {
+            shutDownSpeech();
+            return;
+        }
+        // Let the worker finish what it holds, then release it there. Speech is shut down only
+        // after that, so the session's last calls reach live managers and the timeline export
+        // sees every mark the worker made.
+        workerHandler.post(() -> {
+            discardPendingEvent();
+            AccessibilityEvent event;
+            while ((event = eventQueue.poll()) != null) {
+                event.recycle();
+            }
+            if (currentSnapshot != null) {
+                currentSnapshot.release();
+                currentSnapshot = null;
+            }
+            stopRecording();
+            if (sessionEngine != null) {
+                sessionEngine.onSessionEnded();
+                Log.d(TAG, "Session: " + sessionEngine.summary());
+            }
+            // Queued behind the engine's own calls to the main thread
+            onMain(this::shutDownSpeech);
+        });
+        workerThread.quitSafely();
+    }
+
+    // Main thread: the recognizer has to be released there
+    private void shutDownSpeech() {
+        Log.d(TAG, "Event pipeline: " + eventFilter.summary());
+        exportTimeline();
         if (ttsManager != null) {
             ttsManager.shutdown();
         }
@@ -447,4 +613,4 @@ public class USSDDetectorService extends AccessibilityService {
             sttManager.shutdown();
         }
     }
-}
\ No newline at end of file
+}
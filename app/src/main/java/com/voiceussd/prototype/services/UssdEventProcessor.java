@@ -0,0 +1,166 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.diagnostics.Tracer;
+import com.voiceussd.prototype.diagnostics.TurnTimeline;
+import com.voiceussd.prototype.text.NumberLexicon;
+
+import java.util.List;
+
+// Detection, extraction and classification for the events that reach the worker: decides when
+// a USSD session starts and ends, walks the dialog when the carrier has sent a new screen, and
+// hands the classified screen to the session engine. Threads, queues and coalescing stay in the
+// service; trees are read through a NodeReader, so replays run this same code on recordings.
+final class UssdEventProcessor<N> {
+    private static final String TAG = "UssdEventProcessor";
+    // AccessibilityEvent's value, spelled out so replays and benchmarks run without the framework
+    static final int TYPE_WINDOW_STATE_CHANGED = 0x00000020;
+
+    interface Host<N> {
+        N getRootInActiveWindow();
+
+        // Owns the walk's retained nodes from here on
+        void onScreenCaptured(ScreenWalk<N> walk);
+
+        void onSessionClosed();
+    }
+
+    private final NodeReader<N> reader;
+    private final ScreenParseCache screenCache;
+    private final UssdSessionEngine sessionEngine;
+    private final UssdSessionEngine.Clock uptime;
+    private final Host<N> host;
+
+    // Written by the worker, read by the pre-filter on the main thread
+    private volatile boolean active = false;
+    private boolean awaitingFirstScreen;
+    private long screens = 0;
+    private ParsedScreen lastScreen;
+    // Text of the screen being answered; our own typing is not part of it
+    private String lastContent;
+    private long sessions = 0;
+
+    UssdEventProcessor(NodeReader<N> reader, ScreenParseCache screenCache, UssdSessionEngine sessionEngine,
+                       UssdSessionEngine.Clock uptime, Host<N> host) {
+        this.reader = reader;
+        this.screenCache = screenCache;
+        this.sessionEngine = sessionEngine;
+        this.uptime = uptime;
+        this.host = host;
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    long getScreens() {
+        return screens;
+    }
+
+    long getSessions() {
+        return sessions;
+    }
+
+    ParsedScreen getLastScreen() {
+        return lastScreen;
+    }
+
+    void process(int eventType, CharSequence eventPackage, CharSequence eventClass,
+                 List<? extends CharSequence> text, long eventTime) {
+        String packageName = eventPackage != null ? eventPackage.toString() : "";
+        String className = eventClass != null ? eventClass.toString() : "";
+
+        // Trace phone-related dialogs for debugging
+        if (Tracer.isEnabled(Tracer.DEBUG) && className.contains("AlertDialog") &&
+                (packageName.contains("phone") || packageName.contains("dialer"))) {
+            Tracer.record(Tracer.DEBUG, TAG, "phone dialog", packageName);
+            // The event is recycled after this callback, so copy its text out
+            Tracer.record(Tracer.DEBUG, TAG, "  event text", text.toString());
+        }
+
+        int categories = matchEventText(text);
+        if (UssdKeywords.isUSSDDialog(packageName, className, categories)) {
+            if (!active) {
+                active = true;
+                sessions++;
+                awaitingFirstScreen = true;
+                lastContent = null;
+                Tracer.record(Tracer.INFO, TAG, "USSD window detected");
+                sessionEngine.onSessionStarted();
+            }
+            // The first screen, or the carrier's reply to what we sent. While a screen is being
+            // handled, most of the dialog's events are our own typing; only a change of the
+            // carrier's text is a new screen (a reply to a send we gave up on, or to an answer
+            // the user typed themselves).
+            if (sessionEngine.isActive() && !UssdKeywords.has(categories, UssdKeywords.USSD_RUNNING)) {
+                handleUSSDWindow(packageName, eventTime, !sessionEngine.isAwaitingScreen());
+            }
+        } else if (active && isUSSDWindowClosed(eventType, className)) {
+            active = false;
+            sessionEngine.onSessionEnded();
+            TurnTimeline.endSession();
+            Tracer.record(Tracer.INFO, TAG, "USSD window closed");
+            host.onSessionClosed();
+        }
+    }
+
+    // Only another window coming up closes the session; text and content changes inside the
+    // dialog (including our own typing) don't
+    static boolean isUSSDWindowClosed(int eventType, String className) {
+        return eventType == TYPE_WINDOW_STATE_CHANGED
+                && !className.contains("AlertDialog");
+    }
+
+    // Event text arrives as a list of CharSequences; match each part instead of joining them
+    private static int matchEventText(List<? extends CharSequence> text) {
+        int categories = 0;
+        for (CharSequence part : text) {
+            categories |= UssdKeywords.match(part);
+        }
+        return categories;
+    }
+
+    private void handleUSSDWindow(String dialerPackage, long eventTime, boolean onlyIfChanged) {
+        N rootNode = host.getRootInActiveWindow();
+        if (rootNode == null) {
+            Tracer.record(Tracer.DEBUG, TAG, "root node is null");
+            return;
+        }
+
+        // One walk of the tree; everything below reads from it
+        ScreenWalk<N> walk = ScreenWalk.walk(rootNode, reader);
+        if (!walk.retains(rootNode)) {
+            reader.recycle(rootNode);
+        }
+        String content = walk.getText();
+        if (onlyIfChanged && content.equals(lastContent)) {
+            walk.release();
+            return;
+        }
+        if (onlyIfChanged) {
+            Tracer.record(Tracer.INFO, TAG, "carrier text changed while answering", sessionEngine.getPhase());
+        }
+        lastContent = content;
+
+        // The event's own time, so the wait in our queue counts too
+        TurnTimeline.mark(awaitingFirstScreen ? TurnTimeline.DIALOG_DETECTED : TurnTimeline.NEXT_DIALOG, eventTime);
+        awaitingFirstScreen = false;
+        host.onScreenCaptured(walk);
+
+        Tracer.record(Tracer.DEBUG, TAG, "USSD content", content);
+        Tracer.record(Tracer.DEBUG, TAG, "has input field", walk.isEditable() ? 1 : 0);
+
+        // Classify the window from the rule table and hand it to the session engine
+        ParsedScreen screen = screenCache.get(content, dialerPackage, walk.isEditable());
+        TurnTimeline.mark(TurnTimeline.SNAPSHOT_DONE, uptime.now());
+        screens++;
+        lastScreen = screen;
+        Tracer.record(Tracer.INFO, TAG, "window type", screen.getType());
+        sessionEngine.onScreen(screen, recognitionLanguage(content));
+    }
+
+    // Answer in the language the carrier's session is written in
+    private static String recognitionLanguage(String screenText) {
+        boolean kinyarwanda = UssdKeywords.has(UssdKeywords.match(screenText), UssdKeywords.KINYARWANDA);
+        return kinyarwanda ? NumberLexicon.KINYARWANDA_TAG : NumberLexicon.ENGLISH_TAG;
+    }
+}
@@ -0,0 +1,44 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.text.KeywordMatcher;
+
+// Keyword sets used to detect USSD dialogs, compiled into a single automaton so one pass
+// over the event text answers every question at once. Telling screen types apart is left to
+// ScreenClassifier and its rule table.
+public final class UssdKeywords {
+
+    public static final int USSD_CONTENT = 1;      // Looks like a USSD dialog at all
+    public static final int USSD_RUNNING = 1 << 1; // "USSD code running..." placeholder
+    public static final int KINYARWANDA = 1 << 2;  // Screen is written in Kinyarwanda
+
+    private static final KeywordMatcher MATCHER = new KeywordMatcher.Builder()
+            .add(0, "ussd", "ussd code", "1)", "n next", "balance", "amafaranga", "kwemeza", "pin",
+                    "shyiramo", "mobile number", "nimero ya mobile", "recipient", "07xxxxxxxx",
+                    "format 07", "enter", "amount")
+            .add(1, "ussd code running")
+            .add(2, "amafaranga", "shyiramo", "umubare", "kwemeza", "ohereza", "kohereza", "nimero ya",
+                    "andika", "ibanga", "hitamo", "kugura", "murakoze", "konti")
+            .build();
+
+    private UssdKeywords() {
+    }
+
+    public static int match(CharSequence text) {
+        return MATCHER.match(text);
+    }
+
+    public static boolean has(int categories, int category) {
+        return (categories & category) != 0;
+    }
+
+    // A dialer or telephony AlertDialog whose text matched USSD_CONTENT
+    public static boolean isUSSDDialog(String packageName, String className, int categories) {
+        boolean isPhoneRelated = packageName.contains("phone") || packageName.contains("dialer") ||
+                packageName.contains("telecom") || packageName.contains("telephony") ||
+                packageName.equals("com.android.phone") || packageName.equals("com.google.android.dialer");
+
+        boolean isDialog = className.contains("AlertDialog");
+
+        return (isPhoneRelated && isDialog) && has(categories, USSD_CONTENT);
+    }
+}
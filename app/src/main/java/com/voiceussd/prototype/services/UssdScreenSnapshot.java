@@ -0,0 +1,110 @@
+package com.voiceussd.prototype.services;
+
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.voiceussd.prototype.diagnostics.Tracer;
+
+// Everything we need from one USSD dialog, captured in a single walk of the node tree.
+// Each getChild() is a binder call into the dialer, so consumers read from here instead
+// of walking the tree again. The node handles stay valid until release() is called.
+public final class UssdScreenSnapshot {
+    private static final String TAG = "UssdScreenSnapshot";
+
+    private final int windowId;
+    private final String text;
+    private final boolean editable;
+    private final AccessibilityNodeInfo inputField;
+    private final AccessibilityNodeInfo sendButton;
+    private final AccessibilityNodeInfo cancelButton;
+    private final int nodeCount;
+    private final int childCalls;
+    private final int legacyChildCalls;
+
+    private UssdScreenSnapshot(ScreenWalk<AccessibilityNodeInfo> walk) {
+        this.windowId = walk.getWindowId();
+        this.text = walk.getText();
+        this.editable = walk.isEditable();
+        this.inputField = walk.getInputField();
+        this.sendButton = walk.getSendButton();
+        this.cancelButton = walk.getCancelButton();
+        this.nodeCount = walk.getNodeCount();
+        this.childCalls = walk.getChildCalls();
+        this.legacyChildCalls = walk.getLegacyChildCalls();
+    }
+
+    public static UssdScreenSnapshot capture(AccessibilityNodeInfo root) {
+        return of(ScreenWalk.walk(root, AccessibilityNodeReader.INSTANCE));
+    }
+
+    // Takes over the handles of a walk that has already been done
+    static UssdScreenSnapshot of(ScreenWalk<AccessibilityNodeInfo> walk) {
+        UssdScreenSnapshot snapshot = new UssdScreenSnapshot(walk);
+        Tracer.record(Tracer.INFO, TAG, "captured nodes", snapshot.nodeCount);
+        Tracer.record(Tracer.INFO, TAG, "getChild IPC before/after", snapshot.legacyChildCalls, snapshot.childCalls);
+        return snapshot;
+    }
+
+    public int getWindowId() {
+        return windowId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isEditable() {
+        return editable;
+    }
+
+    public AccessibilityNodeInfo getInputField() {
+        return inputField;
+    }
+
+    public AccessibilityNodeInfo getSendButton() {
+        return sendButton;
+    }
+
+    public AccessibilityNodeInfo getCancelButton() {
+        return cancelButton;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getChildCalls() {
+        return childCalls;
+    }
+
+    // getChild() calls the old extract/detect/analyze walks plus one input field and one
+    // send button lookup would have made for this same tree
+    public int getLegacyChildCalls() {
+        return legacyChildCalls;
+    }
+
+    public String describe() {
+        return "window=" + windowId +
+                ", nodes=" + nodeCount +
+                ", editable=" + editable +
+                ", inputField=" + describe(inputField) +
+                ", sendButton=" + describe(sendButton) +
+                ", cancelButton=" + describe(cancelButton);
+    }
+
+    public void release() {
+        recycle(inputField);
+        recycle(sendButton);
+        recycle(cancelButton);
+    }
+
+    private static String describe(AccessibilityNodeInfo node) {
+        if (node == null) return "none";
+        return node.getClassName() + "(" + node.getViewIdResourceName() + ")";
+    }
+
+    private static void recycle(AccessibilityNodeInfo node) {
+        if (node != null) {
+            node.recycle();
+        }
+    }
+}
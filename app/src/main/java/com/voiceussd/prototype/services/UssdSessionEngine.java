@@ -0,0 +1,438 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.audio.InputMode;
+import com.voiceussd.prototype.audio.SpeechText;
+import com.voiceussd.prototype.diagnostics.LatencyStats;
+import com.voiceussd.prototype.diagnostics.Tracer;
+import com.voiceussd.prototype.text.DigitParser;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+// One USSD session, screen by screen: speak -> listen -> write -> submit -> wait for the
+// carrier's reply. Every call comes in on one thread (the service's worker), so there are no
+// locks. Anything that finishes later (field writes, sends) is checked against the screen it
+// was started for, and recognizer or TTS callbacks are checked against the phase, so nothing
+// from an earlier screen lands on the current one. Each phase change is timestamped.
+public final class UssdSessionEngine {
+    private static final String TAG = "UssdSessionEngine";
+
+    public enum Phase {
+        IDLE,           // No USSD dialog
+        AWAITING_SCREEN, // Dialog is up (or an answer was sent); waiting for the carrier's text
+        SPEAKING,       // Reading a prompt that an answer follows
+        LISTENING,      // Prompt done, recognizer running
+        WRITING,        // Digits on their way to the input field
+        SUBMITTING,     // Send pressed, waiting for the dialog to react
+        READING         // Reading text that needs no answer
+    }
+
+    // Continuous capture below this confidence switches the screen to digit-by-digit
+    static final float DIGIT_SEQUENCE_MIN_CONFIDENCE = 0.6f;
+    // Re-prompts per screen (or per digit) before we give up and close the dialog
+    static final int MAX_REPROMPTS = 2;
+
+    // What the engine drives; the service adapts TTSManager, STTManager and InputSimulator
+    public interface Speaker {
+        void speakMenu(String text);
+        void speakInputStart(String text);
+        void speakPrompt(String text); // Re-prompts; an answer follows
+        void speakDigitConfirmation(int digit, String input);
+        void speakSequenceConfirmation(String input);
+        void speakInformation(String text); // Nothing follows
+        void speakCompletion(String input);
+        void stop();
+    }
+
+    public interface Listener {
+        void configure(InputMode mode, int allowedDigits, boolean amount);
+        void setLanguage(String languageTag);
+        void startBargeIn();
+        void listen(long promptDoneAt);
+        void endInput();
+    }
+
+    public interface Input {
+        CompletableFuture<Boolean> sendChoice(int number);
+        CompletableFuture<Boolean> appendDigit(int digit);
+        CompletableFuture<Boolean> setText(String text);
+        CompletableFuture<Boolean> submit(String text);
+        boolean cancel(); // Closes the dialog; false if it could not be
+        String getInput();
+    }
+
+    public interface Clock {
+        long now();
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    // "FROM->TO" for the trace, built once so transitions don't allocate
+    private static final String[][] TRANSITIONS = new String[PHASES.length][PHASES.length];
+
+    static {
+        for (Phase from : PHASES) {
+            for (Phase to : PHASES) {
+                TRANSITIONS[from.ordinal()][to.ordinal()] = from.name() + "->" + to.name();
+            }
+        }
+    }
+
+    private final Speaker speaker;
+    private final Listener listener;
+    private final Input input;
+    private final Clock clock;
+    private final boolean menuBargeIn;
+
+    private Phase phase = Phase.IDLE;
+    private long phaseSince;
+    // Bumped for every screen and at session end; continuations compare against it
+    private int generation;
+    private ParsedScreen screen;
+    private int reprompts;
+
+    // Time spent per phase: in the current session, and per visit over the service's lifetime
+    private final long[] sessionMs = new long[PHASES.length];
+    private final LatencyStats[] phaseStats = new LatencyStats[PHASES.length];
+    private int sessionScreens;
+    private long sessions;
+
+    public UssdSessionEngine(Speaker speaker, Listener listener, Input input, Clock clock, boolean menuBargeIn) {
+        this.speaker = speaker;
+        this.listener = listener;
+        this.input = input;
+        this.clock = clock;
+        this.menuBargeIn = menuBargeIn;
+        for (Phase p : PHASES) {
+            phaseStats[p.ordinal()] = new LatencyStats(p.name());
+        }
+        phaseSince = clock.now();
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public boolean isActive() {
+        return phase != Phase.IDLE;
+    }
+
+    // A new dialog state from the carrier is a new screen only while we are waiting for one
+    public boolean isAwaitingScreen() {
+        return phase == Phase.AWAITING_SCREEN;
+    }
+
+    public void onSessionStarted() {
+        generation++;
+        screen = null;
+        sessionScreens = 0;
+        Arrays.fill(sessionMs, 0);
+        enter(Phase.AWAITING_SCREEN);
+    }
+
+    public void onSessionEnded() {
+        if (phase == Phase.IDLE) return;
+
+        generation++;
+        screen = null;
+        listener.endInput();
+        enter(Phase.IDLE);
+        sessions++;
+        Tracer.record(Tracer.INFO, TAG, "session screens", sessionScreens);
+        if (Tracer.isEnabled(Tracer.INFO)) {
+            Tracer.record(Tracer.INFO, TAG, "session ms by phase", sessionSummary());
+        }
+    }
+
+    public void onScreen(ParsedScreen parsed, String languageTag) {
+        generation++;
+        screen = parsed;
+        reprompts = 0;
+        sessionScreens++;
+        listener.setLanguage(languageTag);
+
+        switch (parsed.getType()) {
+            case MENU:
+                listener.configure(InputMode.MENU, parsed.getAllowedDigits(), false);
+                if (parsed.getSpeechText() == null) {
+                    Tracer.record(Tracer.INFO, TAG, "no menu options to speak");
+                    enter(Phase.READING);
+                    return;
+                }
+                speaker.speakMenu(parsed.getSpeechText());
+                enter(Phase.SPEAKING);
+                if (menuBargeIn) {
+                    // Users who know the menu can answer before it has been read out
+                    listener.startBargeIn();
+                }
+                break;
+            case READ_ONLY:
+                speaker.speakInformation(parsed.getSpeechText());
+                enter(Phase.READING);
+                break;
+            default:
+                // Phone numbers and amounts can be said in one go; the rest digit by digit
+                InputMode mode = parsed.getType().acceptsDigitSequence()
+                        ? InputMode.CONTINUOUS_DIGITS
+                        : InputMode.DIGIT_BY_DIGIT;
+                listener.configure(mode, DigitParser.ANY_DIGIT, parsed.getType() == ScreenType.AMOUNT);
+                speaker.speakInputStart(parsed.getSpeechText());
+                enter(Phase.SPEAKING);
+                break;
+        }
+    }
+
+    // Any prompt that expects an answer has finished playing
+    public void onPromptDone(long doneAt) {
+        // Read-only text and completion messages need no recognizer
+        if (phase != Phase.SPEAKING) return;
+        enter(Phase.LISTENING);
+        listener.listen(doneAt);
+    }
+
+    public void onMenuChoice(int number) {
+        if (!isAnswering(true)) {
+            Tracer.record(Tracer.DEBUG, TAG, "stale menu choice", number);
+            return;
+        }
+        // Barge-in: the menu may still be playing
+        speaker.stop();
+        Tracer.record(Tracer.DEBUG, TAG, "menu choice", number);
+        awaitSubmit(input.sendChoice(number));
+    }
+
+    public void onDigit(int digit) {
+        if (!isEnteringDigits()) {
+            Tracer.record(Tracer.DEBUG, TAG, "stale digit", digit);
+            return;
+        }
+        Tracer.record(Tracer.DEBUG, TAG, "recognized digit", digit);
+
+        // The input buffer also holds digits still on their way to the field
+        String candidate = input.getInput() + digit;
+        InputSchema.Verdict verdict = schema().check(candidate);
+        if (rejectInput(verdict)) {
+            return;
+        }
+
+        int expected = generation;
+        enter(Phase.WRITING);
+        input.appendDigit(digit).thenAccept(written -> {
+            if (expected != generation) return;
+            if (!afterWrite(written)) return;
+
+            if (verdict == InputSchema.Verdict.COMPLETE) {
+                // Nothing more can follow; don't wait for "done"
+                submitInput();
+                return;
+            }
+            speaker.speakDigitConfirmation(digit, input.getInput());
+            enter(Phase.SPEAKING);
+        });
+    }
+
+    public void onDigitSequence(String digits, float confidence) {
+        if (!isEnteringDigits()) {
+            Tracer.record(Tracer.DEBUG, TAG, "stale digit sequence", digits);
+            return;
+        }
+        Tracer.record(Tracer.DEBUG, TAG, "recognized digit sequence", digits, (long) (confidence * 100));
+
+        if (digits.isEmpty() || confidence < DIGIT_SEQUENCE_MIN_CONFIDENCE) {
+            fallBackToDigitByDigit();
+            return;
+        }
+
+        String candidate = input.getInput() + digits;
+        InputSchema.Verdict verdict = schema().check(candidate);
+        if (rejectInput(verdict)) {
+            return;
+        }
+
+        int expected = generation;
+        enter(Phase.WRITING);
+        input.setText(candidate).thenAccept(written -> {
+            if (expected != generation) return;
+            if (!afterWrite(written)) return;
+
+            if (verdict == InputSchema.Verdict.COMPLETE) {
+                submitInput();
+                return;
+            }
+            speaker.speakSequenceConfirmation(candidate);
+            enter(Phase.SPEAKING);
+        });
+    }
+
+    public void onDone() {
+        if (!isEnteringDigits()) {
+            Tracer.record(Tracer.DEBUG, TAG, "stale done");
+            return;
+        }
+
+        String current = input.getInput();
+        if (current.isEmpty()) {
+            askAgain(SpeechText.digitReprompt(current));
+        } else if (!schema().isLongEnough(current)) {
+            askAgain(SpeechText.tooShort(schema().getMinLength(), current));
+        } else {
+            submitInput();
+        }
+    }
+
+    // Nothing said for a while after the last digit: send what there is
+    public void onInputTimeout() {
+        if (!isEnteringDigits() || input.getInput().isEmpty()) return;
+        Tracer.record(Tracer.DEBUG, TAG, "input completed by timeout");
+        submitInput();
+    }
+
+    // Nothing the screen accepts was heard: ask again instead of sending a guess to the carrier
+    public void onAnswerRejected(String heard) {
+        if (screen == null || (phase != Phase.SPEAKING && phase != Phase.LISTENING)) return;
+        if (reprompts >= MAX_REPROMPTS) {
+            // Leaving the dialog open would only mean silence until the carrier times out
+            Tracer.record(Tracer.INFO, TAG, "no valid answer after re-prompts, cancelling", heard, reprompts);
+            giveUp();
+            return;
+        }
+        reprompts++;
+
+        String prompt = screen.getType() == ScreenType.MENU
+                ? SpeechText.menuReprompt(screen.getOptions())
+                : SpeechText.digitReprompt(input.getInput());
+        Tracer.record(Tracer.DEBUG, TAG, "re-prompting", heard, reprompts);
+        askAgain(prompt);
+    }
+
+    // Tells the user and closes the dialog. If it can't be closed, whatever the user then
+    // types on the keypad is still followed as the carrier's next screen.
+    private void giveUp() {
+        listener.endInput();
+        speaker.speakInformation(SpeechText.noAnswerUnderstood());
+        enter(Phase.READING);
+        if (!input.cancel()) {
+            Tracer.record(Tracer.INFO, TAG, "dialog could not be cancelled");
+        }
+    }
+
+    private boolean isAnswering(boolean menu) {
+        return screen != null
+                && (screen.getType() == ScreenType.MENU) == menu
+                && (phase == Phase.SPEAKING || phase == Phase.LISTENING);
+    }
+
+    // Digits may also arrive while an earlier one is still being written; the buffer coalesces them
+    private boolean isEnteringDigits() {
+        return isAnswering(false) || (phase == Phase.WRITING && screen != null && screen.getType() != ScreenType.MENU);
+    }
+
+    private InputSchema schema() {
+        return screen != null ? screen.getRule().getSchema() : InputSchema.ANY;
+    }
+
+    // Turns away input the screen can't accept and asks to continue from what was kept
+    private boolean rejectInput(InputSchema.Verdict verdict) {
+        String kept = input.getInput();
+        String prompt;
+        switch (verdict) {
+            case WRONG_PREFIX:
+                prompt = SpeechText.wrongPrefix(schema().getPrefix(), kept);
+                break;
+            case TOO_LONG:
+                prompt = SpeechText.tooLong(schema().getMaxLength(), kept);
+                break;
+            case NOT_NUMERIC:
+                prompt = SpeechText.digitReprompt(kept);
+                break;
+            default:
+                return false;
+        }
+
+        Tracer.record(Tracer.INFO, TAG, "input rejected", verdict);
+        askAgain(prompt);
+        return true;
+    }
+
+    // False if the field didn't take the write; the user is asked to go on from what it holds
+    private boolean afterWrite(boolean written) {
+        if (!written) {
+            Tracer.record(Tracer.INFO, TAG, "input write failed");
+            askAgain(SpeechText.inputFailed(input.getInput()));
+            return false;
+        }
+        reprompts = 0;
+        return true;
+    }
+
+    private void fallBackToDigitByDigit() {
+        String kept = input.getInput();
+        Tracer.record(Tracer.INFO, TAG, "low confidence, falling back to digit-by-digit", kept.length());
+        listener.configure(InputMode.DIGIT_BY_DIGIT, DigitParser.ANY_DIGIT, false);
+        askAgain(SpeechText.digitByDigitFallback(kept));
+    }
+
+    // Types nothing more: speaks the final answer and presses send
+    private void submitInput() {
+        String fullInput = input.getInput();
+        Tracer.record(Tracer.DEBUG, TAG, "submitting input", fullInput);
+        listener.endInput();
+        speaker.speakCompletion(fullInput);
+        awaitSubmit(input.submit(fullInput));
+    }
+
+    private void awaitSubmit(CompletableFuture<Boolean> sent) {
+        int expected = generation;
+        enter(Phase.SUBMITTING);
+        sent.thenAccept(ok -> {
+            // The carrier's reply may already have arrived as a new screen
+            if (expected != generation) return;
+            if (ok) {
+                enter(Phase.AWAITING_SCREEN);
+            } else {
+                Tracer.record(Tracer.INFO, TAG, "send failed");
+                askAgain(screen.getType() == ScreenType.MENU
+                        ? SpeechText.menuReprompt(screen.getOptions())
+                        : SpeechText.inputFailed(input.getInput()));
+            }
+        });
+    }
+
+    private void askAgain(String prompt) {
+        speaker.speakPrompt(prompt);
+        enter(Phase.SPEAKING);
+    }
+
+    private void enter(Phase next) {
+        long now = clock.now();
+        long spent = now - phaseSince;
+        if (phase != Phase.IDLE) {
+            sessionMs[phase.ordinal()] += spent;
+            phaseStats[phase.ordinal()].record(spent);
+        }
+        Tracer.record(Tracer.INFO, TAG, "transition", TRANSITIONS[phase.ordinal()][next.ordinal()], spent);
+        phase = next;
+        phaseSince = now;
+    }
+
+    private String sessionSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Phase p : PHASES) {
+            if (sessionMs[p.ordinal()] > 0) {
+                if (summary.length() > 0) summary.append(", ");
+                summary.append(p.name()).append('=').append(sessionMs[p.ordinal()]);
+            }
+        }
+        return summary.toString();
+    }
+
+    public String summary() {
+        StringBuilder summary = new StringBuilder("phase=").append(phase.name())
+                .append(", sessions=").append(sessions);
+        for (Phase p : PHASES) {
+            if (p != Phase.IDLE && phaseStats[p.ordinal()].getCount() > 0) {
+                summary.append("; ").append(phaseStats[p.ordinal()].summary());
+            }
+        }
+        return summary.toString();
+    }
+}
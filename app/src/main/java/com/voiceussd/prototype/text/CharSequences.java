@@ -0,0 +1,43 @@
+package com.voiceussd.prototype.text;
+
+// Allocation-free helpers for the CharSequence values handed to us by the accessibility
+// framework. Calling toString() on every event is what we are trying to avoid here.
+public final class CharSequences {
+
+    private CharSequences() {
+    }
+
+    public static boolean contains(CharSequence text, String needle) {
+        return indexOf(text, needle, false) >= 0;
+    }
+
+    public static boolean containsIgnoreCase(CharSequence text, String needle) {
+        return indexOf(text, needle, true) >= 0;
+    }
+
+    public static boolean equals(CharSequence text, String other) {
+        if (text == null) return other == null;
+        if (other == null || text.length() != other.length()) return false;
+        for (int i = 0; i < other.length(); i++) {
+            if (text.charAt(i) != other.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Needles are expected to be lower case when ignoreCase is set
+    private static int indexOf(CharSequence text, String needle, boolean ignoreCase) {
+        if (text == null) return -1;
+        int max = text.length() - needle.length();
+        for (int start = 0; start <= max; start++) {
+            int i = 0;
+            while (i < needle.length()) {
+                char c = text.charAt(start + i);
+                if (ignoreCase) c = Character.toLowerCase(c);
+                if (c != needle.charAt(i)) break;
+                i++;
+            }
+            if (i == needle.length()) return start;
+        }
+        return -1;
+    }
+}
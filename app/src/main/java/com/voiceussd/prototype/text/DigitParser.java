@@ -0,0 +1,307 @@
+package com.voiceussd.prototype.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads a single spoken digit (or a command: done, yes, no) out of recognizer hypotheses. Words
+// are matched whole against a trie while the text is scanned, so "ate" in "translate" or
+// "one" in "money" no longer count, and nothing is allocated per call. Each word carries a
+// score (homophones like "for" score lower than "four"), and n-best lists are combined as
+// votes weighted by the recognizer's confidence. Word lists come from NumberLexicon.
+// Not thread-safe: keep one per thread.
+public final class DigitParser {
+    public static final int NO_DIGIT = -1;
+    public static final int DONE = 10;
+    public static final int YES = 11;
+    public static final int NO = 12;
+
+    // Bit i set: digit i is a valid answer. Commands are not affected by the mask.
+    public static final int ANY_DIGIT = 0x3FF;
+
+    // Below this the best guess is reported as NO_DIGIT
+    static final float MIN_CONFIDENCE = 0.2f;
+    // Each word that is neither a number nor a known filler
+    static final float UNKNOWN_WORD_PENALTY = 0.7f;
+
+    private static final int ALPHABET = 27; // a-z and apostrophe
+    private static final byte KIND_NONE = 0;
+    private static final byte KIND_DIGIT = 1;
+    private static final byte KIND_DONE = 2;
+    private static final byte KIND_FILLER = 3;
+    private static final byte KIND_YES = 4;
+    private static final byte KIND_NO = 5;
+
+    private final int[] children; // node * ALPHABET + letter -> child, 0 for none
+    private final byte[] kinds;
+    private final byte[] values;
+    private final float[] scores;
+
+    // Scratch state, reused across calls
+    private final float[] votes = new float[NO + 1];
+    private float confidence;
+    private int hypothesisDigit;
+    private float hypothesisDigitScore;
+    private int hypothesisCommand;
+    private float hypothesisCommandScore;
+
+    private DigitParser(int[] children, byte[] kinds, byte[] values, float[] scores) {
+        this.children = children;
+        this.kinds = kinds;
+        this.values = values;
+        this.scores = scores;
+    }
+
+    public static DigitParser english() {
+        return NumberLexicon.compile(NumberLexicon.english());
+    }
+
+    // Confidence of the last parse/best result, 0..1
+    public float getConfidence() {
+        return confidence;
+    }
+
+    public static int digitMask(int digit) {
+        return digit >= 0 && digit <= 9 ? 1 << digit : 0;
+    }
+
+    public static boolean allows(int allowedDigits, int digit) {
+        return (allowedDigits & digitMask(digit)) != 0;
+    }
+
+    // One hypothesis on its own, e.g. a partial result. Commands (DONE, YES, NO) are only
+    // returned when acceptCommands is set.
+    public int parse(CharSequence hypothesis, boolean acceptCommands) {
+        return parse(hypothesis, acceptCommands, ANY_DIGIT);
+    }
+
+    // A digit outside allowedDigits reads as NO_DIGIT
+    public int parse(CharSequence hypothesis, boolean acceptCommands, int allowedDigits) {
+        scan(hypothesis);
+        if (acceptCommands && hypothesisCommand != NO_DIGIT) {
+            confidence = hypothesisCommandScore;
+            return hypothesisCommand;
+        }
+        if (hypothesisDigit != NO_DIGIT && hypothesisDigitScore >= MIN_CONFIDENCE && allows(allowedDigits, hypothesisDigit)) {
+            confidence = hypothesisDigitScore;
+            return hypothesisDigit;
+        }
+        confidence = 0f;
+        return NO_DIGIT;
+    }
+
+    // Combines an n-best list. recognizerScores may be null or shorter than the list; missing
+    // or non-positive scores fall back to 1 / (1 + rank).
+    public int best(List<? extends CharSequence> hypotheses, float[] recognizerScores, boolean acceptCommands) {
+        return best(hypotheses, recognizerScores, acceptCommands, ANY_DIGIT);
+    }
+
+    // Rescoring against the answers the screen accepts: hypotheses naming any other digit
+    // cast no vote, so a lower-ranked valid reading can still win
+    public int best(List<? extends CharSequence> hypotheses, float[] recognizerScores, boolean acceptCommands,
+                    int allowedDigits) {
+        for (int i = 0; i < votes.length; i++) votes[i] = 0f;
+        float totalWeight = 0f;
+
+        for (int rank = 0; rank < hypotheses.size(); rank++) {
+            float weight = recognizerScores != null && rank < recognizerScores.length && recognizerScores[rank] > 0f
+                    ? recognizerScores[rank] : 1f / (1 + rank);
+            totalWeight += weight;
+
+            scan(hypotheses.get(rank));
+            if (acceptCommands && hypothesisCommand != NO_DIGIT) {
+                votes[hypothesisCommand] += weight * hypothesisCommandScore;
+            } else if (hypothesisDigit != NO_DIGIT && allows(allowedDigits, hypothesisDigit)) {
+                votes[hypothesisDigit] += weight * hypothesisDigitScore;
+            }
+        }
+
+        int best = NO_DIGIT;
+        for (int i = 0; i < votes.length; i++) {
+            if (votes[i] > 0f && (best == NO_DIGIT || votes[i] > votes[best])) best = i;
+        }
+        confidence = best == NO_DIGIT ? 0f : votes[best] / totalWeight;
+        if (confidence < MIN_CONFIDENCE) {
+            confidence = 0f;
+            return NO_DIGIT;
+        }
+        return best;
+    }
+
+    public boolean isDone(CharSequence hypothesis) {
+        scan(hypothesis);
+        return hypothesisCommand == DONE;
+    }
+
+    // Tokenizes on the fly: letters walk the trie, digit runs are read as numbers, anything
+    // else ends the current token
+    private void scan(CharSequence text) {
+        hypothesisDigit = NO_DIGIT;
+        hypothesisDigitScore = 0f;
+        hypothesisCommand = NO_DIGIT;
+        hypothesisCommandScore = 0f;
+        boolean ambiguous = false;
+        int unknown = 0;
+
+        int node = 0;
+        boolean inWord = false;
+        boolean known = true;
+        int numberLength = 0;
+        int number = 0;
+
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+
+            int letter = c >= 'a' && c <= 'z' ? c - 'a' : c == '\'' ? 26 : Character.isLetter(c) ? ALPHABET : -1;
+            boolean digit = c >= '0' && c <= '9';
+
+            // End of a word
+            if (inWord && letter < 0) {
+                byte kind = known ? kinds[node] : KIND_NONE;
+                if (kind == KIND_DIGIT) {
+                    ambiguous |= !vote(values[node], scores[node]);
+                } else if (kind == KIND_DONE || kind == KIND_YES || kind == KIND_NO) {
+                    // The strongest command word in the hypothesis wins
+                    if (scores[node] > hypothesisCommandScore) {
+                        hypothesisCommand = kind == KIND_DONE ? DONE : kind == KIND_YES ? YES : NO;
+                        hypothesisCommandScore = scores[node];
+                    }
+                } else if (kind != KIND_FILLER) {
+                    unknown++;
+                }
+                inWord = false;
+                node = 0;
+                known = true;
+            }
+            // End of a digit run; only a lone digit names a digit
+            if (numberLength > 0 && !digit) {
+                if (numberLength == 1) {
+                    ambiguous |= !vote(number, 1f);
+                } else {
+                    unknown++;
+                }
+                numberLength = 0;
+                number = 0;
+            }
+
+            if (letter >= 0) {
+                inWord = true;
+                if (known) {
+                    int next = letter < ALPHABET ? children[node * ALPHABET + letter] : 0;
+                    if (next == 0) {
+                        known = false;
+                    } else {
+                        node = next;
+                    }
+                }
+            } else if (digit) {
+                numberLength++;
+                number = c - '0';
+            }
+        }
+
+        if (ambiguous) {
+            hypothesisDigit = NO_DIGIT;
+            hypothesisDigitScore = 0f;
+        }
+        float penalty = 1f;
+        for (int i = 0; i < unknown; i++) penalty *= UNKNOWN_WORD_PENALTY;
+        hypothesisDigitScore *= penalty;
+        hypothesisCommandScore *= penalty;
+    }
+
+    // Returns false when the hypothesis names two different digits
+    private boolean vote(int digit, float score) {
+        if (hypothesisDigit == NO_DIGIT) {
+            hypothesisDigit = digit;
+            hypothesisDigitScore = score;
+            return true;
+        }
+        if (hypothesisDigit == digit) {
+            hypothesisDigitScore = Math.max(hypothesisDigitScore, score);
+            return true;
+        }
+        return false;
+    }
+
+    public static final class Builder {
+        private final List<String> words = new ArrayList<>();
+        private final List<int[]> entries = new ArrayList<>(); // kind, value
+        private final List<Float> wordScores = new ArrayList<>();
+
+        public Builder digit(int value, float score, String... spoken) {
+            if (value < 0 || value > 9) throw new IllegalArgumentException("Not a digit: " + value);
+            return add(KIND_DIGIT, value, score, spoken);
+        }
+
+        public Builder done(float score, String... spoken) {
+            return add(KIND_DONE, 0, score, spoken);
+        }
+
+        public Builder yes(float score, String... spoken) {
+            return add(KIND_YES, 0, score, spoken);
+        }
+
+        public Builder no(float score, String... spoken) {
+            return add(KIND_NO, 0, score, spoken);
+        }
+
+        public Builder filler(String... spoken) {
+            return add(KIND_FILLER, 0, 0f, spoken);
+        }
+
+        private Builder add(int kind, int value, float score, String... spoken) {
+            for (String word : spoken) {
+                for (int i = 0; i < word.length(); i++) {
+                    char c = word.charAt(i);
+                    if ((c < 'a' || c > 'z') && c != '\'') {
+                        throw new IllegalArgumentException("Lexicon words are lowercase a-z: " + word);
+                    }
+                }
+                words.add(word);
+                entries.add(new int[] {kind, value});
+                wordScores.add(score);
+            }
+            return this;
+        }
+
+        public DigitParser build() {
+            int maxNodes = 1;
+            for (String word : words) maxNodes += word.length();
+
+            int[] children = new int[maxNodes * ALPHABET];
+            byte[] kinds = new byte[maxNodes];
+            byte[] values = new byte[maxNodes];
+            float[] scores = new float[maxNodes];
+            int nodeCount = 1;
+
+            for (int w = 0; w < words.size(); w++) {
+                String word = words.get(w);
+                int node = 0;
+                for (int i = 0; i < word.length(); i++) {
+                    char c = word.charAt(i);
+                    int slot = node * ALPHABET + (c == '\'' ? 26 : c - 'a');
+                    if (children[slot] == 0) children[slot] = nodeCount++;
+                    node = children[slot];
+                }
+                // A word listed twice keeps its best-scoring meaning
+                if (kinds[node] == KIND_NONE || wordScores.get(w) > scores[node]) {
+                    kinds[node] = (byte) entries.get(w)[0];
+                    values[node] = (byte) entries.get(w)[1];
+                    scores[node] = wordScores.get(w);
+                }
+            }
+
+            int[] trimmedChildren = new int[nodeCount * ALPHABET];
+            System.arraycopy(children, 0, trimmedChildren, 0, trimmedChildren.length);
+            byte[] trimmedKinds = new byte[nodeCount];
+            System.arraycopy(kinds, 0, trimmedKinds, 0, nodeCount);
+            byte[] trimmedValues = new byte[nodeCount];
+            System.arraycopy(values, 0, trimmedValues, 0, nodeCount);
+            float[] trimmedScores = new float[nodeCount];
+            System.arraycopy(scores, 0, trimmedScores, 0, nodeCount);
+            return new DigitParser(trimmedChildren, trimmedKinds, trimmedValues, trimmedScores);
+        }
+    }
+}
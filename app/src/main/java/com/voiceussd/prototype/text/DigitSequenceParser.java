@@ -0,0 +1,332 @@
+package com.voiceussd.prototype.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Turns one recognition hypothesis for a spoken number ("zero seven eight, double eight ...",
+// "zeru karindwi umunani", "078 812", "five thousand five hundred") into the digits it names,
+// scored by how much of the text was understood. Word lists come from NumberLexicon and are
+// compiled into a trie like DigitParser's, so the text is tokenized as it is scanned instead
+// of lowercased and split. Not thread-safe: keep one per thread.
+public final class DigitSequenceParser {
+
+    public static final class Result {
+        private final String digits;
+        private final int understood;
+        private final int unknown;
+
+        Result(String digits, int understood, int unknown) {
+            this.digits = digits;
+            this.understood = understood;
+            this.unknown = unknown;
+        }
+
+        public String getDigits() {
+            return digits;
+        }
+
+        public boolean isEmpty() {
+            return digits.isEmpty();
+        }
+
+        // Share of the spoken words that were numbers; fillers count for neither side
+        public float getConfidence() {
+            if (digits.isEmpty()) return 0f;
+            return understood / (float) (understood + unknown);
+        }
+
+        @Override
+        public String toString() {
+            return digits + " (" + understood + "/" + (understood + unknown) + ")";
+        }
+    }
+
+    private static final int ALPHABET = 27; // a-z and apostrophe
+    private static final byte KIND_UNKNOWN = 0;
+    private static final byte KIND_DIGIT = 1;
+    private static final byte KIND_TEEN = 2;  // Also tens: adds to the running quantity
+    private static final byte KIND_HUNDRED = 3;
+    private static final byte KIND_SCALE = 4;
+    private static final byte KIND_REPEAT = 5;
+    private static final byte KIND_FILLER = 6;
+    private static final byte KIND_NUMERIC = 7; // A run of digits in the text itself
+
+    private final int[] children; // node * ALPHABET + letter -> child, 0 for none
+    private final byte[] kinds;
+    private final int[] values;
+
+    // Scratch token list, reused across calls: kind, then value or [start, end) for numerals
+    private byte[] tokenKinds = new byte[16];
+    private int[] tokenValues = new int[16];
+    private int[] tokenEnds = new int[16];
+    private int tokenCount;
+
+    private DigitSequenceParser(int[] children, byte[] kinds, int[] values) {
+        this.children = children;
+        this.kinds = kinds;
+        this.values = values;
+    }
+
+    // Amounts are read as one quantity ("five thousand five hundred" -> 5500). Anything else
+    // (phone numbers, PINs) is read group by group, so "zero seven eighty eight" is 0788.
+    public Result parse(CharSequence text, boolean amount) {
+        scan(text);
+
+        if (amount) {
+            for (int t = 0; t < tokenCount; t++) {
+                byte kind = tokenKinds[t];
+                if (kind == KIND_TEEN || kind == KIND_HUNDRED || kind == KIND_SCALE) return parseCardinal(text);
+            }
+        }
+        return parseGroups(text);
+    }
+
+    // Each digit, numeral or spoken group is appended as it stands. A group is a tens word and
+    // the digit that follows it ("twenty three"), or a hundred and what fills its tens and
+    // units ("one hundred twenty three"); a scale word closes its group ("five thousand").
+    private Result parseGroups(CharSequence text) {
+        StringBuilder digits = new StringBuilder();
+        int understood = 0;
+        int unknown = 0;
+        int repeat = 1;
+        long group = -1; // -1 when no group is open
+        long room = 0;   // Largest value the open group can still take, exclusive
+
+        for (int t = 0; t < tokenCount; t++) {
+            int value = tokenValues[t];
+            switch (tokenKinds[t]) {
+                case KIND_NUMERIC:
+                    if (group >= 0) digits.append(group);
+                    group = -1;
+                    for (int r = 1; r < repeat; r++) digits.append(text.charAt(value));
+                    digits.append(text, value, tokenEnds[t]);
+                    repeat = 1;
+                    break;
+                case KIND_DIGIT:
+                    if (repeat == 1 && group >= 0 && value < room) {
+                        group += value;
+                        room = 0;
+                        break;
+                    }
+                    if (group >= 0) digits.append(group);
+                    // "double eight": all but the last copy are written out now
+                    for (int r = 1; r < repeat; r++) digits.append((char) ('0' + value));
+                    group = value;
+                    room = 0;
+                    repeat = 1;
+                    break;
+                case KIND_TEEN:
+                    if (group >= 0 && value < room) {
+                        group += value;
+                    } else {
+                        if (group >= 0) digits.append(group);
+                        group = value;
+                    }
+                    // Only a round tens word leaves the units open
+                    room = value >= 20 && value % 10 == 0 ? 10 : 0;
+                    break;
+                case KIND_HUNDRED:
+                    group = Math.max(group, 1) * 100;
+                    room = 100;
+                    break;
+                case KIND_SCALE:
+                    group = Math.max(group, 1) * value;
+                    room = 0;
+                    break;
+                case KIND_REPEAT:
+                    repeat = value;
+                    break;
+                case KIND_FILLER:
+                    continue;
+                default:
+                    unknown++;
+                    continue;
+            }
+            understood++;
+        }
+        if (group >= 0) digits.append(group);
+        return new Result(digits.toString(), understood, unknown);
+    }
+
+    private Result parseCardinal(CharSequence text) {
+        long total = 0;
+        long current = 0;
+        int understood = 0;
+        int unknown = 0;
+
+        for (int t = 0; t < tokenCount; t++) {
+            int value = tokenValues[t];
+            switch (tokenKinds[t]) {
+                case KIND_NUMERIC:
+                    if (tokenEnds[t] - value > 12) {
+                        unknown++;
+                        continue;
+                    }
+                    long number = 0;
+                    for (int i = value; i < tokenEnds[t]; i++) number = number * 10 + (text.charAt(i) - '0');
+                    current += number;
+                    break;
+                case KIND_DIGIT:
+                case KIND_TEEN:
+                    current += value;
+                    break;
+                case KIND_HUNDRED:
+                    current = Math.max(current, 1) * 100;
+                    break;
+                case KIND_SCALE:
+                    total += Math.max(current, 1) * value;
+                    current = 0;
+                    break;
+                case KIND_FILLER:
+                    continue;
+                default:
+                    unknown++;
+                    continue;
+            }
+            understood++;
+        }
+        return new Result(understood == 0 ? "" : String.valueOf(total + current), understood, unknown);
+    }
+
+    // Splits on anything but letters, digits and apostrophes. Letters walk the trie; a token
+    // mixing letters and digits, or with letters outside a-z, is unknown.
+    private void scan(CharSequence text) {
+        tokenCount = 0;
+        int start = -1;
+        int node = 0;
+        boolean known = true;
+        boolean numeric = true;
+
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+
+            boolean digit = c >= '0' && c <= '9';
+            int letter = c >= 'a' && c <= 'z' ? c - 'a' : c == '\'' ? 26 : Character.isLetter(c) ? ALPHABET : -1;
+
+            if (letter < 0 && !digit) {
+                if (start >= 0) {
+                    if (numeric) {
+                        addToken(KIND_NUMERIC, start, i);
+                    } else if (known) {
+                        addToken(kinds[node], values[node], i);
+                    } else {
+                        addToken(KIND_UNKNOWN, 0, i);
+                    }
+                }
+                start = -1;
+                node = 0;
+                known = true;
+                numeric = true;
+                continue;
+            }
+
+            if (start < 0) start = i;
+            if (digit) {
+                known = false;
+            } else {
+                numeric = false;
+                if (known) {
+                    int next = letter < ALPHABET ? children[node * ALPHABET + letter] : 0;
+                    if (next == 0) {
+                        known = false;
+                    } else {
+                        node = next;
+                    }
+                }
+            }
+        }
+    }
+
+    private void addToken(byte kind, int value, int end) {
+        if (tokenCount == tokenKinds.length) {
+            int size = tokenCount * 2;
+            byte[] grownKinds = new byte[size];
+            System.arraycopy(tokenKinds, 0, grownKinds, 0, tokenCount);
+            tokenKinds = grownKinds;
+            int[] grownValues = new int[size];
+            System.arraycopy(tokenValues, 0, grownValues, 0, tokenCount);
+            tokenValues = grownValues;
+            int[] grownEnds = new int[size];
+            System.arraycopy(tokenEnds, 0, grownEnds, 0, tokenCount);
+            tokenEnds = grownEnds;
+        }
+        tokenKinds[tokenCount] = kind;
+        tokenValues[tokenCount] = value;
+        tokenEnds[tokenCount] = end;
+        tokenCount++;
+    }
+
+    public static final class Builder {
+        private final List<String> words = new ArrayList<>();
+        private final List<int[]> entries = new ArrayList<>(); // kind, value
+
+        public Builder digit(int value, String... spoken) {
+            if (value < 0 || value > 9) throw new IllegalArgumentException("Not a digit: " + value);
+            return add(KIND_DIGIT, value, spoken);
+        }
+
+        // Teens and tens add to the quantity; a hundred multiplies it; larger values are scales
+        public Builder quantity(int value, String... spoken) {
+            byte kind = value < 100 ? KIND_TEEN : value == 100 ? KIND_HUNDRED : KIND_SCALE;
+            return add(kind, value, spoken);
+        }
+
+        public Builder repeat(int times, String... spoken) {
+            return add(KIND_REPEAT, times, spoken);
+        }
+
+        public Builder filler(String... spoken) {
+            return add(KIND_FILLER, 0, spoken);
+        }
+
+        private Builder add(byte kind, int value, String... spoken) {
+            for (String word : spoken) {
+                for (int i = 0; i < word.length(); i++) {
+                    char c = word.charAt(i);
+                    if ((c < 'a' || c > 'z') && c != '\'') {
+                        throw new IllegalArgumentException("Lexicon words are lowercase a-z: " + word);
+                    }
+                }
+                words.add(word);
+                entries.add(new int[] {kind, value});
+            }
+            return this;
+        }
+
+        public DigitSequenceParser build() {
+            int maxNodes = 1;
+            for (String word : words) maxNodes += word.length();
+
+            int[] children = new int[maxNodes * ALPHABET];
+            byte[] kinds = new byte[maxNodes];
+            int[] values = new int[maxNodes];
+            int nodeCount = 1;
+
+            for (int w = 0; w < words.size(); w++) {
+                String word = words.get(w);
+                int node = 0;
+                for (int i = 0; i < word.length(); i++) {
+                    char c = word.charAt(i);
+                    int slot = node * ALPHABET + (c == '\'' ? 26 : c - 'a');
+                    if (children[slot] == 0) children[slot] = nodeCount++;
+                    node = children[slot];
+                }
+                // A word listed twice keeps its first meaning, except that a number beats a filler
+                if (kinds[node] == KIND_UNKNOWN || (kinds[node] == KIND_FILLER && entries.get(w)[0] != KIND_FILLER)) {
+                    kinds[node] = (byte) entries.get(w)[0];
+                    values[node] = entries.get(w)[1];
+                }
+            }
+
+            int[] trimmedChildren = new int[nodeCount * ALPHABET];
+            System.arraycopy(children, 0, trimmedChildren, 0, trimmedChildren.length);
+            byte[] trimmedKinds = new byte[nodeCount];
+            System.arraycopy(kinds, 0, trimmedKinds, 0, nodeCount);
+            int[] trimmedValues = new int[nodeCount];
+            System.arraycopy(values, 0, trimmedValues, 0, nodeCount);
+            return new DigitSequenceParser(trimmedChildren, trimmedKinds, trimmedValues);
+        }
+    }
+}
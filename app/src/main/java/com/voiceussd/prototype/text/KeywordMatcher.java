@@ -0,0 +1,199 @@
+package com.voiceussd.prototype.text;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Aho-Corasick automaton over a fixed keyword set. Every keyword carries a category bit,
+// and one pass over the text returns the OR of the categories of all keywords found in it.
+// Matching is case-insensitive and works on the CharSequence as-is, without copying it.
+public final class KeywordMatcher {
+
+    // Characters that occur in no keyword share alphabet slot 0, which always leads to the root
+    private final int[] asciiSlots;
+    private final char[] otherChars;
+    private final int[] otherSlots;
+
+    // States are stored pre-multiplied by alphabetSize so the hot loop is one add and one load
+    private final int[] transitions; // state base + slot -> next state base
+    private final int[] outputs;     // state base -> category mask
+    private final int stateCount;
+
+    private KeywordMatcher(int[] asciiSlots, char[] otherChars, int[] otherSlots,
+                           int[] transitions, int[] outputs, int stateCount) {
+        this.asciiSlots = asciiSlots;
+        this.otherChars = otherChars;
+        this.otherSlots = otherSlots;
+        this.transitions = transitions;
+        this.outputs = outputs;
+        this.stateCount = stateCount;
+    }
+
+    public int match(CharSequence text) {
+        if (text == null) return 0;
+
+        int state = 0;
+        int mask = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            int slot;
+            if (c < 128) {
+                // ASCII fast path; upper case letters share the lower case slot
+                slot = asciiSlots[c >= 'A' && c <= 'Z' ? c + 32 : c];
+            } else {
+                slot = slotOf(Character.toLowerCase(c));
+            }
+            state = transitions[state + slot];
+            mask |= outputs[state];
+        }
+        return mask;
+    }
+
+    public boolean matchesAny(CharSequence text, int categoryMask) {
+        return (match(text) & categoryMask) != 0;
+    }
+
+    public int stateCount() {
+        return stateCount;
+    }
+
+    private int slotOf(char c) {
+        if (c < 128) return asciiSlots[c];
+        int index = Arrays.binarySearch(otherChars, c);
+        return index >= 0 ? otherSlots[index] : 0;
+    }
+
+    public static final class Builder {
+        private final List<String> keywords = new ArrayList<>();
+        private final List<Integer> categories = new ArrayList<>();
+
+        // Category is a bit index (0-31); it is reported as 1 << category
+        public Builder add(int category, String... words) {
+            if (category < 0 || category > 31) {
+                throw new IllegalArgumentException("Category out of range: " + category);
+            }
+            for (String word : words) {
+                if (word == null || word.isEmpty()) {
+                    throw new IllegalArgumentException("Empty keyword for category " + category);
+                }
+                keywords.add(lowerCase(word));
+                categories.add(category);
+            }
+            return this;
+        }
+
+        public KeywordMatcher build() {
+            // Alphabet: every distinct (lower-cased) character used by a keyword
+            int[] asciiSlots = new int[128];
+            List<Character> other = new ArrayList<>();
+            int alphabetSize = 1;
+            for (String keyword : keywords) {
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = keyword.charAt(i);
+                    if (c < 128) {
+                        if (asciiSlots[c] == 0) asciiSlots[c] = alphabetSize++;
+                    } else if (!other.contains(c)) {
+                        other.add(c);
+                    }
+                }
+            }
+            other.sort(null);
+            char[] otherChars = new char[other.size()];
+            int[] otherSlots = new int[other.size()];
+            for (int i = 0; i < otherChars.length; i++) {
+                otherChars[i] = other.get(i);
+                otherSlots[i] = alphabetSize++;
+            }
+
+            // Trie
+            List<int[]> gotoTable = new ArrayList<>();
+            List<Integer> outputs = new ArrayList<>();
+            gotoTable.add(newRow(alphabetSize));
+            outputs.add(0);
+
+            for (int k = 0; k < keywords.size(); k++) {
+                String keyword = keywords.get(k);
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    int slot = slot(keyword.charAt(i), asciiSlots, otherChars, otherSlots);
+                    int next = gotoTable.get(state)[slot];
+                    if (next < 0) {
+                        next = gotoTable.size();
+                        gotoTable.add(newRow(alphabetSize));
+                        outputs.add(0);
+                        gotoTable.get(state)[slot] = next;
+                    }
+                    state = next;
+                }
+                outputs.set(state, outputs.get(state) | (1 << categories.get(k)));
+            }
+
+            // Failure links, folded straight into a full DFA transition table
+            int stateCount = gotoTable.size();
+            int[] transitions = new int[stateCount * alphabetSize];
+            int[] outputMasks = new int[stateCount];
+            int[] failure = new int[stateCount];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+            int[] rootRow = gotoTable.get(0);
+            for (int slot = 0; slot < alphabetSize; slot++) {
+                int next = rootRow[slot];
+                if (next < 0) {
+                    transitions[slot] = 0;
+                } else {
+                    transitions[slot] = next;
+                    failure[next] = 0;
+                    queue.add(next);
+                }
+            }
+            outputMasks[0] = outputs.get(0);
+
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                outputMasks[state] = outputs.get(state) | outputMasks[failure[state]];
+                int[] row = gotoTable.get(state);
+                for (int slot = 0; slot < alphabetSize; slot++) {
+                    int next = row[slot];
+                    if (next < 0) {
+                        transitions[state * alphabetSize + slot] = transitions[failure[state] * alphabetSize + slot];
+                    } else {
+                        transitions[state * alphabetSize + slot] = next;
+                        failure[next] = transitions[failure[state] * alphabetSize + slot];
+                        queue.add(next);
+                    }
+                }
+            }
+
+            // Pre-multiply state numbers into row offsets for match()
+            int[] outputsByBase = new int[transitions.length];
+            for (int state = 0; state < stateCount; state++) {
+                outputsByBase[state * alphabetSize] = outputMasks[state];
+            }
+            for (int i = 0; i < transitions.length; i++) {
+                transitions[i] *= alphabetSize;
+            }
+
+            return new KeywordMatcher(asciiSlots, otherChars, otherSlots, transitions, outputsByBase, stateCount);
+        }
+
+        private static int[] newRow(int size) {
+            int[] row = new int[size];
+            Arrays.fill(row, -1);
+            return row;
+        }
+
+        private static int slot(char c, int[] asciiSlots, char[] otherChars, int[] otherSlots) {
+            if (c < 128) return asciiSlots[c];
+            return otherSlots[Arrays.binarySearch(otherChars, c)];
+        }
+
+        private static String lowerCase(String word) {
+            StringBuilder lower = new StringBuilder(word.length());
+            for (int i = 0; i < word.length(); i++) {
+                lower.append(Character.toLowerCase(word.charAt(i)));
+            }
+            return lower.toString();
+        }
+    }
+}
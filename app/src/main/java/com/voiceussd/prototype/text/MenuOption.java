@@ -0,0 +1,25 @@
+package com.voiceussd.prototype.text;
+
+public final class MenuOption {
+    private final int number;
+    private final String label;
+
+    public MenuOption(int number, String label) {
+        this.number = number;
+        this.label = label;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // Spoken form, e.g. "1: Send Money"
+    @Override
+    public String toString() {
+        return number + ": " + label;
+    }
+}
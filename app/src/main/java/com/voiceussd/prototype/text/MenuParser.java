@@ -0,0 +1,36 @@
+package com.voiceussd.prototype.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Pulls the numbered options ("1) Send Money") out of a USSD menu screen
+public final class MenuParser {
+
+    private static final Pattern OPTION = Pattern.compile("(\\d+)\\)\\s*(.+?)(?=\\n\\d+\\)|\\nn\\s|$)", Pattern.DOTALL);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private MenuParser() {
+    }
+
+    public static List<MenuOption> parseMenuOptions(String ussdText) {
+        List<MenuOption> options = new ArrayList<>();
+
+        Matcher matcher = OPTION.matcher(ussdText);
+        while (matcher.find()) {
+            int number;
+            try {
+                number = Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException e) {
+                continue; // More digits than an int holds; not a menu option
+            }
+            String text = Objects.requireNonNull(matcher.group(2)).trim();
+            text = WHITESPACE.matcher(text).replaceAll(" ").trim();
+            options.add(new MenuOption(number, text));
+        }
+
+        return options;
+    }
+}
@@ -0,0 +1,189 @@
+package com.voiceussd.prototype.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Number words and spoken commands for one recognizer language. Any set of lexicons is
+// compiled into a single DigitParser trie (single answers) and a single DigitSequenceParser
+// trie (phone numbers and amounts), so lookups cost the length of the word whatever the
+// number of languages.
+public final class NumberLexicon {
+    public static final String ENGLISH_TAG = "en-US";
+    public static final String KINYARWANDA_TAG = "rw-RW";
+
+    private static final int DIGIT = 0;
+    private static final int DONE = 1;
+    private static final int YES = 2;
+    private static final int NO = 3;
+    private static final int FILLER = 4;
+    private static final int QUANTITY = 5; // Only read by the sequence parser
+    private static final int REPEAT = 6;   // Likewise
+
+    private static final class Entry {
+        final int kind;
+        final int value;
+        final float score;
+        final String[] words;
+
+        Entry(int kind, int value, float score, String[] words) {
+            this.kind = kind;
+            this.value = value;
+            this.score = score;
+            this.words = words;
+        }
+    }
+
+    private final String languageTag;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public NumberLexicon(String languageTag) {
+        this.languageTag = languageTag;
+    }
+
+    public String getLanguageTag() {
+        return languageTag;
+    }
+
+    public NumberLexicon digit(int value, float score, String... words) {
+        entries.add(new Entry(DIGIT, value, score, words));
+        return this;
+    }
+
+    public NumberLexicon done(float score, String... words) {
+        entries.add(new Entry(DONE, 0, score, words));
+        return this;
+    }
+
+    public NumberLexicon yes(float score, String... words) {
+        entries.add(new Entry(YES, 0, score, words));
+        return this;
+    }
+
+    public NumberLexicon no(float score, String... words) {
+        entries.add(new Entry(NO, 0, score, words));
+        return this;
+    }
+
+    public NumberLexicon filler(String... words) {
+        entries.add(new Entry(FILLER, 0, 0f, words));
+        return this;
+    }
+
+    // Teens, tens, hundred and scale words, for amounts said as a quantity
+    public NumberLexicon quantity(int value, String... words) {
+        entries.add(new Entry(QUANTITY, value, 0f, words));
+        return this;
+    }
+
+    // "double eight": the next digit is said this many times
+    public NumberLexicon repeat(int times, String... words) {
+        entries.add(new Entry(REPEAT, times, 0f, words));
+        return this;
+    }
+
+    public static NumberLexicon english() {
+        return new NumberLexicon(ENGLISH_TAG)
+                .digit(0, 1f, "zero").digit(0, 0.8f, "oh", "o")
+                .digit(1, 1f, "one").digit(1, 0.6f, "won")
+                .digit(2, 1f, "two").digit(2, 0.6f, "too", "to")
+                .digit(3, 1f, "three").digit(3, 0.7f, "tree")
+                .digit(4, 1f, "four").digit(4, 0.6f, "for", "fore")
+                .digit(5, 1f, "five")
+                .digit(6, 1f, "six").digit(6, 0.6f, "sicks")
+                .digit(7, 1f, "seven")
+                .digit(8, 1f, "eight").digit(8, 0.6f, "ate")
+                .digit(9, 1f, "nine").digit(9, 0.6f, "nein")
+                .done(1f, "done", "finished", "finish", "complete", "completed", "submit")
+                .done(0.9f, "send").done(0.8f, "end")
+                .yes(1f, "yes").yes(0.8f, "yeah", "yep")
+                .no(1f, "no").no(0.8f, "nope")
+                .filler("number", "option", "press", "please", "select", "choose", "the", "is", "it's",
+                        "its", "uh", "um", "and", "a", "i", "want", "say", "digit", "ok", "okay",
+                        "my", "dash", "space")
+                .quantity(10, "ten").quantity(11, "eleven").quantity(12, "twelve").quantity(13, "thirteen")
+                .quantity(14, "fourteen").quantity(15, "fifteen").quantity(16, "sixteen")
+                .quantity(17, "seventeen").quantity(18, "eighteen").quantity(19, "nineteen")
+                .quantity(20, "twenty").quantity(30, "thirty").quantity(40, "forty").quantity(50, "fifty")
+                .quantity(60, "sixty").quantity(70, "seventy").quantity(80, "eighty").quantity(90, "ninety")
+                .quantity(100, "hundred").quantity(1000, "thousand").quantity(1000000, "million")
+                .repeat(2, "double").repeat(3, "triple");
+    }
+
+    // Cardinal digits as read out one by one. "l" and "r" are interchangeable in speech and
+    // in how recognizers spell it, so both spellings are listed.
+    public static NumberLexicon kinyarwanda() {
+        return new NumberLexicon(KINYARWANDA_TAG)
+                .digit(0, 1f, "zeru").digit(0, 0.9f, "zero")
+                .digit(1, 1f, "rimwe").digit(1, 0.8f, "limwe")
+                .digit(2, 1f, "kabiri").digit(2, 0.8f, "kabili")
+                .digit(3, 1f, "gatatu")
+                .digit(4, 1f, "kane")
+                .digit(5, 1f, "gatanu")
+                .digit(6, 1f, "gatandatu")
+                .digit(7, 1f, "karindwi").digit(7, 0.8f, "kalindwi")
+                .digit(8, 1f, "umunani")
+                .digit(9, 1f, "icyenda")
+                .done(1f, "ndangije", "birangiye").done(0.9f, "ohereza")
+                .yes(1f, "yego")
+                .no(1f, "oya")
+                .filler("nimero", "umubare", "ni", "kanda", "hitamo");
+    }
+
+    // One parser for all the given languages. A word that appears in more than one lexicon
+    // keeps its highest-scoring meaning.
+    public static DigitParser compile(NumberLexicon... lexicons) {
+        DigitParser.Builder builder = new DigitParser.Builder();
+        for (NumberLexicon lexicon : lexicons) {
+            for (Entry entry : lexicon.entries) {
+                switch (entry.kind) {
+                    case DIGIT:
+                        builder.digit(entry.value, entry.score, entry.words);
+                        break;
+                    case DONE:
+                        builder.done(entry.score, entry.words);
+                        break;
+                    case YES:
+                        builder.yes(entry.score, entry.words);
+                        break;
+                    case NO:
+                        builder.no(entry.score, entry.words);
+                        break;
+                    case FILLER:
+                        builder.filler(entry.words);
+                        break;
+                    default:
+                        // Quantity words stay unknown to single answers, as "ten" is no digit
+                        break;
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    // The continuous-digit parser for the same languages. Commands are not part of a number
+    // and count as unknown words.
+    public static DigitSequenceParser compileSequences(NumberLexicon... lexicons) {
+        DigitSequenceParser.Builder builder = new DigitSequenceParser.Builder();
+        for (NumberLexicon lexicon : lexicons) {
+            for (Entry entry : lexicon.entries) {
+                switch (entry.kind) {
+                    case DIGIT:
+                        builder.digit(entry.value, entry.words);
+                        break;
+                    case QUANTITY:
+                        builder.quantity(entry.value, entry.words);
+                        break;
+                    case REPEAT:
+                        builder.repeat(entry.value, entry.words);
+                        break;
+                    case FILLER:
+                        builder.filler(entry.words);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return builder.build();
+    }
+}
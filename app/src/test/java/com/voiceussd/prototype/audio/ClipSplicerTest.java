@@ -0,0 +1,81 @@
+package com.voiceussd.prototype.audio;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ClipSplicerTest {
+    private static final int RATE = 1000; // One frame per millisecond keeps the arithmetic readable
+
+    // `silent` quiet frames either side of `loud` frames at full scale
+    private static PcmAudio clip(int silent, int loud) {
+        byte[] data = new byte[(2 * silent + loud) * 2];
+        for (int i = silent; i < silent + loud; i++) {
+            data[2 * i] = (byte) 0xff;
+            data[2 * i + 1] = 0x3f;
+        }
+        return new PcmAudio(RATE, 1, data);
+    }
+
+    private static ClipSplicer fullSplicer() {
+        ClipSplicer splicer = new ClipSplicer();
+        for (String id : ClipSplicer.phrases().keySet()) {
+            assertTrue(splicer.put(id, clip(200, 100)));
+        }
+        return splicer;
+    }
+
+    @Test
+    public void coversDigitsAndFixedPhrases() {
+        Map<String, String> phrases = ClipSplicer.phrases();
+
+        assertEquals(14, phrases.size());
+        assertEquals("7", phrases.get("7"));
+        assertEquals(SpeechText.NEXT_DIGIT_PROMPT, phrases.get(SpeechText.NEXT_DIGIT_PROMPT));
+    }
+
+    @Test
+    public void trimsEngineSilenceAroundWords() {
+        PcmAudio trimmed = clip(200, 100).trimSilence(400, 15);
+
+        assertEquals(130, trimmed.getFrameCount());
+        assertEquals(0, new PcmAudio(RATE, 1, new byte[100]).trimSilence(400, 15).getFrameCount());
+    }
+
+    @Test
+    public void joinsWordClipsWithGaps() {
+        PcmAudio spliced = fullSplicer().digitConfirmation(8, "078");
+
+        // got, 8, current input, 0, 7, 8, prompt: 7 words of 130 frames
+        // gaps: 60 after got, 220 after the digit, 60 after "current input", 60 + 60 + 220 inside the input
+        assertEquals(7 * 130 + 60 + 220 + 60 + 60 + 60 + 220, spliced.getFrameCount());
+        assertEquals(RATE, spliced.getSampleRate());
+    }
+
+    @Test
+    public void saysEmptyForNoInput() {
+        PcmAudio spliced = fullSplicer().digitConfirmation(0, "");
+
+        assertEquals(5 * 130 + 60 + 220 + 60 + 220, spliced.getFrameCount());
+    }
+
+    @Test
+    public void fallsBackWhileClipsAreMissing() {
+        ClipSplicer splicer = new ClipSplicer();
+        splicer.put(SpeechText.GOT, clip(0, 10));
+
+        assertNull(splicer.digitConfirmation(1, "1"));
+        assertNull(fullSplicer().digitConfirmation(1, "1*"));
+        assertNull(fullSplicer().digitConfirmation(10, "1"));
+    }
+
+    @Test
+    public void rejectsClipsFromADifferentVoiceFormat() {
+        ClipSplicer splicer = fullSplicer();
+
+        assertFalse(splicer.put("1", new PcmAudio(22050, 1, new byte[10])));
+        assertNotNull(splicer.digitConfirmation(1, "1"));
+    }
+}
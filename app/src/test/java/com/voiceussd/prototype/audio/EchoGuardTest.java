@@ -0,0 +1,105 @@
+package com.voiceussd.prototype.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EchoGuardTest {
+    private static final String MENU = "Say the number representing the service you want.1: Send Money. 2: Buy Airtime. 3: Pay Bill. ";
+
+    @Test
+    public void rejectsWordsWeJustSaid() {
+        EchoGuard guard = new EchoGuard();
+        guard.speaking(MENU, 0, 6000);
+
+        // "1: Send Money" sits just past half way through the text
+        assertTrue(guard.isEcho("send money", 4500));
+        assertTrue(guard.isEcho("one send money", 4500));
+    }
+
+    @Test
+    public void acceptsAnOptionNumberSaidRightAfterItsLine() {
+        EchoGuard guard = new EchoGuard();
+        guard.speaking(MENU, 0, 6000);
+
+        // Barging in with the number just read out is an answer, not our own speech
+        assertFalse(guard.isEcho("one", 4500));
+        assertFalse(guard.isEcho("1", 4500));
+        assertFalse(guard.isEcho("money", 4500));
+    }
+
+    @Test
+    public void rejectsALoneNumberHeardAsWeSaidIt() {
+        EchoGuard guard = new EchoGuard();
+        guard.speaking(MENU, 0, 6000);
+        long two = 6000L * MENU.indexOf("2:") / MENU.length();
+
+        // A barge-in session whose speech began with our own "2"
+        assertTrue(guard.isEcho("two", two + 100, two + 900));
+        assertTrue(guard.isEcho("2", two - 200, two + 900));
+        // The user answering once the menu has moved on
+        assertFalse(guard.isEcho("two", two + 1500, two + 2300));
+        // Unknown start of speech: only runs count
+        assertFalse(guard.isEcho("two", -1, two + 900));
+    }
+
+    @Test
+    public void acceptsAnswerTheMenuHasNotReachedOrHasLeftBehind() {
+        EchoGuard guard = new EchoGuard();
+        guard.speaking(MENU, 0, 6000);
+
+        assertFalse(guard.isEcho("three", 3500)); // Not said yet
+        assertFalse(guard.isEcho("one", 9000));   // Long out of the echo window
+        assertFalse(guard.isEcho("number two please", 4500));
+    }
+
+    @Test
+    public void treatsNumberWordsAndDigitsAlike() {
+        assertEquals("7", EchoGuard.normalize("Seven"));
+        assertEquals("7", EchoGuard.normalize("7"));
+        assertEquals("money", EchoGuard.normalize("Money"));
+    }
+
+    @Test
+    public void rangeCallbacksReanchorTheTimeline() {
+        EchoGuard guard = new EchoGuard();
+        guard.speaking(MENU, 0, 6000);
+
+        // Engine is slower than estimated: it only reaches option 3 at 9 s
+        guard.onRange(MENU.indexOf("3:"), 9000);
+
+        assertTrue(guard.isEcho("pay bill", 9500));
+        assertFalse(guard.isEcho("pay bill", 8000));
+    }
+
+    @Test
+    public void interruptedSpeechForgetsTheUnsaidTail() {
+        EchoGuard guard = new EchoGuard();
+        guard.speaking(MENU, 0, 6000);
+
+        guard.stopped(1000);
+
+        assertFalse(guard.isEcho("pay bill", 6500));
+        assertTrue(guard.size() < 10);
+    }
+
+    @Test
+    public void dropsWordsOutsideTheWindowOnNextUtterance() {
+        EchoGuard guard = new EchoGuard();
+        guard.speaking(MENU, 0, 6000);
+
+        guard.speaking("Got 7.", 60_000, 500);
+
+        assertEquals(2, guard.size());
+        assertTrue(guard.isEcho("got seven", 60_400));
+    }
+
+    @Test
+    public void ignoresEmptyInput() {
+        EchoGuard guard = new EchoGuard();
+        guard.speaking(MENU, 0, 0);
+
+        assertFalse(guard.isEcho("", 100));
+        assertFalse(guard.isEcho("...", 100));
+    }
+}
@@ -0,0 +1,73 @@
+package com.voiceussd.prototype.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class PcmAudioTest {
+    private static byte[] wav(int sampleRate, int channels, int bits, int dataSize, byte[] samples, boolean extraChunk) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes()).putInt(0).put("WAVE".getBytes());
+        header.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) channels)
+                .putInt(sampleRate).putInt(sampleRate * channels * 2).putShort((short) (channels * 2)).putShort((short) bits);
+        out.write(header.array(), 0, header.position());
+        if (extraChunk) {
+            out.write("LIST".getBytes(), 0, 4);
+            out.write(new byte[] {3, 0, 0, 0, 'a', 'b', 'c', 0}, 0, 8); // Odd size is padded
+        }
+        ByteBuffer data = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        data.put("data".getBytes()).putInt(dataSize);
+        out.write(data.array(), 0, 8);
+        out.write(samples, 0, samples.length);
+        return out.toByteArray();
+    }
+
+    private static PcmAudio read(byte[] file) throws IOException {
+        return PcmAudio.readWav(new ByteArrayInputStream(file), file.length);
+    }
+
+    @Test
+    public void readsMonoPcm() throws IOException {
+        byte[] samples = new byte[24000 * 2];
+        samples[0] = 7;
+
+        PcmAudio audio = read(wav(24000, 1, 16, samples.length, samples, false));
+
+        assertEquals(24000, audio.getSampleRate());
+        assertEquals(1, audio.getChannels());
+        assertEquals(24000, audio.getFrameCount());
+        assertEquals(1000, audio.getDurationMs());
+        assertEquals(7, audio.getData()[0]);
+    }
+
+    @Test
+    public void skipsUnknownChunks() throws IOException {
+        PcmAudio audio = read(wav(16000, 2, 16, 8, new byte[8], true));
+
+        assertEquals(2, audio.getChannels());
+        assertEquals(2, audio.getFrameCount());
+    }
+
+    @Test
+    public void takesRestOfFileWhenDataSizeWasNeverPatched() throws IOException {
+        assertEquals(50, read(wav(22050, 1, 16, 0, new byte[100], false)).getFrameCount());
+        assertEquals(50, read(wav(22050, 1, 16, -1, new byte[100], false)).getFrameCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonPcm16() throws IOException {
+        read(wav(22050, 1, 8, 100, new byte[100], false));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonWav() throws IOException {
+        read("not a wave file at all".getBytes());
+    }
+}
@@ -0,0 +1,92 @@
+package com.voiceussd.prototype.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecognizerBackendsTest {
+
+    private static final String EN = "en-US";
+    private static final String RW = "rw-RW";
+
+    private static void succeed(RecognizerBackends backends, RecognizerBackends.Backend backend, int times, long latencyMs) {
+        for (int i = 0; i < times; i++) {
+            backends.recordSuccess(backend, latencyMs);
+        }
+    }
+
+    @Test
+    public void triesOnDeviceFirstWhenAvailable() {
+        assertEquals(RecognizerBackends.Backend.ON_DEVICE, new RecognizerBackends(true).choose(EN));
+        assertEquals(RecognizerBackends.Backend.OFFLINE_PREFERRED, new RecognizerBackends(false).choose(EN));
+    }
+
+    @Test
+    public void exploresEachBackendBeforeComparing() {
+        RecognizerBackends backends = new RecognizerBackends(true);
+        succeed(backends, RecognizerBackends.Backend.ON_DEVICE, RecognizerBackends.MIN_SAMPLES, 900);
+        assertEquals(RecognizerBackends.Backend.OFFLINE_PREFERRED, backends.choose(EN));
+
+        succeed(backends, RecognizerBackends.Backend.OFFLINE_PREFERRED, RecognizerBackends.MIN_SAMPLES, 400);
+        assertEquals(RecognizerBackends.Backend.NETWORK, backends.choose(EN));
+
+        succeed(backends, RecognizerBackends.Backend.NETWORK, RecognizerBackends.MIN_SAMPLES, 600);
+        assertEquals(RecognizerBackends.Backend.OFFLINE_PREFERRED, backends.choose(EN));
+    }
+
+    @Test
+    public void failuresOutweighSpeed() {
+        RecognizerBackends backends = new RecognizerBackends(true);
+        succeed(backends, RecognizerBackends.Backend.ON_DEVICE, RecognizerBackends.MIN_SAMPLES, 300);
+        succeed(backends, RecognizerBackends.Backend.OFFLINE_PREFERRED, RecognizerBackends.MIN_SAMPLES, 800);
+        succeed(backends, RecognizerBackends.Backend.NETWORK, RecognizerBackends.MIN_SAMPLES, 800);
+        assertEquals(RecognizerBackends.Backend.ON_DEVICE, backends.choose(EN));
+
+        for (int i = 0; i < 5; i++) {
+            backends.recordFailure(RecognizerBackends.Backend.ON_DEVICE);
+        }
+        assertNotEquals(RecognizerBackends.Backend.ON_DEVICE, backends.choose(EN));
+    }
+
+    @Test
+    public void unsupportedLanguageOnlyAffectsThatLanguage() {
+        RecognizerBackends backends = new RecognizerBackends(true);
+        backends.markUnsupported(RecognizerBackends.Backend.ON_DEVICE, RW);
+
+        assertEquals(RecognizerBackends.Backend.OFFLINE_PREFERRED, backends.choose(RW));
+        assertEquals(RecognizerBackends.Backend.ON_DEVICE, backends.choose(EN));
+    }
+
+    @Test
+    public void fallsBackToNetworkWhenNothingElseWorks() {
+        RecognizerBackends backends = new RecognizerBackends(true);
+        backends.markUnavailable(RecognizerBackends.Backend.ON_DEVICE);
+        for (RecognizerBackends.Backend backend : RecognizerBackends.Backend.values()) {
+            backends.markUnsupported(backend, RW);
+        }
+        assertEquals(RecognizerBackends.Backend.NETWORK, backends.choose(RW));
+    }
+
+    @Test
+    public void roundTripsThroughEncoding() {
+        RecognizerBackends backends = new RecognizerBackends(true);
+        succeed(backends, RecognizerBackends.Backend.ON_DEVICE, 6, 350);
+        backends.recordFailure(RecognizerBackends.Backend.NETWORK);
+        backends.markUnsupported(RecognizerBackends.Backend.ON_DEVICE, RW);
+
+        RecognizerBackends restored = new RecognizerBackends(true);
+        restored.decode(backends.encode());
+        assertEquals(backends.encode(), restored.encode());
+        assertEquals(6, restored.getSessions(RecognizerBackends.Backend.ON_DEVICE));
+        assertEquals(RecognizerBackends.Backend.OFFLINE_PREFERRED, restored.choose(RW));
+    }
+
+    @Test
+    public void ignoresMalformedEncoding() {
+        RecognizerBackends backends = new RecognizerBackends(false);
+        backends.decode("BOGUS:1,2,3,;NETWORK:x,1,2,;ON_DEVICE:4");
+        backends.decode(null);
+        assertEquals(0, backends.getSessions(RecognizerBackends.Backend.NETWORK));
+        assertEquals(RecognizerBackends.Backend.OFFLINE_PREFERRED, backends.choose(EN));
+    }
+}
@@ -0,0 +1,92 @@
+package com.voiceussd.prototype.audio;
+
+import org.junit.Test;
+
+import static com.voiceussd.prototype.audio.RecognizerLifecycle.CANCEL_AND_START;
+import static com.voiceussd.prototype.audio.RecognizerLifecycle.NOTHING;
+import static com.voiceussd.prototype.audio.RecognizerLifecycle.START;
+import static com.voiceussd.prototype.audio.RecognizerLifecycle.State;
+import static org.junit.Assert.*;
+
+public class RecognizerLifecycleTest {
+    @Test
+    public void walksThroughOneTurn() {
+        RecognizerLifecycle lifecycle = new RecognizerLifecycle();
+
+        assertEquals(START, lifecycle.requestStart());
+        assertEquals(State.STARTING, lifecycle.getState());
+        lifecycle.onReadyForSpeech();
+        assertEquals(State.READY, lifecycle.getState());
+        lifecycle.onBeginningOfSpeech();
+        assertEquals(State.LISTENING, lifecycle.getState());
+        lifecycle.onEndOfSpeech();
+        assertEquals(State.FINISHING, lifecycle.getState());
+        assertEquals(NOTHING, lifecycle.onSessionEnded());
+        assertTrue(lifecycle.isIdle());
+    }
+
+    @Test
+    public void startWhileFinishingRunsWhenRecognizerIsFree() {
+        RecognizerLifecycle lifecycle = new RecognizerLifecycle();
+        lifecycle.requestStart();
+        lifecycle.onReadyForSpeech();
+        assertTrue(lifecycle.requestStop());
+
+        assertEquals(NOTHING, lifecycle.requestStart());
+        assertTrue(lifecycle.isStartPending());
+
+        assertEquals(START, lifecycle.onSessionEnded());
+        assertEquals(State.STARTING, lifecycle.getState());
+        assertFalse(lifecycle.isStartPending());
+    }
+
+    @Test
+    public void startDuringOpenSessionCancelsIt() {
+        RecognizerLifecycle lifecycle = new RecognizerLifecycle();
+        lifecycle.requestStart();
+        lifecycle.onReadyForSpeech();
+        lifecycle.onBeginningOfSpeech();
+
+        assertEquals(CANCEL_AND_START, lifecycle.requestStart());
+        assertEquals(State.STARTING, lifecycle.getState());
+    }
+
+    @Test
+    public void stopDropsPendingStart() {
+        RecognizerLifecycle lifecycle = new RecognizerLifecycle();
+        lifecycle.requestStart();
+        lifecycle.onEndOfSpeech();
+        lifecycle.requestStart();
+
+        assertFalse(lifecycle.requestStop());
+        assertEquals(NOTHING, lifecycle.onSessionEnded());
+        assertFalse(lifecycle.requestStop());
+    }
+
+    @Test
+    public void partialAndFinalResultsDeliverOnce() {
+        RecognizerLifecycle lifecycle = new RecognizerLifecycle();
+        lifecycle.requestStart();
+
+        assertTrue(lifecycle.claimResult());
+        assertFalse(lifecycle.claimResult());
+
+        lifecycle.requestStop();
+        lifecycle.onSessionEnded();
+        lifecycle.requestStart();
+        assertTrue(lifecycle.claimResult());
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        RecognizerLifecycle lifecycle = new RecognizerLifecycle();
+        lifecycle.requestStart();
+        lifecycle.requestStop();
+        lifecycle.requestStart();
+
+        lifecycle.reset();
+
+        assertTrue(lifecycle.isIdle());
+        assertFalse(lifecycle.isStartPending());
+    }
+}
@@ -0,0 +1,81 @@
+package com.voiceussd.prototype.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SilenceTunerTest {
+
+    // One answer: voice frames every 50 ms with a single gap of pauseMs in the middle
+    private static long answer(SilenceTuner tuner, long start, long pauseMs, boolean understood) {
+        tuner.startSession();
+        long now = start;
+        for (int i = 0; i < 5; i++, now += 50) tuner.onLevel(8f, now);
+        tuner.onLevel(0f, now);
+        now += pauseMs;
+        for (int i = 0; i < 5; i++, now += 50) tuner.onLevel(8f, now);
+        tuner.endSession(understood, now + 400);
+        return now + 1000;
+    }
+
+    @Test
+    public void keepsTheMaximumUntilItHasLearned() {
+        SilenceTuner tuner = new SilenceTuner("test", 500, 1500);
+        long now = 0;
+        for (int i = 0; i < SilenceTuner.MIN_SAMPLES - 1; i++) now = answer(tuner, now, 100, true);
+        assertEquals(1500, tuner.getSilenceMs());
+
+        answer(tuner, now, 100, true);
+        assertEquals(500, tuner.getSilenceMs());
+    }
+
+    @Test
+    public void followsTheUsersLongerPauses() {
+        SilenceTuner tuner = new SilenceTuner("test", 500, 1500);
+        long now = 0;
+        for (int i = 0; i < 10; i++) now = answer(tuner, now, 600, true);
+        // The gap is measured between voice frames, one frame longer than the silence
+        assertEquals(650 + SilenceTuner.MARGIN_MS, tuner.getSilenceMs());
+    }
+
+    @Test
+    public void staysWithinLimits() {
+        SilenceTuner tuner = new SilenceTuner("test", 800, 2000);
+        long now = 0;
+        for (int i = 0; i < 10; i++) now = answer(tuner, now, 5000, true);
+        assertEquals(2000, tuner.getSilenceMs());
+    }
+
+    @Test
+    public void backsOffAfterMisunderstoodAnswers() {
+        SilenceTuner tuner = new SilenceTuner("test", 500, 1500);
+        long now = 0;
+        for (int i = 0; i < 10; i++) now = answer(tuner, now, 400, true);
+        long learned = tuner.getSilenceMs();
+
+        now = answer(tuner, now, 400, false);
+        assertEquals(learned + SilenceTuner.BACKOFF_STEP_MS, tuner.getSilenceMs());
+
+        // Understood answers bring it back down gradually
+        answer(tuner, now, 400, true);
+        assertEquals(learned + SilenceTuner.BACKOFF_STEP_MS - SilenceTuner.BACKOFF_DECAY_MS, tuner.getSilenceMs());
+    }
+
+    @Test
+    public void ignoresSilentAndIgnoredSessions() {
+        SilenceTuner tuner = new SilenceTuner("test", 500, 1500);
+        for (int i = 0; i < 10; i++) {
+            tuner.startSession();
+            tuner.onLevel(0f, i * 100);
+            tuner.endSession(false, i * 100 + 50);
+        }
+        assertEquals(0, tuner.getBackoffMs());
+
+        tuner.startSession();
+        tuner.ignoreSession();
+        tuner.onLevel(8f, 0);
+        tuner.onLevel(8f, 3000);
+        tuner.endSession(true, 3100);
+        assertEquals(1500, tuner.getSilenceMs());
+    }
+}
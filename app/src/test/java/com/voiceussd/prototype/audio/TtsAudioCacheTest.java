@@ -0,0 +1,101 @@
+package com.voiceussd.prototype.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TtsAudioCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void synthesize(TtsAudioCache cache, String key, int bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(cache.pendingFile(key))) {
+            out.write(new byte[bytes]);
+        }
+        assertTrue(cache.commit(key));
+    }
+
+    @Test
+    public void keyDependsOnTextAndVoiceSettings() {
+        String key = TtsAudioCache.key("Option 1: Send Money", "en-us-x-sfg", 1.0f, 1.0f);
+
+        assertEquals(key, TtsAudioCache.key("Option 1: Send Money", "en-us-x-sfg", 1.0f, 1.0f));
+        assertNotEquals(key, TtsAudioCache.key("Option 2: Send Money", "en-us-x-sfg", 1.0f, 1.0f));
+        assertNotEquals(key, TtsAudioCache.key("Option 1: Send Money", "en-gb-x-rjs", 1.0f, 1.0f));
+        assertNotEquals(key, TtsAudioCache.key("Option 1: Send Money", "en-us-x-sfg", 1.5f, 1.0f));
+    }
+
+    @Test
+    public void clipIsVisibleOnlyAfterCommit() throws IOException {
+        TtsAudioCache cache = new TtsAudioCache(folder.getRoot(), 1000);
+
+        assertNull(cache.find("menu"));
+        try (FileOutputStream out = new FileOutputStream(cache.pendingFile("menu"))) {
+            out.write(new byte[100]);
+        }
+        assertNull(cache.find("menu"));
+
+        assertTrue(cache.commit("menu"));
+        assertNotNull(cache.find("menu"));
+        assertFalse(cache.pendingFile("menu").exists());
+    }
+
+    @Test
+    public void emptyOrFailedSynthesisIsNotCached() throws IOException {
+        TtsAudioCache cache = new TtsAudioCache(folder.getRoot(), 1000);
+
+        assertFalse(cache.commit("missing"));
+        assertTrue(cache.pendingFile("empty").createNewFile());
+        assertFalse(cache.commit("empty"));
+        assertNull(cache.find("empty"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondByteBudget() throws IOException {
+        TtsAudioCache cache = new TtsAudioCache(folder.getRoot(), 250);
+        synthesize(cache, "a", 100);
+        synthesize(cache, "b", 100);
+        assertNotNull(cache.find("a"));
+
+        synthesize(cache, "c", 100);
+
+        assertNotNull(cache.find("a"));
+        assertNull(cache.find("b"));
+        assertNotNull(cache.find("c"));
+        assertEquals(200, cache.getTotalBytes());
+    }
+
+    @Test
+    public void survivesRestartAndDropsUnfinishedSynthesis() throws IOException {
+        TtsAudioCache cache = new TtsAudioCache(folder.getRoot(), 1000);
+        synthesize(cache, "menu", 100);
+        try (FileOutputStream out = new FileOutputStream(cache.pendingFile("partial"))) {
+            out.write(new byte[10]);
+        }
+
+        TtsAudioCache reopened = new TtsAudioCache(folder.getRoot(), 1000);
+
+        assertNotNull(reopened.find("menu"));
+        assertEquals(100, reopened.getTotalBytes());
+        assertFalse(reopened.pendingFile("partial").exists());
+    }
+
+    @Test
+    public void forgetsClipsDeletedByTheSystem() throws IOException {
+        TtsAudioCache cache = new TtsAudioCache(folder.getRoot(), 1000);
+        synthesize(cache, "menu", 100);
+
+        File clip = cache.find("menu");
+        assertTrue(clip.delete());
+
+        assertNull(cache.find("menu"));
+        assertEquals(0, cache.getTotalBytes());
+    }
+}
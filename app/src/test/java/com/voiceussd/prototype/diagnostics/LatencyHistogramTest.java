@@ -0,0 +1,69 @@
+package com.voiceussd.prototype.diagnostics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 10; ms++) {
+            histogram.record(ms);
+        }
+
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(9, histogram.percentile(90));
+        assertEquals(10, histogram.percentile(99));
+    }
+
+    @Test
+    public void bucketsCoverEveryValueWithoutGaps() {
+        for (long ms = 0; ms < 100_000; ms++) {
+            int bucket = LatencyHistogram.bucketOf(ms);
+            assertTrue(ms + " above its bucket", ms <= LatencyHistogram.upperBound(bucket));
+            if (bucket > 0) {
+                assertTrue(ms + " below its bucket", ms > LatencyHistogram.upperBound(bucket - 1));
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesStayWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] samples = new long[10_000];
+        Random random = new Random(7);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 200 + random.nextInt(3000);
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        for (int percent : new int[] {50, 90, 99}) {
+            long exact = samples[(int) Math.ceil(percent / 100.0 * samples.length) - 1];
+            long reported = histogram.percentile(percent);
+            assertTrue(percent + ": " + reported + " vs " + exact, reported >= exact);
+            assertTrue(percent + ": " + reported + " vs " + exact, reported <= exact * 1.125 + 1);
+        }
+    }
+
+    @Test
+    public void neverReportsMoreThanTheLargestSample() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(-5);
+
+        assertEquals(1000, histogram.percentile(99));
+        assertEquals(0, histogram.percentile(50));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals("no samples", histogram.summary());
+    }
+}
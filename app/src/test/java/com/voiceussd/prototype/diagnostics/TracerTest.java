@@ -0,0 +1,63 @@
+package com.voiceussd.prototype.diagnostics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class TracerTest {
+
+    @After
+    public void tearDown() {
+        Tracer.setLevel(Tracer.OFF);
+        Tracer.clear();
+    }
+
+    @Test
+    public void recordsNothingWhenOff() {
+        Tracer.setLevel(Tracer.OFF);
+        Tracer.record(Tracer.INFO, "Test", "ignored", 1);
+        assertEquals(0, Tracer.recordedCount());
+    }
+
+    @Test
+    public void gatesByLevel() {
+        Tracer.setLevel(Tracer.DEBUG);
+        Tracer.record(Tracer.DEBUG, "Test", "kept");
+        Tracer.record(Tracer.VERBOSE, "Test", "dropped");
+        assertEquals(1, Tracer.recordedCount());
+        assertTrue(Tracer.isEnabled(Tracer.INFO));
+        assertFalse(Tracer.isEnabled(Tracer.VERBOSE));
+    }
+
+    @Test
+    public void dumpKeepsNewestRecordsInOrder() {
+        Tracer.setLevel(Tracer.INFO);
+        for (int i = 0; i < 5000; i++) {
+            Tracer.record(Tracer.INFO, "Test", "value", i);
+        }
+
+        StringWriter out = new StringWriter();
+        Tracer.dump(new PrintWriter(out));
+        String[] lines = out.toString().split("\n");
+
+        assertTrue(lines[0].contains("of 5000 records"));
+        assertTrue(lines[lines.length - 1].endsWith("value 4999"));
+        assertTrue(lines[1].endsWith("value " + (5000 - (lines.length - 1))));
+    }
+
+    @Test
+    public void dumpFormatsDetailAndValues() {
+        Tracer.setLevel(Tracer.DEBUG);
+        Tracer.record(Tracer.DEBUG, "Test", "detail", "1) Send Money", 7);
+        Tracer.record(Tracer.DEBUG, "Test", "pair", 3, 4);
+
+        StringWriter out = new StringWriter();
+        Tracer.dump(new PrintWriter(out));
+        assertTrue(out.toString().contains("D Test: detail '1) Send Money' 7"));
+        assertTrue(out.toString().contains("D Test: pair 3 4"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.voiceussd.prototype.diagnostics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class TurnTimelineTest {
+
+    @Before
+    @After
+    public void clear() {
+        TurnTimeline.reset();
+    }
+
+    @Test
+    public void stagesMeasureFromThePreviousMark() {
+        TurnTimeline.mark(TurnTimeline.DIALOG_DETECTED, 1000);
+        TurnTimeline.mark(TurnTimeline.SNAPSHOT_DONE, 1012);
+        TurnTimeline.mark(TurnTimeline.TTS_START, 1100);
+        TurnTimeline.mark(TurnTimeline.TTS_DONE, 4100);
+        TurnTimeline.mark(TurnTimeline.MIC_READY, 4300);
+        TurnTimeline.mark(TurnTimeline.RESULT, 5300);
+        TurnTimeline.mark(TurnTimeline.TEXT_SET, 5340);
+        TurnTimeline.mark(TurnTimeline.SEND_CLICKED, 5350);
+        TurnTimeline.mark(TurnTimeline.NEXT_DIALOG, 7350);
+
+        assertEquals(12, TurnTimeline.percentile(TurnTimeline.SNAPSHOT_DONE, 50));
+        assertEquals(200, TurnTimeline.percentile(TurnTimeline.MIC_READY, 50));
+        assertEquals(10, TurnTimeline.percentile(TurnTimeline.SEND_CLICKED, 50));
+        // Bucketed, so within 12.5% of the true 4350 and 2000
+        long turn = TurnTimeline.dialogToSendPercentile(50);
+        assertTrue(String.valueOf(turn), turn >= 4350 && turn <= 4350 * 1.125);
+        long carrier = TurnTimeline.percentile(TurnTimeline.NEXT_DIALOG, 50);
+        assertTrue(String.valueOf(carrier), carrier >= 2000 && carrier <= 2000 * 1.125);
+    }
+
+    @Test
+    public void ignoresMarksOutsideASession() {
+        TurnTimeline.mark(TurnTimeline.TTS_START, 100);
+        TurnTimeline.mark(TurnTimeline.TTS_DONE, 900);
+
+        TurnTimeline.mark(TurnTimeline.DIALOG_DETECTED, 1000);
+        TurnTimeline.endSession();
+        TurnTimeline.mark(TurnTimeline.TTS_DONE, 5000);
+
+        assertEquals(0, TurnTimeline.percentile(TurnTimeline.TTS_DONE, 50));
+    }
+
+    @Test
+    public void exportsOneRowPerStage() {
+        TurnTimeline.mark(TurnTimeline.DIALOG_DETECTED, 0);
+        TurnTimeline.mark(TurnTimeline.SEND_CLICKED, 5);
+
+        StringWriter out = new StringWriter();
+        TurnTimeline.export(new PrintWriter(out), "Pixel 6, API 34", "1.0 (1)");
+        String[] lines = out.toString().split("\n");
+
+        assertEquals("# device\tPixel 6, API 34", lines[0]);
+        assertEquals("stage\tn\tp50\tp90\tp99\tmax", lines[2]);
+        assertEquals(3 + 10 + 2, lines.length);
+        assertEquals("send clicked\t1\t5\t5\t5\t5", lines[3 + TurnTimeline.SEND_CLICKED]);
+    }
+}
@@ -0,0 +1,59 @@
+package com.voiceussd.prototype.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoundedHandoffTest {
+
+    @Test
+    public void deliversInOrder() {
+        BoundedHandoff<String> handoff = new BoundedHandoff<>(4);
+        assertNull(handoff.offer("a"));
+        assertNull(handoff.offer("b"));
+        assertEquals("a", handoff.poll());
+        assertNull(handoff.offer("c"));
+        assertEquals("b", handoff.poll());
+        assertEquals("c", handoff.poll());
+        assertNull(handoff.poll());
+    }
+
+    @Test
+    public void pushesOutTheOldestWhenFull() {
+        BoundedHandoff<Integer> handoff = new BoundedHandoff<>(3);
+        for (int i = 0; i < 3; i++) assertNull(handoff.offer(i));
+
+        assertEquals(Integer.valueOf(0), handoff.offer(3));
+        assertEquals(Integer.valueOf(1), handoff.offer(4));
+        assertEquals(3, handoff.size());
+        assertEquals(2, handoff.getEvicted());
+        assertEquals(Integer.valueOf(2), handoff.poll());
+        assertEquals(Integer.valueOf(3), handoff.poll());
+        assertEquals(Integer.valueOf(4), handoff.poll());
+    }
+
+    @Test
+    public void producerAndConsumerThreadsLoseNothingBelowCapacity() throws InterruptedException {
+        BoundedHandoff<Integer> handoff = new BoundedHandoff<>(1024);
+        int count = 100_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (handoff.size() >= 1000) Thread.yield();
+                handoff.offer(i);
+            }
+        });
+        producer.start();
+
+        int expected = 0;
+        while (expected < count) {
+            Integer item = handoff.poll();
+            if (item == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected++, item.intValue());
+        }
+        producer.join();
+        assertEquals(0, handoff.getEvicted());
+    }
+}
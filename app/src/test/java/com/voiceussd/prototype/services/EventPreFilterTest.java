@@ -0,0 +1,52 @@
+package com.voiceussd.prototype.services;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EventPreFilterTest {
+
+    @Test
+    public void dropsEventsFromOtherApps() {
+        EventPreFilter filter = new EventPreFilter();
+        assertEquals(EventPreFilter.DROP,
+                filter.accept(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED, "com.instagram.android", false));
+        assertEquals(EventPreFilter.DROP,
+                filter.accept(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, null, false));
+        assertEquals(2, filter.getDropped());
+    }
+
+    @Test
+    public void dropsUnhandledEventTypes() {
+        EventPreFilter filter = new EventPreFilter();
+        assertEquals(EventPreFilter.DROP,
+                filter.accept(AccessibilityEvent.TYPE_VIEW_SCROLLED, "com.android.phone", true));
+    }
+
+    @Test
+    public void processesDialerWindowChanges() {
+        EventPreFilter filter = new EventPreFilter();
+        assertEquals(EventPreFilter.PROCESS,
+                filter.accept(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, "com.android.phone", false));
+        assertEquals(EventPreFilter.PROCESS,
+                filter.accept(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, "com.google.android.dialer", false));
+    }
+
+    @Test
+    public void coalescesDialerContentChanges() {
+        EventPreFilter filter = new EventPreFilter();
+        assertEquals(EventPreFilter.COALESCE,
+                filter.accept(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED, "com.android.phone", false));
+        assertEquals(EventPreFilter.COALESCE,
+                filter.accept(AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED, "com.android.phone", true));
+    }
+
+    @Test
+    public void passesOtherAppsWhileUssdIsActive() {
+        EventPreFilter filter = new EventPreFilter();
+        assertEquals(EventPreFilter.PROCESS,
+                filter.accept(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, "com.android.launcher3", true));
+    }
+}
@@ -0,0 +1,149 @@
+package com.voiceussd.prototype.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class InputBufferTest {
+
+    // Holds writes open until the test confirms or fails them, like a slow dialer
+    private static final class SlowField implements InputBuffer.Writer {
+        final List<String> texts = new ArrayList<>();
+        final List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<Boolean> write(String text) {
+            CompletableFuture<Boolean> done = new CompletableFuture<>();
+            texts.add(text);
+            pending.add(done);
+            return done;
+        }
+
+        void finish(boolean ok) {
+            pending.get(pending.size() - 1).complete(ok);
+        }
+    }
+
+    @Test
+    public void digitsArrivingDuringAWriteGoOutTogether() {
+        SlowField field = new SlowField();
+        InputBuffer buffer = new InputBuffer(field);
+
+        CompletableFuture<Boolean> first = buffer.append(0);
+        CompletableFuture<Boolean> second = buffer.append(7);
+        CompletableFuture<Boolean> third = buffer.append(8);
+        assertEquals(1, field.texts.size());
+        assertEquals("0", field.texts.get(0));
+
+        field.finish(true);
+        assertTrue(first.getNow(false));
+        assertFalse(second.isDone());
+        assertEquals("078", field.texts.get(1));
+
+        field.finish(true);
+        assertTrue(second.getNow(false));
+        assertTrue(third.getNow(false));
+        assertTrue(buffer.isSettled());
+        assertEquals(3, buffer.getChanges());
+        assertEquals(2, buffer.getWrites());
+    }
+
+    @Test
+    public void failedWriteIsRetriedWithDigitsAppendedMeanwhile() {
+        SlowField field = new SlowField();
+        InputBuffer buffer = new InputBuffer(field);
+
+        CompletableFuture<Boolean> first = buffer.append(0);
+        CompletableFuture<Boolean> second = buffer.append(7);
+        CompletableFuture<Boolean> third = buffer.append(8);
+        field.finish(false);
+
+        // The retry carries everything recognized while the failed write was in flight
+        assertEquals("078", field.texts.get(1));
+        assertEquals("078", buffer.get());
+        field.finish(true);
+        assertTrue(first.getNow(false));
+        assertTrue(second.getNow(false));
+        assertTrue(third.getNow(false));
+        assertTrue(buffer.isSettled());
+    }
+
+    @Test
+    public void fieldThatKeepsRefusingFailsTheChangeButKeepsTheDigits() {
+        SlowField field = new SlowField();
+        InputBuffer buffer = new InputBuffer(field);
+
+        buffer.append(1);
+        field.finish(true);
+        CompletableFuture<Boolean> refused = buffer.append(2);
+        for (int i = 0; i < InputBuffer.MAX_WRITE_ATTEMPTS; i++) {
+            assertFalse(refused.isDone());
+            field.finish(false);
+        }
+
+        assertFalse(refused.getNow(true));
+        assertEquals(1 + InputBuffer.MAX_WRITE_ATTEMPTS, field.texts.size());
+        assertEquals("12", buffer.get());
+        assertFalse(buffer.isSettled());
+
+        // The next change writes the kept digits out with it
+        CompletableFuture<Boolean> next = buffer.append(3);
+        assertEquals("123", field.texts.get(field.texts.size() - 1));
+        field.finish(true);
+        assertTrue(next.getNow(false));
+        assertTrue(buffer.isSettled());
+    }
+
+    @Test
+    public void replaceSupersedesPendingDigits() {
+        SlowField field = new SlowField();
+        InputBuffer buffer = new InputBuffer(field);
+
+        buffer.append(5);
+        CompletableFuture<Boolean> digit = buffer.append(6);
+        CompletableFuture<Boolean> whole = buffer.replace("0788");
+        field.finish(true);
+        assertEquals("0788", field.texts.get(1));
+        field.finish(true);
+
+        // The digit's change was carried by the replacing write
+        assertTrue(digit.getNow(false));
+        assertTrue(whole.getNow(false));
+        assertEquals("0788", buffer.get());
+    }
+
+    @Test
+    public void resetIgnoresWritesFromTheOldField() {
+        SlowField field = new SlowField();
+        InputBuffer buffer = new InputBuffer(field);
+
+        CompletableFuture<Boolean> old = buffer.append(3);
+        buffer.reset("");
+        assertFalse(old.getNow(true));
+
+        field.finish(true);
+        assertEquals("", buffer.get());
+        assertTrue(buffer.isSettled());
+
+        CompletableFuture<Boolean> fresh = buffer.append(4);
+        field.finish(true);
+        assertTrue(fresh.getNow(false));
+    }
+
+    @Test
+    public void synchronousWritersWork() {
+        List<String> written = new ArrayList<>();
+        InputBuffer buffer = new InputBuffer(text -> {
+            written.add(text);
+            return CompletableFuture.completedFuture(true);
+        });
+
+        assertTrue(buffer.append(1).getNow(false));
+        assertTrue(buffer.append(2).getNow(false));
+        assertEquals("12", written.get(1));
+    }
+}
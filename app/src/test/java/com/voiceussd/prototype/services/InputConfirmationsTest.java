@@ -0,0 +1,99 @@
+package com.voiceussd.prototype.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class InputConfirmationsTest {
+    private static final int DIALOG = 42;
+    private static final String MENU = "1) Send Money\n2) Buy Airtime/Bundles";
+
+    @Test
+    public void textEventConfirmsTheMatchingWrite() {
+        InputConfirmations confirmations = new InputConfirmations();
+        CompletableFuture<Boolean> write = confirmations.expectText("07");
+
+        confirmations.onTextChanged("0");
+        assertFalse(write.isDone());
+
+        confirmations.onTextChanged(new StringBuilder("07"));
+        assertTrue(write.getNow(false));
+        assertFalse(confirmations.isPending(write));
+    }
+
+    @Test
+    public void newWindowConfirmsSend() {
+        InputConfirmations confirmations = new InputConfirmations();
+        CompletableFuture<Boolean> sent = confirmations.expectDialogReaction(DIALOG, MENU);
+        confirmations.onTextChanged("1");
+        assertFalse(sent.isDone());
+
+        confirmations.onWindowChanged();
+        assertTrue(sent.getNow(false));
+    }
+
+    @Test
+    public void ourOwnContentChangesDoNotConfirmSend() {
+        InputConfirmations confirmations = new InputConfirmations();
+        CompletableFuture<Boolean> sent = confirmations.expectDialogReaction(DIALOG, MENU);
+
+        // The button's pressed state, or a late change from the SET_TEXT before the click
+        confirmations.onContentChanged(DIALOG, MENU);
+        // Something else on screen changing
+        confirmations.onContentChanged(DIALOG + 1, "Battery low");
+        confirmations.onContentChanged(DIALOG, null);
+        assertFalse(sent.isDone());
+        assertFalse(confirmations.awaitsContentOf(DIALOG + 1));
+
+        // The carrier's reply replacing the message in the same dialog
+        confirmations.onContentChanged(DIALOG, new StringBuilder("Enter amount"));
+        assertTrue(sent.getNow(false));
+        assertFalse(confirmations.awaitsContentOf(DIALOG));
+    }
+
+    @Test
+    public void expiryUsesTheFallbackOnce() {
+        InputConfirmations confirmations = new InputConfirmations();
+        CompletableFuture<Boolean> write = confirmations.expectText("5");
+
+        confirmations.expire(write, true);
+        assertTrue(write.getNow(false));
+
+        // A late event for an expired write changes nothing
+        confirmations.onTextChanged("5");
+        assertTrue(write.getNow(false));
+
+        CompletableFuture<Boolean> sent = confirmations.expectDialogReaction(DIALOG, MENU);
+        confirmations.expire(sent, false);
+        assertFalse(sent.getNow(true));
+    }
+
+    @Test
+    public void newerExpectationSupersedesOlder() {
+        InputConfirmations confirmations = new InputConfirmations();
+        CompletableFuture<Boolean> first = confirmations.expectText("1");
+        CompletableFuture<Boolean> second = confirmations.expectText("12");
+
+        assertFalse(first.getNow(true));
+        confirmations.onTextChanged("12");
+        assertTrue(second.getNow(false));
+
+        CompletableFuture<Boolean> pending = confirmations.expectDialogReaction(DIALOG, MENU);
+        confirmations.cancelAll();
+        assertFalse(pending.getNow(true));
+    }
+
+    @Test
+    public void chainedStepsRunWhenEventsArrive() {
+        InputConfirmations confirmations = new InputConfirmations();
+        CompletableFuture<Boolean> flow = confirmations.expectText("3")
+                .thenCompose(written -> written ? confirmations.expectDialogReaction(DIALOG, MENU) : CompletableFuture.completedFuture(false));
+
+        confirmations.onTextChanged("3");
+        assertFalse(flow.isDone());
+        confirmations.onWindowChanged();
+        assertTrue(flow.getNow(false));
+    }
+}
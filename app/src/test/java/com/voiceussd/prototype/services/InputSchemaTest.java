@@ -0,0 +1,56 @@
+package com.voiceussd.prototype.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InputSchemaTest {
+
+    @Test
+    public void phoneNumberCompletesAtTenDigits() {
+        InputSchema phone = InputSchema.parse("length=10 prefix=07");
+
+        assertEquals(InputSchema.Verdict.INCOMPLETE, phone.check("0"));
+        assertEquals(InputSchema.Verdict.INCOMPLETE, phone.check("078812345"));
+        assertEquals(InputSchema.Verdict.COMPLETE, phone.check("0788123456"));
+        assertEquals(InputSchema.Verdict.TOO_LONG, phone.check("07881234567"));
+    }
+
+    @Test
+    public void rejectsAWrongPrefixFromTheFirstDigit() {
+        InputSchema phone = InputSchema.parse("length=10 prefix=07");
+
+        assertEquals(InputSchema.Verdict.WRONG_PREFIX, phone.check("8"));
+        assertEquals(InputSchema.Verdict.WRONG_PREFIX, phone.check("08"));
+        assertEquals(InputSchema.Verdict.WRONG_PREFIX, phone.check("7888123456"));
+    }
+
+    @Test
+    public void rangesOnlyCompleteAtTheMaximum() {
+        InputSchema pin = InputSchema.parse("length=4-5");
+
+        assertEquals(InputSchema.Verdict.INCOMPLETE, pin.check("1234"));
+        assertTrue(pin.isLongEnough("1234"));
+        assertFalse(pin.isLongEnough("123"));
+        assertEquals(InputSchema.Verdict.COMPLETE, pin.check("12345"));
+    }
+
+    @Test
+    public void numericUnlessMarkedText() {
+        assertEquals(InputSchema.Verdict.NOT_NUMERIC, InputSchema.parse("length=1-7").check("12a"));
+        assertEquals(InputSchema.Verdict.INCOMPLETE, InputSchema.parse("length=1-7 text").check("12a"));
+        assertEquals(InputSchema.Verdict.INCOMPLETE, InputSchema.ANY.check("123456789012"));
+    }
+
+    @Test
+    public void rejectsBadSpecs() {
+        for (String spec : new String[] {"length=5-4", "length=x", "prefix=0788 length=3", "size=4"}) {
+            try {
+                InputSchema.parse(spec);
+                fail(spec);
+            } catch (IllegalArgumentException expected) {
+                // Reported with the rule table's line number by ScreenRuleTable
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.voiceussd.prototype.services;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReplayRunnerTest {
+    // Gradle runs unit tests from the module directory
+    private static final File RULES = new File("src/main/assets/screen_rules.txt");
+    // Traces in the recorder's format ("dumpsys ... record start"); every name.rec needs a
+    // name.expected next to it listing the screen types the replay must produce, one per line
+    // ("#" starts a comment line)
+    private static final File RECORDINGS = new File("src/test/resources/replay");
+
+    private static final String DIALER = "com.android.phone";
+    private static final String DIALOG = "android.app.AlertDialog";
+
+    private static ScreenClassifier classifier;
+    private static List<ScreenCorpus.Screen> corpus;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        try (FileInputStream in = new FileInputStream(RULES)) {
+            classifier = ScreenClassifier.load(in);
+        }
+        corpus = ScreenCorpus.load();
+    }
+
+    @Test
+    public void recordingSurvivesTheRoundTrip() throws IOException {
+        List<RecordedEvent> events = syntheticTrace();
+        List<RecordedEvent> read = EventRecording.read(new ByteArrayInputStream(write(events)));
+
+        assertEquals(events.size(), read.size());
+        for (int i = 0; i < events.size(); i++) {
+            RecordedEvent expected = events.get(i);
+            RecordedEvent actual = read.get(i);
+            assertEquals(expected.eventTime, actual.eventTime);
+            assertEquals(expected.eventType, actual.eventType);
+            assertEquals(expected.windowId, actual.windowId);
+            assertEquals(expected.className, actual.className);
+            assertEquals(expected.text, actual.text);
+            assertEquals(describe(expected.root), describe(actual.root));
+        }
+    }
+
+    @Test
+    public void recordingIsCompact() throws IOException {
+        List<RecordedEvent> events = syntheticTrace();
+        byte[] bytes = write(events);
+
+        // Every string spelled out each time it occurs, as a naive format would store it
+        int stringBytes = 0;
+        for (RecordedEvent event : events) {
+            stringBytes += utf8(event.packageName) + utf8(event.className);
+            for (String part : event.text) stringBytes += utf8(part);
+            stringBytes += stringBytes(event.root);
+        }
+        assertTrue(bytes.length * 3 < stringBytes);
+    }
+
+    private static int stringBytes(RecordedNode node) {
+        if (node == null) return 0;
+        int total = utf8(node.text) + utf8(node.className) + utf8(node.viewId) + utf8(node.contentDescription);
+        for (RecordedNode child : node.children) total += stringBytes(child);
+        return total;
+    }
+
+    private static int utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8).length : 0;
+    }
+
+    @Test
+    public void truncatedRecordingKeepsWholeEvents() throws IOException {
+        byte[] bytes = write(syntheticTrace());
+
+        List<RecordedEvent> read = EventRecording.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+
+        assertFalse(read.isEmpty());
+    }
+
+    @Test
+    public void replaysEveryCorpusScreen() throws IOException {
+        List<ScreenType> expected = new ArrayList<>();
+        List<RecordedEvent> trace = new ArrayList<>();
+        long time = 0;
+        for (ScreenCorpus.Screen screen : corpus) {
+            if (screen.label.equals("RUNNING")) continue;
+            ScreenType type = ScreenType.valueOf(screen.label);
+            if (!UssdKeywords.has(UssdKeywords.match(screen.text), UssdKeywords.USSD_CONTENT)) continue;
+
+            expected.add(type);
+            time = session(trace, time, Collections.singletonList(screen));
+        }
+
+        ReplayRunner.Result result = new ReplayRunner(classifier).run(read(write(trace)));
+
+        assertEquals(expected, result.screens);
+        assertEquals(expected.size(), result.sessions);
+    }
+
+    @Test
+    public void followsACarrierConversation() throws IOException {
+        ReplayRunner.Result result = new ReplayRunner(classifier).run(read(write(conversation(0))));
+
+        assertEquals(Arrays.asList(ScreenType.MENU, ScreenType.PHONE_NUMBER, ScreenType.AMOUNT, ScreenType.PIN,
+                ScreenType.READ_ONLY), result.screens);
+        assertEquals(1, result.sessions);
+    }
+
+    @Test
+    public void followsTheCarrierWhenSendsAreNotConfirmed() throws IOException {
+        // Every send times out and is re-prompted; the carrier's replies still come in
+        ReplayRunner.Result result = new ReplayRunner(classifier, false).run(read(write(conversation(0))));
+
+        assertEquals(Arrays.asList(ScreenType.MENU, ScreenType.PHONE_NUMBER, ScreenType.AMOUNT, ScreenType.PIN,
+                ScreenType.READ_ONLY), result.screens);
+    }
+
+    @Test
+    public void replaysRecordedTraces() throws IOException {
+        File[] recordings = RECORDINGS.listFiles((dir, name) -> name.endsWith(".rec"));
+        assertNotNull("Missing " + RECORDINGS, recordings);
+        assertTrue("No recordings in " + RECORDINGS, recordings.length > 0);
+
+        for (File recording : recordings) {
+            File expectedFile = new File(recording.getPath().replace(".rec", ".expected"));
+            assertTrue("No " + expectedFile.getName() + " for " + recording.getName(), expectedFile.exists());
+            List<ScreenType> expected = new ArrayList<>();
+            for (String line : Files.readAllLines(expectedFile.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty() && !line.startsWith("#")) expected.add(ScreenType.valueOf(line.trim()));
+            }
+
+            List<RecordedEvent> events;
+            try (InputStream in = new FileInputStream(recording)) {
+                events = EventRecording.read(in);
+            }
+            ReplayRunner.Result result = new ReplayRunner(classifier).run(events);
+
+            assertEquals(recording.getName(), expected, result.screens);
+        }
+    }
+
+    private static byte[] write(List<RecordedEvent> events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (EventRecording.Writer writer = new EventRecording.Writer(out)) {
+            for (RecordedEvent event : events) {
+                writer.write(event);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<RecordedEvent> read(byte[] bytes) throws IOException {
+        return EventRecording.read(new ByteArrayInputStream(bytes));
+    }
+
+    // Every corpus screen in a session of its own, then a full conversation
+    private static List<RecordedEvent> syntheticTrace() {
+        List<RecordedEvent> trace = new ArrayList<>();
+        long time = 0;
+        for (ScreenCorpus.Screen screen : corpus) {
+            if (screen.label.equals("RUNNING")) continue;
+            time = session(trace, time, Collections.singletonList(screen));
+        }
+        trace.addAll(conversation(time));
+        return trace;
+    }
+
+    private static List<RecordedEvent> conversation(long time) {
+        List<ScreenCorpus.Screen> screens = new ArrayList<>();
+        for (String label : new String[] {"MENU", "PHONE_NUMBER", "AMOUNT", "PIN", "READ_ONLY"}) {
+            screens.add(first(label));
+        }
+        List<RecordedEvent> trace = new ArrayList<>();
+        session(trace, time, screens);
+        return trace;
+    }
+
+    private static ScreenCorpus.Screen first(String label) {
+        for (ScreenCorpus.Screen screen : corpus) {
+            if (screen.label.equals(label) && UssdKeywords.has(UssdKeywords.match(screen.text), UssdKeywords.USSD_CONTENT)) {
+                return screen;
+            }
+        }
+        throw new AssertionError("No detectable " + label + " screen in the corpus");
+    }
+
+    // What the worker sees for one dialed code: the placeholder, each carrier screen followed by
+    // the text changes our own typing causes, then the dialog going away
+    private static long session(List<RecordedEvent> trace, long time, List<ScreenCorpus.Screen> screens) {
+        int window = (int) (time % 1000) + 1;
+        trace.add(event(time += 10, AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, window, DIALER, DIALOG,
+                "USSD code running...", null));
+
+        for (ScreenCorpus.Screen screen : screens) {
+            boolean input = !screen.label.equals("READ_ONLY") && !screen.label.equals("MENU");
+            trace.add(event(time += 800, AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, window, DIALER, DIALOG,
+                    screen.text, tree(window, screen.text, input || screen.label.equals("MENU"))));
+            trace.add(event(time += 300, AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED, window, DIALER,
+                    "android.widget.EditText", "1", null));
+            trace.add(event(time += 20, AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED, window, DIALER,
+                    "android.widget.FrameLayout", "1", null));
+        }
+
+        trace.add(event(time += 500, AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, window + 1,
+                "com.android.launcher3", "android.widget.FrameLayout", "Home", null));
+        return time;
+    }
+
+    private static RecordedEvent event(long time, int type, int window, String packageName, String className,
+                                       String text, RecordedNode root) {
+        RecordedEvent event = new RecordedEvent(time, type, window, packageName, className,
+                new ArrayList<>(Collections.singletonList(text)));
+        event.root = root;
+        return event;
+    }
+
+    private static RecordedNode tree(int window, String text, boolean input) {
+        List<RecordedNode> children = new ArrayList<>();
+        children.add(node(window, text, "android.widget.TextView", "android:id/message", 0));
+        if (input) {
+            children.add(node(window, "", "android.widget.EditText", DialerViews.INPUT_FIELD_ID,
+                    RecordedNode.EDITABLE | RecordedNode.CLICKABLE));
+            children.add(node(window, "Cancel", "android.widget.Button", DialerViews.CANCEL_BUTTON_ID, RecordedNode.CLICKABLE));
+            children.add(node(window, "Send", "android.widget.Button", DialerViews.SEND_BUTTON_ID, RecordedNode.CLICKABLE));
+        } else {
+            children.add(node(window, "OK", "android.widget.Button", DialerViews.SEND_BUTTON_ID, RecordedNode.CLICKABLE));
+        }
+        return new RecordedNode(window, null, "android.widget.FrameLayout", null, null, 0, children);
+    }
+
+    private static RecordedNode node(int window, String text, String className, String viewId, int flags) {
+        return new RecordedNode(window, text, className, viewId, null, flags, new ArrayList<>());
+    }
+
+    private static String describe(RecordedNode node) {
+        if (node == null) return "-";
+        StringBuilder out = new StringBuilder().append(node.windowId).append('|').append(node.text).append('|')
+                .append(node.className).append('|').append(node.viewId).append('|').append(node.flags).append('[');
+        for (RecordedNode child : node.children) {
+            out.append(describe(child));
+        }
+        return out.append(']').toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.voiceussd.prototype.services;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScreenClassifierTest {
+    // Gradle runs unit tests from the module directory
+    private static final File RULES = new File("src/main/assets/screen_rules.txt");
+
+    private static ScreenClassifier classifier;
+    private static List<ScreenCorpus.Screen> corpus;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        try (FileInputStream in = new FileInputStream(RULES)) {
+            classifier = ScreenClassifier.load(in);
+        }
+        corpus = ScreenCorpus.load();
+    }
+
+    @Test
+    public void classifiesEveryCorpusScreen() {
+        int checked = 0;
+        for (ScreenCorpus.Screen screen : corpus) {
+            if (screen.label.equals("RUNNING")) continue;
+
+            ScreenType expected = ScreenType.valueOf(screen.label);
+            ScreenRule rule = classifier.classify(screen.text, "com.android.phone", expected != ScreenType.READ_ONLY);
+            assertEquals(screen.text, expected, rule.getType());
+            checked++;
+        }
+        assertTrue(checked > 10);
+    }
+
+    @Test
+    public void usesPromptsFromTheTable() {
+        assertEquals("Enter your PIN", classifier.classify("Enter PIN to confirm", null, true).getPrompt());
+        assertEquals("Please provide the requested information",
+                classifier.classify("Reference:", null, true).getPrompt());
+    }
+
+    @Test
+    public void fallsBackOnInputField() {
+        assertEquals(ScreenType.UNKNOWN_INPUT, classifier.classify("Reference number:", null, true).getType());
+        assertEquals(ScreenType.READ_ONLY, classifier.classify("Thank you.", null, false).getType());
+    }
+
+    @Test
+    public void carrierRulesComeBeforeDefaults() throws IOException {
+        String rules = "[default]\n" +
+                "MENU | | 1)\n" +
+                "[com.carrier.dialer]\n" +
+                "AMOUNT | Say the amount | 1) 100 rwf\n";
+        ScreenClassifier carrier = new ScreenClassifier(ScreenRuleTable.parse(new StringReader(rules)));
+
+        String text = "1) 100 RWF\n2) 500 RWF";
+        assertEquals(ScreenType.AMOUNT, carrier.classify(text, "com.carrier.dialer", true).getType());
+        assertEquals(ScreenType.MENU, carrier.classify(text, "com.android.phone", true).getType());
+    }
+
+    @Test
+    public void firstMatchingRuleWins() throws IOException {
+        // The PIN confirmation screen also mentions the amount
+        ScreenRule rule = classifier.classify("Send 5,000 RWF (amafaranga). Shyiramo umubare w'ibanga", null, true);
+        assertEquals(ScreenType.PIN, rule.getType());
+    }
+
+    @Test
+    public void readsInputSchemas() throws IOException {
+        assertEquals(10, classifier.classify("Enter mobile number", null, true).getSchema().getMaxLength());
+        assertEquals("07", classifier.classify("Enter mobile number", null, true).getSchema().getPrefix());
+        assertSame(InputSchema.ANY, classifier.classify("Reference:", null, true).getSchema());
+
+        ScreenRuleTable table = ScreenRuleTable.parse(new StringReader("[default]\nPIN | | pin | length=5\n"));
+        assertEquals(5, table.rulesFor(null).get(0).getSchema().getMinLength());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadSchema() throws IOException {
+        ScreenRuleTable.parse(new StringReader("[default]\nPIN | | pin | length=five\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownScreenType() throws IOException {
+        ScreenRuleTable.parse(new StringReader("[default]\nBALANCE | | balance\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsRuleWithoutKeywords() throws IOException {
+        ScreenRuleTable.parse(new StringReader("[default]\nPIN | Enter your PIN |\n"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.voiceussd.prototype.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Labelled USSD screen texts from test resources (see corpus/ussd_screens_182.txt)
+final class ScreenCorpus {
+
+    static final class Screen {
+        final String label;
+        final String text;
+
+        Screen(String label, String text) {
+            this.label = label;
+            this.text = text;
+        }
+    }
+
+    private ScreenCorpus() {
+    }
+
+    static List<Screen> load() throws IOException {
+        return load("/corpus/ussd_screens_182.txt");
+    }
+
+    static List<Screen> load(String resource) throws IOException {
+        InputStream in = ScreenCorpus.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Missing screen corpus " + resource);
+        }
+
+        List<Screen> screens = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String label = null;
+            StringBuilder text = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                if (line.startsWith("===")) {
+                    if (label != null) screens.add(new Screen(label, text.toString()));
+                    label = line.substring(3).trim();
+                    text.setLength(0);
+                } else if (label != null) {
+                    if (text.length() > 0) text.append('\n');
+                    text.append(line);
+                }
+            }
+            if (label != null) screens.add(new Screen(label, text.toString()));
+        }
+        return screens;
+    }
+
+    static List<String> texts() throws IOException {
+        List<String> texts = new ArrayList<>();
+        for (Screen screen : load()) {
+            texts.add(screen.text);
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,101 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.text.DigitParser;
+import com.voiceussd.prototype.text.MenuOption;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class ScreenParseCacheTest {
+    private static final String MENU = "1) Send Money\n2) Buy Airtime/Bundles\n3) Pay Bill\nn Next";
+
+    private ScreenClassifier classifier;
+
+    @Before
+    public void setUp() throws IOException {
+        classifier = new ScreenClassifier(ScreenRuleTable.parse(new StringReader(
+                "[default]\n" +
+                "PIN | Enter your PIN | pin\n" +
+                "MENU | | 1)\n")));
+    }
+
+    @Test
+    public void parsesMenuOnce() {
+        ScreenParseCache cache = new ScreenParseCache(classifier, 8);
+
+        ParsedScreen first = cache.get(MENU, "com.android.phone", true);
+        ParsedScreen second = cache.get(MENU, "com.android.phone", true);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(ScreenType.MENU, first.getType());
+        assertEquals(3, first.getOptions().size());
+        MenuOption option = first.getOptions().get(1);
+        assertEquals(2, option.getNumber());
+        assertEquals("Buy Airtime/Bundles", option.getLabel());
+        assertEquals("Say the number representing the service you want.1: Send Money. "
+                + "2: Buy Airtime/Bundles. 3: Pay Bill. ", first.getSpeechText());
+    }
+
+    @Test
+    public void menusAcceptOnlyTheirOptionNumbers() {
+        ScreenParseCache cache = new ScreenParseCache(classifier, 8);
+
+        int allowed = cache.get(MENU, null, true).getAllowedDigits();
+        assertTrue(DigitParser.allows(allowed, 1));
+        assertTrue(DigitParser.allows(allowed, 3));
+        assertFalse(DigitParser.allows(allowed, 4));
+        assertFalse(DigitParser.allows(allowed, 0));
+
+        assertEquals(DigitParser.ANY_DIGIT, cache.get("Enter your PIN", null, true).getAllowedDigits());
+    }
+
+    @Test
+    public void ignoresCaseAndWhitespaceRuns() {
+        ScreenParseCache cache = new ScreenParseCache(classifier, 8);
+        cache.get("Enter your PIN", null, true);
+        cache.get("  ENTER   your\nPIN ", null, true);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void keysOnClassifierInputs() {
+        ScreenParseCache cache = new ScreenParseCache(classifier, 8);
+        ParsedScreen withField = cache.get("Thank you", null, true);
+        ParsedScreen withoutField = cache.get("Thank you", null, false);
+        assertEquals(ScreenType.UNKNOWN_INPUT, withField.getType());
+        assertEquals(ScreenType.READ_ONLY, withoutField.getType());
+        assertEquals("Thank you", withoutField.getSpeechText());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ScreenParseCache cache = new ScreenParseCache(classifier, 2);
+        cache.get("screen a", null, false);
+        cache.get("screen b", null, false);
+        cache.get("screen a", null, false);  // a is now most recent
+        cache.get("screen c", null, false);  // evicts b
+
+        cache.get("screen a", null, false);
+        assertEquals(2, cache.getHits());
+        cache.get("screen b", null, false);
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void menuWithoutOptionsHasNoSpeech() {
+        ScreenParseCache cache = new ScreenParseCache(classifier, 8);
+        ParsedScreen screen = cache.get("Option 1)", null, true);
+        assertEquals(ScreenType.MENU, screen.getType());
+        assertNull(screen.getSpeechText());
+    }
+}
@@ -0,0 +1,60 @@
+package com.voiceussd.prototype.services;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class UssdKeywordsTest {
+
+    @Test
+    public void matchesLegacyContainsChainOnRealScreens() throws IOException {
+        for (String screen : ScreenCorpus.texts()) {
+            int categories = UssdKeywords.match(screen) & (UssdKeywords.USSD_CONTENT | UssdKeywords.USSD_RUNNING);
+            assertEquals(screen, legacyCategories(screen), categories);
+        }
+    }
+
+    @Test
+    public void ignoresCaseWithoutCopying() {
+        assertTrue(UssdKeywords.has(UssdKeywords.match("ENTER YOUR PIN"), UssdKeywords.USSD_CONTENT));
+        assertTrue(UssdKeywords.has(UssdKeywords.match("SHYIRAMO amafaranga"), UssdKeywords.USSD_CONTENT));
+        assertEquals(0, UssdKeywords.match("Welcome to the feed"));
+        assertEquals(0, UssdKeywords.match(null));
+    }
+
+    @Test
+    public void detectsKinyarwandaScreens() {
+        assertTrue(UssdKeywords.has(UssdKeywords.match("Shyiramo umubare w'ibanga"), UssdKeywords.KINYARWANDA));
+        assertTrue(UssdKeywords.has(UssdKeywords.match("1) Kohereza amafaranga\n2) Kugura airtime"), UssdKeywords.KINYARWANDA));
+        assertFalse(UssdKeywords.has(UssdKeywords.match("1) Send Money\n2) Buy Airtime"), UssdKeywords.KINYARWANDA));
+    }
+
+    @Test
+    public void reportsOverlappingKeywords() {
+        // "ussd" is a detection keyword and a prefix of the running placeholder
+        int categories = UssdKeywords.match("USSD code running...");
+        assertTrue(UssdKeywords.has(categories, UssdKeywords.USSD_CONTENT));
+        assertTrue(UssdKeywords.has(categories, UssdKeywords.USSD_RUNNING));
+        assertFalse(UssdKeywords.has(UssdKeywords.match("USSD code"), UssdKeywords.USSD_RUNNING));
+    }
+
+    // The checks isUSSDDialog used to run, kept here as the reference behaviour
+    private static int legacyCategories(String screen) {
+        String text = screen.toLowerCase();
+        int categories = 0;
+        if (text.contains("ussd") || text.contains("ussd code") || text.contains("1)") ||
+                text.contains("n next") || text.contains("balance") || text.contains("amafaranga") ||
+                text.contains("kwemeza") || text.contains("pin") || text.contains("shyiramo") ||
+                text.contains("mobile number") || text.contains("nimero ya mobile") ||
+                text.contains("recipient") || text.contains("07xxxxxxxx") ||
+                text.contains("format 07") || text.contains("enter") || text.contains("amount")) {
+            categories |= UssdKeywords.USSD_CONTENT;
+        }
+        if (text.contains("ussd code running")) {
+            categories |= UssdKeywords.USSD_RUNNING;
+        }
+        return categories;
+    }
+}
@@ -0,0 +1,314 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.audio.InputMode;
+import com.voiceussd.prototype.audio.SpeechText;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class UssdSessionEngineTest {
+    private static final String MENU = "1) Send Money\n2) Buy Airtime/Bundles\n3) Pay Bill";
+    private static final String PIN = "Enter your PIN";
+    private static final String PHONE = "Enter mobile number";
+
+    // Every port call, in order, as "port:call argument"
+    private final List<String> calls = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    // Writes and sends that have not completed yet
+    private final Deque<CompletableFuture<Boolean>> pending = new ArrayDeque<>();
+    private long now = 1000;
+
+    private ScreenParseCache screens;
+    private UssdSessionEngine engine;
+
+    private final UssdSessionEngine.Speaker speaker = new UssdSessionEngine.Speaker() {
+        @Override public void speakMenu(String text) { calls.add("speak:menu"); }
+        @Override public void speakInputStart(String text) { calls.add("speak:start " + text); }
+        @Override public void speakPrompt(String text) { calls.add("speak:prompt " + text); }
+        @Override public void speakDigitConfirmation(int digit, String input) { calls.add("speak:got " + input); }
+        @Override public void speakSequenceConfirmation(String input) { calls.add("speak:got " + input); }
+        @Override public void speakInformation(String text) { calls.add("speak:info"); }
+        @Override public void speakCompletion(String input) { calls.add("speak:done " + input); }
+        @Override public void stop() { calls.add("speak:stop"); }
+    };
+
+    private final UssdSessionEngine.Listener listener = new UssdSessionEngine.Listener() {
+        @Override public void configure(InputMode mode, int allowedDigits, boolean amount) { calls.add("stt:" + mode); }
+        @Override public void setLanguage(String languageTag) { }
+        @Override public void startBargeIn() { calls.add("stt:barge-in"); }
+        @Override public void listen(long promptDoneAt) { calls.add("stt:listen"); }
+        @Override public void endInput() { calls.add("stt:end"); }
+    };
+
+    private final UssdSessionEngine.Input input = new UssdSessionEngine.Input() {
+        @Override
+        public CompletableFuture<Boolean> sendChoice(int number) {
+            calls.add("input:choice " + number);
+            return later();
+        }
+
+        @Override
+        public CompletableFuture<Boolean> appendDigit(int digit) {
+            field.append(digit);
+            return later();
+        }
+
+        @Override
+        public CompletableFuture<Boolean> setText(String text) {
+            field.setLength(0);
+            field.append(text);
+            return later();
+        }
+
+        @Override
+        public CompletableFuture<Boolean> submit(String text) {
+            calls.add("input:submit " + text);
+            return later();
+        }
+
+        @Override
+        public boolean cancel() {
+            calls.add("input:cancel");
+            return true;
+        }
+
+        @Override
+        public String getInput() {
+            return field.toString();
+        }
+    };
+
+    private CompletableFuture<Boolean> later() {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        pending.add(future);
+        return future;
+    }
+
+    private void completeNext(boolean ok) {
+        pending.poll().complete(ok);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        screens = new ScreenParseCache(new ScreenClassifier(ScreenRuleTable.parse(new StringReader(
+                "[default]\n" +
+                "PIN | Enter your PIN | pin | length=4-5\n" +
+                "PHONE_NUMBER | Enter the number | mobile number | length=10 prefix=07\n" +
+                "MENU | | 1)\n"))), 8);
+        engine = new UssdSessionEngine(speaker, listener, input, () -> now, true);
+        engine.onSessionStarted();
+    }
+
+    private void showScreen(String text) {
+        field.setLength(0);
+        engine.onScreen(screens.get(text, null, true), "en-US");
+    }
+
+    @Test
+    public void menuChoiceIsSentAndTheNextScreenAwaited() {
+        showScreen(MENU);
+        assertEquals(UssdSessionEngine.Phase.SPEAKING, engine.getPhase());
+        assertTrue(calls.contains("stt:barge-in"));
+
+        now += 2000;
+        engine.onPromptDone(now);
+        assertEquals(UssdSessionEngine.Phase.LISTENING, engine.getPhase());
+
+        engine.onMenuChoice(2);
+        assertTrue(calls.contains("input:choice 2"));
+        assertEquals(UssdSessionEngine.Phase.SUBMITTING, engine.getPhase());
+        completeNext(true);
+        assertTrue(engine.isAwaitingScreen());
+    }
+
+    @Test
+    public void bargeInAnswersWhileTheMenuIsPlaying() {
+        showScreen(MENU);
+        engine.onMenuChoice(1);
+
+        assertEquals(calls.indexOf("speak:stop") + 1, calls.indexOf("input:choice 1"));
+        // The flushed menu prompt reporting in late doesn't start the recognizer
+        engine.onPromptDone(now);
+        assertFalse(calls.contains("stt:listen"));
+    }
+
+    @Test
+    public void pinIsSubmittedOnceItCanBeNothingElse() {
+        showScreen(PIN);
+        engine.onPromptDone(now);
+
+        for (int digit = 1; digit <= 4; digit++) {
+            engine.onDigit(digit);
+            completeNext(true);
+            engine.onPromptDone(now);
+        }
+        assertFalse(calls.contains("input:submit 1234"));
+
+        engine.onDigit(5);
+        completeNext(true);
+        assertTrue(calls.contains("speak:done 12345"));
+        assertTrue(calls.contains("input:submit 12345"));
+        assertEquals(UssdSessionEngine.Phase.SUBMITTING, engine.getPhase());
+    }
+
+    @Test
+    public void doneBelowTheMinimumAsksForMore() {
+        showScreen(PIN);
+        engine.onPromptDone(now);
+        engine.onDigit(4);
+        completeNext(true);
+
+        engine.onDone();
+
+        assertEquals("speak:prompt " + SpeechText.tooShort(4, "4"), calls.get(calls.size() - 1));
+        assertEquals(UssdSessionEngine.Phase.SPEAKING, engine.getPhase());
+    }
+
+    @Test
+    public void timeoutSubmitsOnlyWhenSomethingWasEntered() {
+        showScreen(PIN);
+        engine.onPromptDone(now);
+        engine.onInputTimeout();
+        assertEquals(UssdSessionEngine.Phase.LISTENING, engine.getPhase());
+
+        engine.onDigit(7);
+        completeNext(true);
+        engine.onPromptDone(now);
+        engine.onInputTimeout();
+        assertTrue(calls.contains("input:submit 7"));
+    }
+
+    @Test
+    public void wrongPrefixIsNeverTyped() {
+        showScreen(PHONE);
+        engine.onPromptDone(now);
+
+        engine.onDigitSequence("0812345678", 0.9f);
+
+        assertEquals("", field.toString());
+        assertTrue(pending.isEmpty());
+        assertEquals("speak:prompt " + SpeechText.wrongPrefix("07", ""), calls.get(calls.size() - 1));
+    }
+
+    @Test
+    public void lowConfidenceFallsBackToDigitByDigit() {
+        showScreen(PHONE);
+        assertTrue(calls.contains("stt:CONTINUOUS_DIGITS"));
+        engine.onPromptDone(now);
+
+        engine.onDigitSequence("0788", 0.3f);
+
+        assertTrue(calls.contains("stt:DIGIT_BY_DIGIT"));
+        assertEquals("", field.toString());
+        assertEquals(UssdSessionEngine.Phase.SPEAKING, engine.getPhase());
+    }
+
+    @Test
+    public void writeFinishingAfterTheScreenChangedIsDropped() {
+        showScreen(PIN);
+        engine.onPromptDone(now);
+        engine.onDigit(1);
+        CompletableFuture<Boolean> oldWrite = pending.poll();
+
+        showScreen(MENU);
+        int before = calls.size();
+        oldWrite.complete(true);
+
+        assertEquals(before, calls.size());
+        assertEquals(UssdSessionEngine.Phase.SPEAKING, engine.getPhase());
+    }
+
+    @Test
+    public void answersForTheWrongKindOfScreenAreIgnored() {
+        showScreen(MENU);
+        engine.onPromptDone(now);
+        engine.onDigit(3);
+        engine.onDone();
+        assertTrue(pending.isEmpty());
+
+        showScreen(PIN);
+        engine.onPromptDone(now);
+        engine.onMenuChoice(1);
+        assertTrue(pending.isEmpty());
+        assertEquals(UssdSessionEngine.Phase.LISTENING, engine.getPhase());
+    }
+
+    @Test
+    public void stopsRepromptingAfterTheLimit() {
+        showScreen(MENU);
+        engine.onPromptDone(now);
+
+        for (int i = 0; i < UssdSessionEngine.MAX_REPROMPTS + 2; i++) {
+            engine.onAnswerRejected("");
+            engine.onPromptDone(now);
+        }
+
+        int reprompts = 0;
+        for (String call : calls) {
+            if (call.startsWith("speak:prompt")) reprompts++;
+        }
+        assertEquals(UssdSessionEngine.MAX_REPROMPTS, reprompts);
+    }
+
+    @Test
+    public void givesUpAloudAndClosesTheDialogAfterTheLimit() {
+        showScreen(PIN);
+        engine.onPromptDone(now);
+        for (int i = 0; i < UssdSessionEngine.MAX_REPROMPTS; i++) {
+            engine.onAnswerRejected("");
+            engine.onPromptDone(now);
+        }
+        assertFalse(calls.contains("input:cancel"));
+
+        engine.onAnswerRejected("banana");
+
+        assertTrue(calls.contains("speak:info"));
+        assertTrue(calls.contains("input:cancel"));
+        assertEquals(UssdSessionEngine.Phase.READING, engine.getPhase());
+        // A late answer for the abandoned screen goes nowhere
+        engine.onDigit(1);
+        assertEquals("", field.toString());
+    }
+
+    @Test
+    public void failedSendAsksAgain() {
+        showScreen(MENU);
+        engine.onPromptDone(now);
+        engine.onMenuChoice(3);
+
+        completeNext(false);
+
+        assertEquals(UssdSessionEngine.Phase.SPEAKING, engine.getPhase());
+        assertTrue(calls.get(calls.size() - 1).startsWith("speak:prompt"));
+    }
+
+    @Test
+    public void accountsTimePerPhase() {
+        showScreen(MENU);
+        now += 3000;
+        engine.onPromptDone(now);
+        now += 1200;
+        engine.onMenuChoice(1);
+        now += 400;
+        completeNext(true);
+        now += 100;
+        engine.onSessionEnded();
+
+        assertEquals(UssdSessionEngine.Phase.IDLE, engine.getPhase());
+        String summary = engine.summary();
+        assertTrue(summary, summary.contains("sessions=1"));
+        assertTrue(summary, summary.contains("SPEAKING"));
+        assertTrue(summary, summary.contains("LISTENING"));
+        assertTrue(calls.contains("stt:end"));
+    }
+}
@@ -0,0 +1,196 @@
+package com.voiceussd.prototype.text;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DigitParserTest {
+
+    // One n-best list from test resources (see stt/stt_corpus.tsv)
+    private static final class Sample {
+        final int expected;
+        final boolean acceptDone;
+        final List<String> hypotheses;
+        final float[] scores;
+
+        Sample(int expected, boolean acceptDone, List<String> hypotheses, float[] scores) {
+            this.expected = expected;
+            this.acceptDone = acceptDone;
+            this.hypotheses = hypotheses;
+            this.scores = scores;
+        }
+    }
+
+    private static List<Sample> corpus() throws IOException {
+        InputStream in = DigitParserTest.class.getResourceAsStream("/stt/stt_corpus.tsv");
+        assertNotNull("Missing stt/stt_corpus.tsv", in);
+
+        List<Sample> samples = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\t");
+                int expected = fields[0].equals("done") ? DigitParser.DONE
+                        : fields[0].equals("none") ? DigitParser.NO_DIGIT : Integer.parseInt(fields[0]);
+                float[] scores = null;
+                if (fields.length > 3) {
+                    String[] parts = fields[3].split(",");
+                    scores = new float[parts.length];
+                    for (int i = 0; i < parts.length; i++) scores[i] = Float.parseFloat(parts[i]);
+                }
+                samples.add(new Sample(expected, fields[1].equals("digit"), Arrays.asList(fields[2].split(" \\| ")), scores));
+            }
+        }
+        return samples;
+    }
+
+    @Test
+    public void matchesWholeWordsOnly() {
+        DigitParser parser = DigitParser.english();
+
+        assertEquals(8, parser.parse("eight", false));
+        assertEquals(DigitParser.NO_DIGIT, parser.parse("translate", false));
+        assertEquals(DigitParser.NO_DIGIT, parser.parse("send money", false));
+        assertEquals(DigitParser.NO_DIGIT, parser.parse("before", false));
+        assertEquals(4, parser.parse("Number FOUR, please", false));
+        assertEquals(7, parser.parse("7", false));
+        assertEquals(DigitParser.NO_DIGIT, parser.parse("78", false));
+    }
+
+    @Test
+    public void homophonesScoreBelowTheRealWord() {
+        DigitParser parser = DigitParser.english();
+
+        assertEquals(4, parser.parse("four", false));
+        float exact = parser.getConfidence();
+        assertEquals(4, parser.parse("for", false));
+        assertTrue(parser.getConfidence() < exact);
+    }
+
+    @Test
+    public void twoDifferentDigitsIsNoAnswer() {
+        DigitParser parser = DigitParser.english();
+
+        assertEquals(DigitParser.NO_DIGIT, parser.parse("one two", false));
+        assertEquals(2, parser.parse("two 2", false));
+    }
+
+    @Test
+    public void doneOnlyWhereAccepted() {
+        DigitParser parser = DigitParser.english();
+
+        assertEquals(DigitParser.DONE, parser.parse("I'm done", true));
+        assertEquals(DigitParser.NO_DIGIT, parser.parse("I'm done", false));
+        assertFalse(parser.isDone("undone"));
+        assertTrue(parser.isDone("finished"));
+    }
+
+    @Test
+    public void nBestVotesOutweighAWrongTopHypothesis() {
+        DigitParser parser = DigitParser.english();
+
+        int digit = parser.best(Arrays.asList("mine", "9", "nine", "nein"), new float[] {0.4f, 0, 0, 0}, false);
+
+        assertEquals(9, digit);
+        assertTrue(parser.getConfidence() > 0.5f);
+        assertEquals(DigitParser.NO_DIGIT, parser.best(Arrays.asList("hello", "halo"), null, false));
+        assertEquals(0f, parser.getConfidence(), 0f);
+    }
+
+    @Test
+    public void rescoresAgainstAllowedDigits() {
+        DigitParser parser = DigitParser.english();
+        int menu = DigitParser.digitMask(1) | DigitParser.digitMask(2) | DigitParser.digitMask(3);
+
+        // "nine" on a 1-3 menu is a mishearing of "one" further down the list
+        assertEquals(9, parser.best(Arrays.asList("nine", "one"), new float[] {0.6f, 0.3f}, false));
+        assertEquals(1, parser.best(Arrays.asList("nine", "one"), new float[] {0.6f, 0.3f}, false, menu));
+        assertEquals(DigitParser.NO_DIGIT, parser.best(Arrays.asList("nine", "five"), null, false, menu));
+
+        assertEquals(DigitParser.NO_DIGIT, parser.parse("nine", false, menu));
+        assertEquals(2, parser.parse("two", false, menu));
+        // Commands don't depend on the mask
+        assertEquals(DigitParser.DONE, parser.parse("done", true, 0));
+    }
+
+    @Test
+    public void rejectsNonLexiconWords() {
+        try {
+            new DigitParser.Builder().digit(1, 1f, "Uno");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void beatsContainsChainOnRecognizerCorpus() throws IOException {
+        DigitParser parser = NumberLexicon.compile(NumberLexicon.english(), NumberLexicon.kinyarwanda());
+        List<Sample> samples = corpus();
+        int parserCorrect = 0;
+        int legacyCorrect = 0;
+        List<String> misses = new ArrayList<>();
+
+        for (Sample sample : samples) {
+            int result = parser.best(sample.hypotheses, sample.scores, sample.acceptDone);
+            if (result == sample.expected) {
+                parserCorrect++;
+            } else {
+                misses.add(sample.hypotheses.get(0) + " -> " + result);
+            }
+            if (legacy(sample.hypotheses, sample.acceptDone) == sample.expected) legacyCorrect++;
+        }
+
+        assertTrue(parserCorrect + "/" + samples.size() + ", misses " + misses,
+                parserCorrect >= samples.size() * 95 / 100);
+        assertTrue(parserCorrect + " vs contains chain " + legacyCorrect, parserCorrect > legacyCorrect);
+    }
+
+    // What STTManager.onResults used to do: first hypothesis that yields anything wins
+    private static int legacy(List<String> hypotheses, boolean acceptDone) {
+        for (String hypothesis : hypotheses) {
+            if (acceptDone && legacyIsDone(hypothesis)) return DigitParser.DONE;
+            int digit = legacyExtractDigit(hypothesis);
+            if (digit != -1) return digit;
+        }
+        return DigitParser.NO_DIGIT;
+    }
+
+    private static int legacyExtractDigit(String speech) {
+        String lowerSpeech = speech.toLowerCase().trim();
+        if (lowerSpeech.contains("zero") || lowerSpeech.equals("0")) return 0;
+        if (lowerSpeech.contains("one") || lowerSpeech.equals("1") || lowerSpeech.contains("won")) return 1;
+        if (lowerSpeech.contains("two") || lowerSpeech.equals("2") || lowerSpeech.contains("too")) return 2;
+        if (lowerSpeech.contains("three") || lowerSpeech.equals("3") || lowerSpeech.contains("tree")) return 3;
+        if (lowerSpeech.contains("four") || lowerSpeech.equals("4") || lowerSpeech.contains("for")) return 4;
+        if (lowerSpeech.contains("five") || lowerSpeech.equals("5")) return 5;
+        if (lowerSpeech.contains("six") || lowerSpeech.equals("6") || lowerSpeech.contains("sicks")) return 6;
+        if (lowerSpeech.contains("seven") || lowerSpeech.equals("7")) return 7;
+        if (lowerSpeech.contains("eight") || lowerSpeech.equals("8") || lowerSpeech.contains("ate")) return 8;
+        if (lowerSpeech.contains("nine") || lowerSpeech.equals("9") || lowerSpeech.contains("nein")) return 9;
+
+        String digitsOnly = speech.replaceAll("[^0-9]", "");
+        if (digitsOnly.length() == 1) {
+            return Integer.parseInt(digitsOnly);
+        }
+        return -1;
+    }
+
+    private static boolean legacyIsDone(String speech) {
+        String lowerSpeech = speech.toLowerCase().trim();
+        return lowerSpeech.contains("done") ||
+                lowerSpeech.contains("finished") ||
+                lowerSpeech.contains("complete") ||
+                lowerSpeech.contains("send") ||
+                lowerSpeech.equals("end");
+    }
+}
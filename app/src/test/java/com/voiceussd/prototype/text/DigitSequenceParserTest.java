@@ -0,0 +1,110 @@
+package com.voiceussd.prototype.text;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DigitSequenceParserTest {
+    // The parser STTManager builds
+    private final DigitSequenceParser parser =
+            NumberLexicon.compileSequences(NumberLexicon.english(), NumberLexicon.kinyarwanda());
+
+    private String digits(String speech) {
+        return parser.parse(speech, false).getDigits();
+    }
+
+    private String amount(String speech) {
+        return parser.parse(speech, true).getDigits();
+    }
+
+    @Test
+    public void readsSpokenDigitStrings() {
+        assertEquals("0788123456", digits("zero seven eight eight one two three four five six"));
+        assertEquals("0788", digits("oh seven eight eight"));
+        assertEquals("0788123456", digits("078 812 3456"));
+        assertEquals("0788", digits("zero 7 88"));
+    }
+
+    @Test
+    public void expandsDoubleAndTriple() {
+        assertEquals("07881", digits("zero seven double eight one"));
+        assertEquals("0555", digits("zero triple five"));
+        assertEquals("07788", digits("zero double 78 8"));
+    }
+
+    @Test
+    public void acceptsHomophones() {
+        assertEquals("1248", digits("won to for ate"));
+    }
+
+    @Test
+    public void readsKinyarwandaDigitStrings() {
+        assertEquals("0788123456", digits("zeru karindwi umunani umunani rimwe kabiri gatatu kane gatanu gatandatu"));
+        assertEquals("0722", digits("Zeru kalindwi kabili kabiri"));
+        assertEquals("5000", digits("nimero gatanu zeru zeru zeru"));
+        assertEquals(1f, parser.parse("umubare ni zeru icyenda", false).getConfidence(), 0f);
+    }
+
+    @Test
+    public void reusesScratchSpaceAcrossCalls() {
+        StringBuilder longNumber = new StringBuilder();
+        for (int i = 0; i < 40; i++) longNumber.append("seven ");
+
+        assertEquals(40, digits(longNumber.toString()).length());
+        assertEquals("12", digits("one two"));
+    }
+
+    @Test
+    public void readsGroupedPhoneNumbers() {
+        assertEquals("0788234567", digits("zero seven eight eight twenty three forty five sixty seven"));
+        assertEquals("0788", digits("zero seven eighty eight"));
+        assertEquals("0788123456", digits("oh seven eight eight twelve thirty four fifty six"));
+        assertEquals("0788204060", digits("zero seven eighty eight twenty forty sixty"));
+        assertEquals("07881234", digits("zero seven double eight twelve thirty four"));
+        assertEquals(1f, parser.parse("zero seven eighty eight", false).getConfidence(), 0f);
+    }
+
+    @Test
+    public void readsGroupedPins() {
+        assertEquals("1234", digits("twelve thirty four"));
+        assertEquals("2580", digits("twenty five eighty"));
+        assertEquals("1234", digits("one hundred twenty three four"));
+        assertEquals("0500", digits("zero five hundred"));
+    }
+
+    @Test
+    public void readsAmountsAsQuantities() {
+        assertEquals("5000", amount("five thousand"));
+        assertEquals("5500", amount("five thousand five hundred"));
+        assertEquals("1250", amount("one thousand two hundred and fifty"));
+        assertEquals("20000", amount("twenty thousand"));
+        assertEquals("1000", amount("a thousand"));
+        assertEquals("5000", amount("5 thousand"));
+        assertEquals("5000", amount("five zero zero zero"));
+    }
+
+    @Test
+    public void fillersDoNotCountAgainstConfidence() {
+        DigitSequenceParser.Result result = parser.parse("my number is zero seven eight", false);
+
+        assertEquals("078", result.getDigits());
+        assertEquals(1f, result.getConfidence(), 0f);
+    }
+
+    @Test
+    public void unknownWordsLowerConfidence() {
+        DigitSequenceParser.Result result = parser.parse("zero seven banana apple", false);
+
+        assertEquals("07", result.getDigits());
+        assertEquals(0.5f, result.getConfidence(), 0.001f);
+    }
+
+    @Test
+    public void nothingNumericIsEmpty() {
+        DigitSequenceParser.Result result = parser.parse("hello there", false);
+
+        assertTrue(result.isEmpty());
+        assertEquals(0f, result.getConfidence(), 0f);
+        assertTrue(parser.parse("", false).isEmpty());
+    }
+}
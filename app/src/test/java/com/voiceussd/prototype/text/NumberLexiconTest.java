@@ -0,0 +1,50 @@
+package com.voiceussd.prototype.text;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class NumberLexiconTest {
+    private final DigitParser parser = NumberLexicon.compile(NumberLexicon.english(), NumberLexicon.kinyarwanda());
+
+    @Test
+    public void readsKinyarwandaDigits() {
+        String[] words = {"zeru", "rimwe", "kabiri", "gatatu", "kane", "gatanu", "gatandatu", "karindwi", "umunani", "icyenda"};
+        for (int digit = 0; digit < words.length; digit++) {
+            assertEquals(words[digit], digit, parser.parse(words[digit], false));
+        }
+        assertEquals(1, parser.parse("Limwe", false));
+        assertEquals(3, parser.parse("nimero gatatu", false));
+    }
+
+    @Test
+    public void bothLanguagesLiveInOneParser() {
+        assertEquals(4, parser.parse("four", false));
+        assertEquals(4, parser.parse("kane", false));
+        assertEquals(2, parser.best(Arrays.asList("kabiri", "two", "Kabili"), null, false));
+    }
+
+    @Test
+    public void readsCommandsInEitherLanguage() {
+        assertEquals(DigitParser.YES, parser.parse("yego", true));
+        assertEquals(DigitParser.NO, parser.parse("oya", true));
+        assertEquals(DigitParser.YES, parser.parse("yes", true));
+        assertEquals(DigitParser.DONE, parser.parse("ndangije", true));
+        assertEquals(DigitParser.NO_DIGIT, parser.parse("oya", false));
+    }
+
+    @Test
+    public void sharedWordKeepsItsStrongestMeaning() {
+        // "zero" is listed by both lexicons at different scores
+        assertEquals(0, parser.parse("zero", false));
+        assertEquals(1f, parser.getConfidence(), 0f);
+    }
+
+    @Test
+    public void englishOnlyParserIgnoresKinyarwanda() {
+        assertEquals(DigitParser.NO_DIGIT, DigitParser.english().parse("gatatu", false));
+        assertEquals(NumberLexicon.KINYARWANDA_TAG, NumberLexicon.kinyarwanda().getLanguageTag());
+    }
+}
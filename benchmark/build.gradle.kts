@@ -0,0 +1,61 @@
+// JMH benchmarks for the text-processing hot paths, run on the desktop JVM:
+//   ./gradlew :benchmark:jmh
+// Results, with the gc profiler's allocation rates, land in build/results/jmh/results.txt.
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The code under test is compiled straight from the app module. Only classes without Android
+// imports are listed, so a new dependency on the framework shows up here as a compile error.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            include(
+                "com/voiceussd/prototype/text/**",
+                "com/voiceussd/prototype/audio/InputMode.java",
+                "com/voiceussd/prototype/audio/SpeechText.java",
+                "com/voiceussd/prototype/diagnostics/LatencyHistogram.java",
+                "com/voiceussd/prototype/diagnostics/LatencyStats.java",
+                "com/voiceussd/prototype/diagnostics/Tracer.java",
+                "com/voiceussd/prototype/diagnostics/TurnTimeline.java",
+                "com/voiceussd/prototype/services/DialerViews.java",
+                "com/voiceussd/prototype/services/EventRecording.java",
+                "com/voiceussd/prototype/services/InputSchema.java",
+                "com/voiceussd/prototype/services/NodeReader.java",
+                "com/voiceussd/prototype/services/ParsedScreen.java",
+                "com/voiceussd/prototype/services/RecordedEvent.java",
+                "com/voiceussd/prototype/services/RecordedNode.java",
+                "com/voiceussd/prototype/services/ReplayRunner.java",
+                "com/voiceussd/prototype/services/ScreenClassifier.java",
+                "com/voiceussd/prototype/services/ScreenParseCache.java",
+                "com/voiceussd/prototype/services/ScreenRule.java",
+                "com/voiceussd/prototype/services/ScreenRuleTable.java",
+                "com/voiceussd/prototype/services/ScreenType.java",
+                "com/voiceussd/prototype/services/ScreenWalk.java",
+                "com/voiceussd/prototype/services/UssdEventProcessor.java",
+                "com/voiceussd/prototype/services/UssdKeywords.java",
+                "com/voiceussd/prototype/services/UssdSessionEngine.java"
+            )
+        }
+        // The rule table the app ships, and the corpora and recordings the unit tests use
+        resources {
+            setSrcDirs(listOf("../app/src/main/assets", "../app/src/test/resources"))
+            include("screen_rules.txt", "corpus/**", "stt/**", "replay/**")
+        }
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+}
@@ -0,0 +1,73 @@
+package com.voiceussd.prototype.audio;
+
+import com.voiceussd.prototype.benchmark.Corpora;
+import com.voiceussd.prototype.text.MenuOption;
+import com.voiceussd.prototype.text.MenuParser;
+import com.voiceussd.prototype.text.NumberLexicon;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Turning a screen into what TTS says, one screen per call. parseMenuOptions moved from
+// TTSManager to MenuParser; createSpeechText and formatInputForSpeech to SpeechText.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpeechTextBenchmark {
+
+    @Param({NumberLexicon.ENGLISH_TAG, NumberLexicon.KINYARWANDA_TAG})
+    public String language;
+
+    private String[] screens;
+    private List<List<MenuOption>> menus;
+    // Answers typed on the screens: menu choices, phone numbers, amounts and PINs
+    private String[] inputs;
+    private int nextScreen = 0;
+    private int nextMenu = 0;
+    private int nextInput = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        screens = Corpora.screens(language).toArray(new String[0]);
+        menus = new ArrayList<>();
+        for (String screen : screens) {
+            List<MenuOption> options = MenuParser.parseMenuOptions(screen);
+            if (!options.isEmpty()) {
+                menus.add(options);
+            }
+        }
+        inputs = new String[]{"1", "4", "0788123456", "0722000111", "500", "15000", "12345", ""};
+    }
+
+    @Benchmark
+    public List<MenuOption> parseMenuOptions() {
+        String screen = screens[nextScreen];
+        nextScreen = nextScreen + 1 < screens.length ? nextScreen + 1 : 0;
+        return MenuParser.parseMenuOptions(screen);
+    }
+
+    @Benchmark
+    public String menuSpeech() {
+        List<MenuOption> options = menus.get(nextMenu);
+        nextMenu = nextMenu + 1 < menus.size() ? nextMenu + 1 : 0;
+        return SpeechText.menu(options);
+    }
+
+    @Benchmark
+    public String formatInputForSpeech() {
+        String input = inputs[nextInput];
+        nextInput = nextInput + 1 < inputs.length ? nextInput + 1 : 0;
+        return SpeechText.formatInputForSpeech(input);
+    }
+}
@@ -0,0 +1,117 @@
+package com.voiceussd.prototype.benchmark;
+
+import com.voiceussd.prototype.services.UssdKeywords;
+import com.voiceussd.prototype.text.NumberLexicon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The unit tests' corpora, split by language: screens from corpus/ussd_screens_182.txt and
+// recognizer n-best lists from stt/stt_corpus.tsv, each with this module's Kinyarwanda
+// supplement (the *_rw files). Languages are NumberLexicon tags.
+public final class Corpora {
+
+    public static final class Utterance {
+        public final boolean acceptDone;
+        public final List<String> hypotheses;
+        public final float[] scores;
+
+        Utterance(boolean acceptDone, List<String> hypotheses, float[] scores) {
+            this.acceptDone = acceptDone;
+            this.hypotheses = hypotheses;
+            this.scores = scores;
+        }
+    }
+
+    private Corpora() {
+    }
+
+    // Screen texts, including the "USSD code running..." placeholders the detector also sees
+    public static List<String> screens(String languageTag) throws IOException {
+        boolean kinyarwanda = isKinyarwanda(languageTag);
+        List<String> screens = new ArrayList<>();
+        loadScreens("/corpus/ussd_screens_182.txt", kinyarwanda, screens);
+        loadScreens("/corpus/ussd_screens_182_rw.txt", kinyarwanda, screens);
+        return screens;
+    }
+
+    // n-best lists in the order the recognizer returned them; Kinyarwanda lists follow a
+    // comment header naming the language
+    public static List<Utterance> utterances(String languageTag) throws IOException {
+        boolean kinyarwanda = isKinyarwanda(languageTag);
+        List<Utterance> utterances = new ArrayList<>();
+        loadUtterances("/stt/stt_corpus.tsv", kinyarwanda, utterances);
+        loadUtterances("/stt/stt_corpus_rw.tsv", kinyarwanda, utterances);
+        return utterances;
+    }
+
+    private static void loadScreens(String resource, boolean kinyarwanda, List<String> screens) throws IOException {
+        try (BufferedReader reader = open(resource)) {
+            StringBuilder text = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                if (line.startsWith("===")) {
+                    addScreen(screens, text, kinyarwanda);
+                    text = new StringBuilder();
+                } else if (text != null) {
+                    if (text.length() > 0) text.append('\n');
+                    text.append(line);
+                }
+            }
+            addScreen(screens, text, kinyarwanda);
+        }
+    }
+
+    private static void loadUtterances(String resource, boolean kinyarwanda, List<Utterance> utterances)
+            throws IOException {
+        try (BufferedReader reader = open(resource)) {
+            boolean inKinyarwanda = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    inKinyarwanda |= line.contains("Kinyarwanda");
+                    continue;
+                }
+                if (line.isEmpty() || inKinyarwanda != kinyarwanda) continue;
+
+                String[] fields = line.split("\t");
+                float[] scores = null;
+                if (fields.length > 3) {
+                    String[] parts = fields[3].split(",");
+                    scores = new float[parts.length];
+                    for (int i = 0; i < parts.length; i++) scores[i] = Float.parseFloat(parts[i]);
+                }
+                utterances.add(new Utterance(fields[1].equals("digit"), Arrays.asList(fields[2].split(" \\| ")), scores));
+            }
+        }
+    }
+
+    private static void addScreen(List<String> screens, StringBuilder text, boolean kinyarwanda) {
+        if (text == null) return;
+        String screen = text.toString();
+        if (UssdKeywords.has(UssdKeywords.match(screen), UssdKeywords.KINYARWANDA) == kinyarwanda) {
+            screens.add(screen);
+        }
+    }
+
+    private static boolean isKinyarwanda(String languageTag) {
+        if (NumberLexicon.KINYARWANDA_TAG.equals(languageTag)) return true;
+        if (NumberLexicon.ENGLISH_TAG.equals(languageTag)) return false;
+        throw new IllegalArgumentException("No corpus for " + languageTag);
+    }
+
+    private static BufferedReader open(String resource) throws IOException {
+        InputStream in = Corpora.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Missing corpus " + resource);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,78 @@
+package com.voiceussd.prototype.services;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The *182# traces the app's replay test checks (src/test/resources/replay), one whole
+// recording per call: decoding it, and replaying it through ReplayRunner, i.e. the service's
+// UssdEventProcessor and UssdSessionEngine with TTS, recognizer and field faked out. The
+// screens counter gives the replay's screens per second.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RecordingReplayBenchmark {
+
+    @Param({"182_send_money_and_balance"})
+    public String recording;
+
+    private ScreenClassifier classifier;
+    private byte[] bytes;
+    private List<RecordedEvent> events;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Screens {
+        public long screens;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            screens = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        classifier = ScreenDetectionBenchmark.loadClassifier();
+        try (InputStream in = RecordingReplayBenchmark.class.getResourceAsStream("/replay/" + recording + ".rec")) {
+            if (in == null) {
+                throw new IOException("Missing replay/" + recording + ".rec");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+            bytes = out.toByteArray();
+        }
+        events = EventRecording.read(new ByteArrayInputStream(bytes));
+    }
+
+    // Results are returned as counts: the recording types are package-private, and JMH's
+    // generated code lives in another package
+    @Benchmark
+    public int decode() throws IOException {
+        return EventRecording.read(new ByteArrayInputStream(bytes)).size();
+    }
+
+    @Benchmark
+    public int replay(Screens counter) {
+        int screens = new ReplayRunner(classifier).run(events).screens.size();
+        counter.screens += screens;
+        return screens;
+    }
+}
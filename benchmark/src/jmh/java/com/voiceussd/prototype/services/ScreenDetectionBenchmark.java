@@ -0,0 +1,145 @@
+package com.voiceussd.prototype.services;
+
+import com.voiceussd.prototype.benchmark.Corpora;
+import com.voiceussd.prototype.text.NumberLexicon;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Detection and extraction for one dialog per call, cycling through the screen corpus.
+// isUSSDDialog moved from USSDDetectorService to UssdKeywords, isRelevantUSSDContent to
+// ScreenWalk, and isMenuContent was replaced by the classifier's rule table.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScreenDetectionBenchmark {
+    private static final String DIALER_PACKAGE = "com.android.phone";
+    private static final String DIALOG_CLASS = "android.app.AlertDialog";
+
+    @Param({NumberLexicon.ENGLISH_TAG, NumberLexicon.KINYARWANDA_TAG})
+    public String language;
+
+    private ScreenClassifier classifier;
+    private String[] screens;
+    // The stock dialer's layout around each screen: message, input field, Cancel and Send
+    private RecordedNode[] trees;
+    private String[] nodeTexts;
+    private int next = 0;
+    private int nextNode = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        classifier = loadClassifier();
+
+        List<String> corpus = Corpora.screens(language);
+        screens = corpus.toArray(new String[0]);
+        trees = new RecordedNode[screens.length];
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < screens.length; i++) {
+            trees[i] = tree(i, screens[i]);
+            collectTexts(trees[i], texts);
+        }
+        nodeTexts = texts.toArray(new String[0]);
+    }
+
+    // The rule table the app ships
+    static ScreenClassifier loadClassifier() throws IOException {
+        try (InputStream in = ScreenDetectionBenchmark.class.getResourceAsStream("/screen_rules.txt")) {
+            if (in == null) {
+                throw new IOException("Missing screen_rules.txt");
+            }
+            return ScreenClassifier.load(in);
+        }
+    }
+
+    private int nextScreen() {
+        int screen = next;
+        next = next + 1 < screens.length ? next + 1 : 0;
+        return screen;
+    }
+
+    // The pre-filter's question for every event from the dialer
+    @Benchmark
+    public boolean isUSSDDialog() {
+        String text = screens[nextScreen()];
+        return UssdKeywords.isUSSDDialog(DIALER_PACKAGE, DIALOG_CLASS, UssdKeywords.match(text));
+    }
+
+    @Benchmark
+    public int matchKeywords() {
+        return UssdKeywords.match(screens[nextScreen()]);
+    }
+
+    // Baseline: the String.contains chain UssdKeywords replaced
+    @Benchmark
+    public int containsChainBaseline() {
+        String text = screens[nextScreen()].toLowerCase();
+        int categories = 0;
+        if (text.contains("ussd") || text.contains("ussd code") || text.contains("1)") ||
+                text.contains("n next") || text.contains("balance") || text.contains("amafaranga") ||
+                text.contains("kwemeza") || text.contains("pin") || text.contains("shyiramo") ||
+                text.contains("mobile number") || text.contains("nimero ya mobile") ||
+                text.contains("recipient") || text.contains("07xxxxxxxx") ||
+                text.contains("format 07") || text.contains("enter") || text.contains("amount")) {
+            categories |= UssdKeywords.USSD_CONTENT;
+        }
+        if (text.contains("ussd code running")) {
+            categories |= UssdKeywords.USSD_RUNNING;
+        }
+        return categories;
+    }
+
+    @Benchmark
+    public ScreenRule classify() {
+        return classifier.classify(screens[nextScreen()], DIALER_PACKAGE, true);
+    }
+
+    // Called once per node with text during the walk
+    @Benchmark
+    public boolean isRelevantUSSDContent() {
+        String text = nodeTexts[nextNode];
+        nextNode = nextNode + 1 < nodeTexts.length ? nextNode + 1 : 0;
+        return ScreenWalk.isRelevantUSSDContent(text);
+    }
+
+    @Benchmark
+    public String walk() {
+        return ScreenWalk.walk(trees[nextScreen()], RecordedNode.READER).getText();
+    }
+
+    private static RecordedNode tree(int window, String text) {
+        List<RecordedNode> children = new ArrayList<>();
+        children.add(node(window, text, "android.widget.TextView", "android:id/message", 0));
+        children.add(node(window, "", "android.widget.EditText", DialerViews.INPUT_FIELD_ID,
+                RecordedNode.EDITABLE | RecordedNode.CLICKABLE));
+        children.add(node(window, "Cancel", "android.widget.Button", DialerViews.CANCEL_BUTTON_ID, RecordedNode.CLICKABLE));
+        children.add(node(window, "Send", "android.widget.Button", DialerViews.SEND_BUTTON_ID, RecordedNode.CLICKABLE));
+        return new RecordedNode(window, null, "android.widget.FrameLayout", null, null, 0, children);
+    }
+
+    private static RecordedNode node(int window, String text, String className, String viewId, int flags) {
+        return new RecordedNode(window, text, className, viewId, null, flags, Collections.<RecordedNode>emptyList());
+    }
+
+    private static void collectTexts(RecordedNode node, List<String> texts) {
+        if (node.text != null && !node.text.isEmpty()) {
+            texts.add(node.text);
+        }
+        for (RecordedNode child : node.children) {
+            collectTexts(child, texts);
+        }
+    }
+}
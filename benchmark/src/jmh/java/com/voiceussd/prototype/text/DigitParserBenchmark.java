@@ -0,0 +1,105 @@
+package com.voiceussd.prototype.text;
+
+import com.voiceussd.prototype.benchmark.Corpora;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// What the recognizer callbacks run on every result: one n-best list per call, cycling
+// through the corpus. parse and isDone replaced STTManager.extractDigit and isDoneCommand;
+// the contains chain they replaced runs alongside for comparison.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DigitParserBenchmark {
+
+    @Param({NumberLexicon.ENGLISH_TAG, NumberLexicon.KINYARWANDA_TAG})
+    public String language;
+
+    private DigitParser parser;
+    private Corpora.Utterance[] utterances;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        // The parser STTManager builds
+        parser = NumberLexicon.compile(NumberLexicon.english(), NumberLexicon.kinyarwanda());
+        List<Corpora.Utterance> corpus = Corpora.utterances(language);
+        utterances = corpus.toArray(new Corpora.Utterance[0]);
+    }
+
+    private Corpora.Utterance nextUtterance() {
+        Corpora.Utterance utterance = utterances[next];
+        next = next + 1 < utterances.length ? next + 1 : 0;
+        return utterance;
+    }
+
+    @Benchmark
+    public int parseTopHypothesis() {
+        Corpora.Utterance utterance = nextUtterance();
+        return parser.parse(utterance.hypotheses.get(0), utterance.acceptDone);
+    }
+
+    @Benchmark
+    public int bestOfNBest() {
+        Corpora.Utterance utterance = nextUtterance();
+        return parser.best(utterance.hypotheses, utterance.scores, utterance.acceptDone);
+    }
+
+    @Benchmark
+    public boolean isDone() {
+        return parser.isDone(nextUtterance().hypotheses.get(0));
+    }
+
+    // Baseline: the String.contains chain STTManager ran before DigitParser, first hypothesis
+    // that yields anything wins
+    @Benchmark
+    public int containsChainBaseline() {
+        Corpora.Utterance utterance = nextUtterance();
+        for (String hypothesis : utterance.hypotheses) {
+            if (utterance.acceptDone && legacyIsDone(hypothesis)) return DigitParser.DONE;
+            int digit = legacyExtractDigit(hypothesis);
+            if (digit != -1) return digit;
+        }
+        return DigitParser.NO_DIGIT;
+    }
+
+    private static int legacyExtractDigit(String speech) {
+        String lowerSpeech = speech.toLowerCase().trim();
+        if (lowerSpeech.contains("zero") || lowerSpeech.equals("0")) return 0;
+        if (lowerSpeech.contains("one") || lowerSpeech.equals("1") || lowerSpeech.contains("won")) return 1;
+        if (lowerSpeech.contains("two") || lowerSpeech.equals("2") || lowerSpeech.contains("too")) return 2;
+        if (lowerSpeech.contains("three") || lowerSpeech.equals("3") || lowerSpeech.contains("tree")) return 3;
+        if (lowerSpeech.contains("four") || lowerSpeech.equals("4") || lowerSpeech.contains("for")) return 4;
+        if (lowerSpeech.contains("five") || lowerSpeech.equals("5")) return 5;
+        if (lowerSpeech.contains("six") || lowerSpeech.equals("6") || lowerSpeech.contains("sicks")) return 6;
+        if (lowerSpeech.contains("seven") || lowerSpeech.equals("7")) return 7;
+        if (lowerSpeech.contains("eight") || lowerSpeech.equals("8") || lowerSpeech.contains("ate")) return 8;
+        if (lowerSpeech.contains("nine") || lowerSpeech.equals("9") || lowerSpeech.contains("nein")) return 9;
+
+        String digitsOnly = speech.replaceAll("[^0-9]", "");
+        if (digitsOnly.length() == 1) {
+            return Integer.parseInt(digitsOnly);
+        }
+        return -1;
+    }
+
+    private static boolean legacyIsDone(String speech) {
+        String lowerSpeech = speech.toLowerCase().trim();
+        return lowerSpeech.contains("done") ||
+                lowerSpeech.contains("finished") ||
+                lowerSpeech.contains("complete") ||
+                lowerSpeech.contains("send") ||
+                lowerSpeech.equals("end");
+    }
+}